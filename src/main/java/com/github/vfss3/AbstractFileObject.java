@@ -55,6 +55,10 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
 
 import static org.apache.commons.vfs2.FileType.FILE;
 import static org.apache.commons.vfs2.FileType.FOLDER;
@@ -122,11 +126,17 @@ abstract class AbstractFileObject<AFS extends AbstractFileSystem> implements Fil
 
     private final AFS fileSystem;
     private FileContent content;
-    // Cached info
-    private boolean attached;
+    // Cached info, written under attach lock and read without it
+    private volatile boolean attached;
 
-    private FileType type;
-    private FileObject parent;
+    private volatile FileType type;
+    private volatile FileObject parent;
+
+    // Attach in progress, concurrent attaches of this file wait for it instead of probing again
+    private final AtomicReference<CompletableFuture<Void>> attaching = new AtomicReference<>();
+
+    // Number of detaches, changed under attach lock. Probe is published only if nothing was detached while it ran
+    private volatile long detaches;
 
     // Changed to hold only the name of the children and let the object
     // go into the global files cache
@@ -154,7 +164,9 @@ abstract class AbstractFileObject<AFS extends AbstractFileSystem> implements Fil
     }
 
     /**
-     * Attaches to the file.
+     * Attaches to the file. The file is probed with {@link #doProbe()} without attach lock, so other names of the
+     * same stripe don't wait for remote calls, and concurrent attaches of this file share one probe. The lock is held
+     * only to publish the result with {@link #doAttach(Object)}.
      *
      * @throws FileSystemException if an error occurs.
      */
@@ -163,33 +175,113 @@ abstract class AbstractFileObject<AFS extends AbstractFileSystem> implements Fil
             return;
         }
 
+        final CompletableFuture<Void> mine = new CompletableFuture<>();
+
+        while (!attaching.compareAndSet(null, mine)) {
+            final CompletableFuture<Void> running = attaching.get();
+
+            if (running != null) {
+                awaitAttach(running);
+
+                return;
+            }
+        }
+
         try {
-            // Attach and determine the file type
-            doAttach();
+            attachOnce();
 
-            setAttached(true);
-            // now the type could already be injected by doAttach (e.g from parent to child)
+            mine.complete(null);
+        } catch (FileSystemException | RuntimeException | Error e) {
+            mine.completeExceptionally(e);
 
-            // Locate the parent of this file
-            if (parent == null) {
-                final FileName name = fileName.getParent();
+            throw e;
+        } finally {
+            // Cleared after publish, so late callers see attached file and don't probe again
+            attaching.compareAndSet(mine, null);
+        }
 
-                if (name == null) {
-                    setParent(null);
-                } else {
-                    setParent(fileSystem.resolveFile(name));
+        // fs.fileAttached(this);
+    }
+
+    private void attachOnce() throws FileSystemException {
+        final Lock lock = getAttachLock();
+
+        try {
+            while (!isAttached()) {
+                final long detached = detaches;
+
+                // Locate the parent before the lock, its resolve could refresh the parent under lock of another stripe
+                FileObject located = null;
+
+                if (parent == null) {
+                    final FileName name = fileName.getParent();
+
+                    if (name != null) {
+                        located = fileSystem.resolveFile(name);
+                    }
                 }
-            }
 
-            /*
-             * VFS-210: determine the type when really asked fore if (type == null) { setFileType(doGetType()); } if
-             * (type == null) { setFileType(FileType.IMAGINARY); }
-             */
+                // Determine the file type
+                final Object probe = doProbe();
+
+                lock.lock();
+
+                try {
+                    if (isAttached()) {
+                        return;
+                    }
+
+                    if (detached != detaches) {
+                        // Detached while we probed, probe could miss the change which caused detach
+                        continue;
+                    }
+
+                    if (parent == null) {
+                        setParent(located);
+                    }
+
+                    doAttach(probe);
+
+                    setAttached(true);
+                    // now the type could already be injected by doAttach (e.g from parent to child)
+
+                    /*
+                     * VFS-210: determine the type when really asked fore if (type == null) { setFileType(doGetType()); }
+                     * if (type == null) { setFileType(FileType.IMAGINARY); }
+                     */
+                } finally {
+                    lock.unlock();
+                }
+            }
         } catch (Exception exc) {
             throw new FileSystemException("vfs.provider/get-type.error", exc, fileName);
         }
+    }
 
-        // fs.fileAttached(this);
+    private void awaitAttach(CompletableFuture<Void> running) throws FileSystemException {
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new FileSystemException("vfs.provider/get-type.error", e, fileName);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileSystemException) {
+                throw (FileSystemException) e.getCause();
+            }
+
+            throw new FileSystemException("vfs.provider/get-type.error", e.getCause(), fileName);
+        }
+    }
+
+    /**
+     * Lock which guards attach, detach and refresh of this file. It is shared with other instances for the same name
+     * and with few other names, so it should be held only for changes of attached state.
+     *
+     * @return the lock from the file system
+     */
+    protected final Lock getAttachLock() {
+        return fileSystem.getAttachLock(fileName);
     }
 
     /**
@@ -496,19 +588,30 @@ abstract class AbstractFileObject<AFS extends AbstractFileSystem> implements Fil
      * @throws Exception if an error occurs.
      */
     private void detach() throws Exception {
-        if (isAttached()) {
-            try {
-                doDetach();
-            } finally {
-                setFileType(null);
-                setAttached(false);
-                setParent(null);
+        final Lock lock = getAttachLock();
 
-                // fs.fileDetached(this);
+        lock.lock();
 
-                removeChildrenCache();
-                // children = null;
+        try {
+            // Even detach of not attached file invalidates probes in progress
+            detaches++;
+
+            if (isAttached()) {
+                try {
+                    doDetach();
+                } finally {
+                    setFileType(null);
+                    setAttached(false);
+                    setParent(null);
+
+                    // fs.fileDetached(this);
+
+                    removeChildrenCache();
+                    // children = null;
+                }
             }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -528,6 +631,34 @@ abstract class AbstractFileObject<AFS extends AbstractFileSystem> implements Fil
         // noop
     }
 
+    /**
+     * Finds out state of the file for attach without changes of this object. It is called without attach lock and
+     * its result could be dropped if the file was detached meanwhile.
+     * <p>
+     * This implementation does nothing, all work is done by {@link #doAttach()}.
+     * </p>
+     *
+     * @return state of the file for {@link #doAttach(Object)}
+     * @throws Exception if an error occurs.
+     */
+    protected Object doProbe() throws Exception {
+        return null;
+    }
+
+    /**
+     * Attaches this file object with state from {@link #doProbe()}. It is called under attach lock, so it should not
+     * do remote calls.
+     * <p>
+     * This implementation calls {@link #doAttach()}.
+     * </p>
+     *
+     * @param probe result of {@link #doProbe()}
+     * @throws Exception if an error occurs.
+     */
+    protected void doAttach(Object probe) throws Exception {
+        doAttach();
+    }
+
     /**
      * Create a FileContent implementation.
      *
@@ -1291,7 +1422,10 @@ abstract class AbstractFileObject<AFS extends AbstractFileSystem> implements Fil
 
         attach();
 
-        return parent;
+        final FileObject result = parent;
+
+        // Another thread could detach the file right after attach
+        return (result != null) ? result : fileSystem.resolveFile(fileName.getParent());
     }
 
     protected void setParent(FileObject parent) {
@@ -1356,20 +1490,42 @@ abstract class AbstractFileObject<AFS extends AbstractFileSystem> implements Fil
     @Override
     public FileType getType() throws FileSystemException {
         try {
-            attach();
+            final Lock lock = getAttachLock();
 
-            // VFS-210: get the type only if requested for
-            if (type == null) {
-                setFileType(doGetType());
-            }
-            if (type == null) {
-                setFileType(FileType.IMAGINARY);
+            for (;;) {
+                attach();
+
+                final FileType current = type;
+
+                if (current != null) {
+                    return current;
+                }
+
+                // Concurrent refresh could detach the file again, so determine the type under attach lock
+                lock.lock();
+
+                try {
+                    if (!isAttached()) {
+                        // Attach again without the lock
+                        continue;
+                    }
+
+                    // VFS-210: get the type only if requested for
+                    if (type == null) {
+                        setFileType(doGetType());
+                    }
+                    if (type == null) {
+                        setFileType(FileType.IMAGINARY);
+                    }
+
+                    return type;
+                } finally {
+                    lock.unlock();
+                }
             }
         } catch (final Exception e) {
             throw new FileSystemException("vfs.provider/get-type.error", e, fileName);
         }
-
-        return type;
     }
 
     /**
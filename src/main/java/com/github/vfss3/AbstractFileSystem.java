@@ -42,13 +42,15 @@ import org.apache.commons.vfs2.util.Messages;
 
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 import static java.util.Objects.requireNonNull;
 
@@ -59,6 +61,11 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
 
     private static final Log LOG = LogFactory.getLog(AbstractFileSystem.class);
 
+    /**
+     * Number of locks for attach and detach of file objects, keys of concurrently attached objects collide rarely.
+     */
+    private static final int ATTACH_LOCK_STRIPES = 256;
+
     /**
      * The "root" of the file system. This is always "/" so it isn't always the "real" root.
      */
@@ -75,9 +82,19 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
     private FileObject parentLayer;
 
     /**
-     * Map from FileName to an ArrayList of listeners for that file.
+     * Map from FileName to listeners for that file. Lists are copy-on-write so events are fired without locks.
+     */
+    private final ConcurrentMap<FileName, List<FileListener>> listenerMap = new ConcurrentHashMap<>();
+
+    /**
+     * Asynchronous delivery of events or null if listeners are called by the thread which changed the file.
+     */
+    private volatile FileEventDispatcher eventDispatcher;
+
+    /**
+     * Guards attach, detach and refresh of file objects with the same name.
      */
-    private final Map<FileName, ArrayList<FileListener>> listenerMap = new HashMap<>();
+    private final StripedLock attachLocks = new StripedLock(ATTACH_LOCK_STRIPES);
 
     /**
      * FileSystemOptions used for configuration
@@ -89,6 +106,11 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
      */
     private final AtomicInteger openStreams = new AtomicInteger(0);
 
+    /**
+     * Time of the last resolve or stream event from {@link System#nanoTime()}
+     */
+    private volatile long lastUsed = System.nanoTime();
+
     protected AbstractFileSystem(FileName rootName, FileObject parentLayer, FileSystemOptions fileSystemOptions) {
         this.parentLayer = parentLayer;
         this.rootName = rootName;
@@ -175,10 +197,15 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
      * @param file the file to add.
      */
     protected void putFileToCache(final FileObject file) {
-        getCache().putFile(file);
+        getFilesCache().putFile(file);
     }
 
-    private FilesCache getCache() {
+    /**
+     * Returns cache for file objects of this file system. By default it is cache of the file system manager.
+     *
+     * @return files cache.
+     */
+    protected FilesCache getFilesCache() {
         FilesCache files;
         files = getContext().getFileSystemManager().getFilesCache();
         if (files == null) {
@@ -195,7 +222,7 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
      * @return file object or null if not found.
      */
     protected FileObject getFileFromCache(final FileName name) {
-        return getCache().getFile(this, name);
+        return getFilesCache().getFile(this, name);
     }
 
     /**
@@ -204,7 +231,7 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
      * @param name The file name to remove.
      */
     protected void removeFileFromCache(final FileName name) {
-        getCache().removeFile(this, name);
+        getFilesCache().removeFile(this, name);
     }
 
     /**
@@ -292,15 +319,30 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
                     name.getRootURI());
         }
 
-        FileObject file;
+        lastUsed = System.nanoTime();
 
-        try {
-            file = createFile(name);
-        } catch (final Exception e) {
-            throw new FileSystemException("vfs.provider/resolve-file.error", name, e);
-        }
+        FileObject file = getFileFromCache(name);
+
+        if (file == null) {
+            try {
+                file = createFile(name);
+            } catch (final Exception e) {
+                throw new FileSystemException("vfs.provider/resolve-file.error", name, e);
+            }
 
-        file = decorateFileObject(file);
+            file = decorateFileObject(file);
+
+            if (!getFilesCache().putFileIfAbsent(file)) {
+                // Other thread was faster
+                final FileObject cached = getFileFromCache(name);
+
+                if (cached != null) {
+                    file = cached;
+                }
+            }
+        } else if (getFileSystemManager().getCacheStrategy().equals(CacheStrategy.ON_RESOLVE)) {
+            file.refresh();
+        }
 
         return requireNonNull(file);
     }
@@ -417,14 +459,13 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
      */
     @Override
     public void addListener(final FileObject file, final FileListener listener) {
-        synchronized (listenerMap) {
-            ArrayList<FileListener> listeners = listenerMap.get(file.getName());
+        listenerMap.compute(file.getName(), (name, listeners) -> {
             if (listeners == null) {
-                listeners = new ArrayList<>();
-                listenerMap.put(file.getName(), listeners);
+                listeners = new CopyOnWriteArrayList<>();
             }
             listeners.add(listener);
-        }
+            return listeners;
+        });
     }
 
     /**
@@ -435,15 +476,10 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
      */
     @Override
     public void removeListener(final FileObject file, final FileListener listener) {
-        synchronized (listenerMap) {
-            final ArrayList<?> listeners = listenerMap.get(file.getName());
-            if (listeners != null) {
-                listeners.remove(listener);
-                if (listeners.isEmpty()) {
-                    listenerMap.remove(file.getName());
-                }
-            }
-        }
+        listenerMap.computeIfPresent(file.getName(), (name, listeners) -> {
+            listeners.remove(listener);
+            return listeners.isEmpty() ? null : listeners;
+        });
     }
 
     /**
@@ -476,19 +512,38 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
         fireEvent(new ChangedEvent(file));
     }
 
+    /**
+     * Switches delivery of events to given dispatcher, null means delivery by the thread which fires event.
+     *
+     * @param eventDispatcher dispatcher created with {@link #notifyListeners} as delivery
+     */
+    protected void setEventDispatcher(final FileEventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
     /**
      * Fires an event.
      */
     private void fireEvent(final AbstractFileChangeEvent event) {
-        FileListener[] fileListeners = null;
-        final FileObject file = event.getFile();
+        if (!listenerMap.containsKey(event.getFileObject().getName())) {
+            return;
+        }
 
-        synchronized (listenerMap) {
-            final ArrayList<?> listeners = listenerMap.get(file.getName());
-            if (listeners != null) {
-                fileListeners = listeners.toArray(new FileListener[listeners.size()]);
-            }
+        final FileEventDispatcher dispatcher = eventDispatcher;
+
+        if (dispatcher != null) {
+            dispatcher.dispatch(event);
+        } else {
+            notifyListeners(event);
         }
+    }
+
+    /**
+     * Calls all current listeners of the event's file.
+     */
+    protected void notifyListeners(final AbstractFileChangeEvent event) {
+        final FileObject file = event.getFileObject();
+        final List<FileListener> fileListeners = listenerMap.get(file.getName());
 
         if (fileListeners != null) {
             for (final FileListener fileListener : fileListeners) {
@@ -503,6 +558,13 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
         }
     }
 
+    /**
+     * Lock for attach and detach of file objects with given name. Different instances for the same name share it.
+     */
+    Lock getAttachLock(final FileName name) {
+        return attachLocks.get(name);
+    }
+
     void fileObjectHanded(final FileObject fileObject) {
     }
 
@@ -511,10 +573,14 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
     }
 
     void streamOpened() {
+        lastUsed = System.nanoTime();
+
         openStreams.incrementAndGet();
     }
 
     void streamClosed() {
+        lastUsed = System.nanoTime();
+
         if (openStreams.decrementAndGet() == 0) {
             notifyAllStreamsClosed();
         }
@@ -527,6 +593,15 @@ abstract class AbstractFileSystem extends AbstractVfsComponent implements FileSy
         // default is noop.
     }
 
+    /**
+     * Time since the last resolve or stream event.
+     *
+     * @return idle time in nanoseconds
+     */
+    long getIdleTime() {
+        return System.nanoTime() - lastUsed;
+    }
+
     /**
      * Checks if this file system has open streams.
      *
@@ -0,0 +1,332 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.RetryUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Client side AIMD rate limiter of one file system. Every {@link RequestType} has own budget for every first level
+ * key prefix, because S3 scales and throttles by prefix.
+ * <p>
+ * Prefix without throttling has no budget and its requests are not delayed at all. First 503 or SlowDown response
+ * creates budget with half of max rate, every next throttling response halves it again (not more often than once in
+ * 200 ms, concurrent requests usually get throttled together) and every successful response grows it back linearly,
+ * from zero to max rate in 20 seconds of full load. Recovered budget is dropped.
+ * <p>
+ * Clients created by {@link S3FileProvider} report every attempt through {@link #FEEDBACK_HANDLER}, so throttling is
+ * seen on the first failed attempt and SDK retries are paced by the same budget. Other clients report only final
+ * result of the request.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class AdaptiveRateLimiter {
+    static final HandlerContextKey<Permit> PERMIT = new HandlerContextKey<>("vfs-s3-rate-permit");
+
+    static final RequestHandler2 FEEDBACK_HANDLER = new FeedbackHandler();
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final long DECREASE_INTERVAL = MILLISECONDS.toNanos(200);
+    private static final double RECOVERY_SECONDS = 20;
+    private static final double MIN_RATE = 1;
+
+    private final Log log = LogFactory.getLog(AdaptiveRateLimiter.class);
+
+    private final String name;
+    private final double recoverySeconds;
+    private final Map<RequestType, ConcurrentMap<String, Budget>> budgets = new EnumMap<>(RequestType.class);
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param name name of the file system for logs
+     */
+    AdaptiveRateLimiter(String name) {
+        this(name, RECOVERY_SECONDS);
+    }
+
+    /**
+     * @param name name of the file system for logs
+     * @param recoverySeconds time of linear recovery from zero to max rate under full load
+     */
+    AdaptiveRateLimiter(String name, double recoverySeconds) {
+        this.name = name;
+        this.recoverySeconds = recoverySeconds;
+
+        for (RequestType type : RequestType.values()) {
+            budgets.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Wait for free slot in the budget of the key prefix and execute the call. Permit is attached to the request, so
+     * request handler could report every attempt.
+     *
+     * @param type type of request
+     * @param key object key or prefix of the request
+     * @param request original request or null
+     * @param call call which sends the request
+     */
+    <T> T execute(RequestType type, String key, AmazonWebServiceRequest request, Supplier<T> call) {
+        final Permit permit = new Permit(type, prefix(key));
+
+        permit.acquire();
+
+        if (request != null) {
+            request.addHandlerContext(PERMIT, permit);
+        }
+
+        final T result;
+
+        try {
+            result = call.get();
+        } catch (AmazonServiceException e) {
+            if (!permit.reported) {
+                permit.completed(e);
+            }
+
+            throw e;
+        }
+
+        if (!permit.reported) {
+            permit.completed(null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Current allowed rate for requests of given type to the key.
+     */
+    double getRate(RequestType type, String key) {
+        final Budget budget = budgets.get(type).get(prefix(key));
+
+        return (budget != null) ? budget.getRate() : type.getMaxRate();
+    }
+
+    /**
+     * Prefixes which are limited now with their rates, all other prefixes have max rate.
+     */
+    SortedMap<String, Double> getRates(RequestType type) {
+        final SortedMap<String, Double> result = new TreeMap<>();
+
+        for (Budget budget : budgets.get(type).values()) {
+            result.put(budget.prefix, budget.getRate());
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of throttled attempts since creation.
+     */
+    long getThrottledRequests() {
+        return throttled.sum();
+    }
+
+    /**
+     * First level prefix of the key with trailing slash or empty string for keys in the root.
+     */
+    static String prefix(String key) {
+        final int index = (key != null) ? key.indexOf('/') : -1;
+
+        return (index < 0) ? "" : key.substring(0, index + 1);
+    }
+
+    static boolean isThrottling(Exception e) {
+        if (!(e instanceof AmazonServiceException)) {
+            return false;
+        }
+
+        final AmazonServiceException serviceException = (AmazonServiceException) e;
+
+        return (serviceException.getStatusCode() == 503) || RetryUtils.isThrottlingException(serviceException);
+    }
+
+    /**
+     * One request with all its attempts.
+     */
+    class Permit {
+        private final RequestType type;
+        private final String prefix;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        private volatile boolean reported;
+
+        private Permit(RequestType type, String prefix) {
+            this.type = type;
+            this.prefix = prefix;
+        }
+
+        void acquire() {
+            final Budget budget = budgets.get(type).get(prefix);
+
+            if (budget != null) {
+                budget.acquire();
+            }
+        }
+
+        /**
+         * Feedback from one attempt or from the whole request.
+         *
+         * @param e error or null for success
+         */
+        void completed(Exception e) {
+            if (isThrottling(e)) {
+                throttled.increment();
+
+                budgets.get(type).computeIfAbsent(prefix, p -> new Budget(type, p)).decrease();
+            } else if ((e == null) || (e instanceof AmazonServiceException)) {
+                // Any answer from S3 except throttling means it has capacity for us
+                final Budget budget = budgets.get(type).get(prefix);
+
+                if (budget != null) {
+                    budget.increase();
+                }
+            }
+        }
+    }
+
+    /**
+     * Allowed rate for one type and prefix. Requests are paced by reservation of time slots.
+     */
+    private class Budget {
+        private final RequestType type;
+        private final String prefix;
+        private final double increase;
+        private final AtomicLong rate;
+        private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+        private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime() - DECREASE_INTERVAL);
+
+        Budget(RequestType type, String prefix) {
+            this.type = type;
+            this.prefix = prefix;
+            this.increase = type.getMaxRate() / recoverySeconds;
+            this.rate = new AtomicLong(Double.doubleToLongBits(type.getMaxRate()));
+        }
+
+        double getRate() {
+            return Double.longBitsToDouble(rate.get());
+        }
+
+        void acquire() {
+            final long interval = (long) (SECONDS.toNanos(1) / getRate());
+
+            long now = System.nanoTime();
+            long slot;
+
+            while (true) {
+                final long next = nextSlot.get();
+
+                slot = Math.max(next, now);
+
+                if (nextSlot.compareAndSet(next, slot + interval)) {
+                    break;
+                }
+            }
+
+            while (slot > now) {
+                LockSupport.parkNanos(slot - now);
+
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+
+                    throw new AbortedException("Interrupted while waiting for request slot");
+                }
+
+                now = System.nanoTime();
+            }
+        }
+
+        void decrease() {
+            final long now = System.nanoTime();
+            final long last = lastDecrease.get();
+
+            if (((now - last) < DECREASE_INTERVAL) || !lastDecrease.compareAndSet(last, now)) {
+                return;
+            }
+
+            final double value = update(current -> Math.max(MIN_RATE, current * DECREASE_FACTOR));
+
+            if (log.isDebugEnabled()) {
+                log.debug("Throttled " + type + " requests to [" + name + "/" + prefix + "] - rate is " + value);
+            }
+        }
+
+        void increase() {
+            // Sum of increases for one second of requests at current rate is constant
+            final double value = update(current -> Math.min(type.getMaxRate(), current + increase / current));
+
+            if (value >= type.getMaxRate()) {
+                budgets.get(type).remove(prefix, this);
+
+                if (log.isDebugEnabled()) {
+                    log.debug("Rate of " + type + " requests to [" + name + "/" + prefix + "] is recovered");
+                }
+            }
+        }
+
+        private double update(DoubleUnaryOperator operator) {
+            while (true) {
+                final long bits = rate.get();
+                final double value = operator.applyAsDouble(Double.longBitsToDouble(bits));
+
+                if (rate.compareAndSet(bits, Double.doubleToLongBits(value))) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports every attempt of requests with permit. SDK retries wait for slot in the same budget.
+     */
+    private static class FeedbackHandler extends RequestHandler2 {
+        @Override
+        public void beforeAttempt(HandlerBeforeAttemptContext context) {
+            final Permit permit = permit(context.getRequest());
+
+            if ((permit != null) && (permit.attempts.getAndIncrement() > 0)) {
+                permit.acquire();
+            }
+        }
+
+        @Override
+        public void afterAttempt(HandlerAfterAttemptContext context) {
+            final Permit permit = permit(context.getRequest());
+
+            if (permit != null) {
+                permit.reported = true;
+                permit.completed(context.getException());
+            }
+        }
+
+        private static Permit permit(Request<?> request) {
+            final AmazonWebServiceRequest original = (request != null) ? request.getOriginalRequest() : null;
+
+            return (original != null) ? original.getHandlerContext(PERMIT) : null;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.vfss3;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.github.vfss3.TrafficClass.FOREGROUND;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Token bucket for transferred bytes in one direction. Bucket holds one second of traffic, so short bursts are not
+ * delayed at all. Limiter of file system could have parent limiter of the provider, bytes are taken from both.
+ * <p>
+ * While there are foreground transfers background ones pay four times more for every byte, so they get about
+ * quarter of the bandwidth and take all of it when foreground traffic stops.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class BandwidthLimiter {
+    private static final int BACKGROUND_COST = 4;
+    private static final long FOREGROUND_WINDOW = SECONDS.toNanos(1);
+    private static final int SINGLE_BYTES = 8 * 1024;
+
+    private final BandwidthLimiter parent;
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+    private final AtomicLong lastForeground = new AtomicLong(System.nanoTime() - FOREGROUND_WINDOW);
+
+    private volatile long rate;
+
+    /**
+     * @param rate bytes per second, zero for unlimited
+     * @param parent shared limiter or null
+     */
+    BandwidthLimiter(long rate, BandwidthLimiter parent) {
+        this.parent = parent;
+
+        setRate(rate);
+    }
+
+    long getRate() {
+        return rate;
+    }
+
+    void setRate(long rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Bandwidth should not be negative [" + rate + "]");
+        }
+
+        this.rate = rate;
+    }
+
+    /**
+     * True if this or parent limiter has the limit.
+     */
+    boolean isLimited() {
+        return (rate > 0) || ((parent != null) && parent.isLimited());
+    }
+
+    /**
+     * Wait until bytes fit into the bandwidth of this and parent limiters.
+     *
+     * @param bytes number of transferred bytes
+     * @param type class of transfer
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    void acquire(long bytes, TrafficClass type) throws InterruptedIOException {
+        final long limit = rate;
+
+        if ((limit > 0) && (bytes > 0)) {
+            final long now = System.nanoTime();
+
+            if (type == FOREGROUND) {
+                lastForeground.set(now);
+            }
+
+            final boolean yield = (type != FOREGROUND) && ((now - lastForeground.get()) < FOREGROUND_WINDOW);
+            final long cost = (long) ((double) bytes * (yield ? BACKGROUND_COST : 1) * SECONDS.toNanos(1) / limit);
+
+            long arrival;
+
+            while (true) {
+                final long previous = theoreticalArrival.get();
+
+                arrival = Math.max(previous, now) + cost;
+
+                if (theoreticalArrival.compareAndSet(previous, arrival)) {
+                    break;
+                }
+            }
+
+            // Full bucket allows one second of traffic without waiting
+            park(arrival - SECONDS.toNanos(1));
+        }
+
+        if (parent != null) {
+            parent.acquire(bytes, type);
+        }
+    }
+
+    /**
+     * Stream which takes bytes from this limiter after every read. Limits are checked on every read, so stream is
+     * wrapped even without limits if there is a parent limiter - its limit could be set while the stream is read.
+     */
+    InputStream wrap(InputStream input, TrafficClass type) {
+        return ((rate > 0) || (parent != null)) ? new LimitedInputStream(input, type) : input;
+    }
+
+    private static void park(long deadline) throws InterruptedIOException {
+        long left;
+
+        while ((left = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+
+    private class LimitedInputStream extends FilterInputStream {
+        private final TrafficClass type;
+
+        private int singleBytes;
+
+        LimitedInputStream(InputStream in, TrafficClass type) {
+            super(in);
+
+            this.type = type;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+
+            // Single bytes are paid in batches
+            if ((result >= 0) && (++singleBytes >= SINGLE_BYTES)) {
+                acquire(singleBytes, type);
+
+                singleBytes = 0;
+            }
+
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int result = super.read(b, off, len);
+
+            if (result > 0) {
+                acquire(result, type);
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.vfss3;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.log;
+import static java.lang.Math.max;
+import static java.lang.Math.round;
+
+/**
+ * Thread-safe Bloom filter for S3 keys. Uses 64-bit hash splitted into two halves for double hashing, so each key
+ * is hashed only once.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+final class BloomFilter {
+    private static final double LN2 = log(2);
+
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+
+    /**
+     * Create filter with optimal number of bits and hash functions.
+     *
+     * @param expectedInsertions number of keys which will be put into filter
+     * @param falsePositiveRate desired false positive rate, between 0 and 1 exclusive
+     */
+    BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if ((falsePositiveRate <= 0) || (falsePositiveRate >= 1)) {
+            throw new IllegalArgumentException("False positive rate should be between 0 and 1 [" + falsePositiveRate + "]");
+        }
+
+        this.expectedInsertions = max(1, expectedInsertions);
+
+        long words = (long) ceil(optimalBits(this.expectedInsertions, falsePositiveRate) / 64.0);
+
+        if (words > MAX_WORDS) {
+            words = MAX_WORDS;
+        }
+
+        this.bits = new AtomicLongArray((int) max(1, words));
+        this.bitSize = bits.length() * 64L;
+        this.hashFunctions = optimalHashFunctions(this.expectedInsertions, bitSize);
+    }
+
+    static long optimalBits(long n, double p) {
+        return (long) ceil(-n * log(p) / (LN2 * LN2));
+    }
+
+    static int optimalHashFunctions(long n, long m) {
+        return (int) max(1, round((double) m / n * LN2));
+    }
+
+    /**
+     * Put key into the filter.
+     *
+     * @param key
+     */
+    void put(CharSequence key) {
+        final long hash = hash(key);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+
+        for (int i = 1; i <= hashFunctions; i++) {
+            long combined = h1 + ((long) i * h2);
+
+            if (combined < 0) {
+                combined = ~combined;
+            }
+
+            setBit(combined % bitSize);
+        }
+    }
+
+    /**
+     * Returns false if key definitely was not put into the filter.
+     *
+     * @param key
+     * @return
+     */
+    boolean mightContain(CharSequence key) {
+        final long hash = hash(key);
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+
+        for (int i = 1; i <= hashFunctions; i++) {
+            long combined = h1 + ((long) i * h2);
+
+            if (combined < 0) {
+                combined = ~combined;
+            }
+
+            if (!getBit(combined % bitSize)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    long getBitSize() {
+        return bitSize;
+    }
+
+    int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    private void setBit(long index) {
+        final int word = (int) (index >>> 6);
+        final long mask = 1L << index;
+
+        long current;
+
+        while (((current = bits.get(word)) & mask) == 0) {
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return;
+            }
+        }
+    }
+
+    private boolean getBit(long index) {
+        return (bits.get((int) (index >>> 6)) & (1L << index)) != 0;
+    }
+
+    /**
+     * FNV-1a over UTF-16 chars with murmur3 finalizer for better distribution of both halves.
+     */
+    private static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+
+        for (int i = 0, length = key.length(); i < length; i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter{" +
+                "expectedInsertions=" + expectedInsertions +
+                ", bitSize=" + bitSize +
+                ", hashFunctions=" + hashFunctions +
+                '}';
+    }
+}
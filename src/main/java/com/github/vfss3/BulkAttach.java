@@ -0,0 +1,200 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.vfs2.FileName.ROOT_PATH;
+import static org.apache.commons.vfs2.FileName.SEPARATOR;
+import static org.apache.commons.vfs2.FileType.FILE;
+import static org.apache.commons.vfs2.FileType.FOLDER;
+
+/**
+ * Attach many file objects at once. Names are grouped by parent folder, every group with more than one name is
+ * satisfied by listing of the folder while it is cheaper than separate probes, all other names are attached by
+ * concurrent HEAD requests.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class BulkAttach {
+    private final Log log = LogFactory.getLog(BulkAttach.class);
+
+    private final S3FileSystem fileSystem;
+    private final ExecutorService executor;
+
+    BulkAttach(S3FileSystem fileSystem, ExecutorService executor) {
+        this.fileSystem = requireNonNull(fileSystem);
+        this.executor = requireNonNull(executor);
+    }
+
+    /**
+     * Resolve and attach files.
+     *
+     * @param names
+     * @return attached file objects in the same order as names
+     * @throws FileSystemException
+     */
+    FileObject[] attach(Collection<? extends FileName> names) throws FileSystemException {
+        final FileObject[] result = new FileObject[names.size()];
+        final Map<FileName, Map<String, List<S3FileObject>>> groups = new LinkedHashMap<>();
+
+        int i = 0;
+
+        for (FileName name : names) {
+            final FileObject file = fileSystem.resolveFile(name);
+            final S3FileObject s3File = (S3FileObject) FileObjectUtils.unwrap(file);
+
+            result[i++] = file;
+
+            if ((s3File == null) || s3File.isAttached() || (name.getParent() == null)) {
+                continue;
+            }
+
+            groups.
+                    computeIfAbsent(name.getParent(), k -> new HashMap<>()).
+                    computeIfAbsent(s3File.getName().getS3KeyAs(FILE), k -> new ArrayList<>(1)).
+                    add(s3File);
+        }
+
+        final List<Future<Collection<List<S3FileObject>>>> tasks = new ArrayList<>();
+
+        for (Map.Entry<FileName, Map<String, List<S3FileObject>>> group : groups.entrySet()) {
+            if (group.getValue().size() > 1) {
+                tasks.add(executor.submit(() -> listGroup(group.getKey(), group.getValue())));
+            } else {
+                submitProbes(group.getValue().values(), tasks);
+            }
+        }
+
+        // Listings could add more probes so wait for them with growing list
+        for (int j = 0; j < tasks.size(); j++) {
+            try {
+                Collection<List<S3FileObject>> unresolved = tasks.get(j).get();
+
+                if (unresolved != null) {
+                    submitProbes(unresolved, tasks);
+                }
+            } catch (InterruptedException e) {
+                tasks.forEach(t -> t.cancel(true));
+
+                Thread.currentThread().interrupt();
+
+                throw new FileSystemException("Interrupted while attaching files", e);
+            } catch (ExecutionException e) {
+                tasks.forEach(t -> t.cancel(true));
+
+                if (e.getCause() instanceof FileSystemException) {
+                    throw (FileSystemException) e.getCause();
+                }
+
+                throw new FileSystemException(e.getCause());
+            }
+        }
+
+        return result;
+    }
+
+    private void submitProbes(
+            Collection<List<S3FileObject>> files, List<Future<Collection<List<S3FileObject>>>> tasks
+    ) {
+        for (List<S3FileObject> sameName : files) {
+            for (S3FileObject file : sameName) {
+                tasks.add(executor.submit(() -> {
+                    file.getType(); // Attach with usual probes
+
+                    return null;
+                }));
+            }
+        }
+    }
+
+    /**
+     * List parent folder page by page and attach all found names. Stops when number of pages reaches number of
+     * unresolved names because separate probes are cheaper after that.
+     *
+     * @return names which should be probed separately
+     */
+    private Collection<List<S3FileObject>> listGroup(
+            FileName parentName, Map<String, List<S3FileObject>> files
+    ) throws FileSystemException {
+        final String prefix = parentName.getPath().equals(ROOT_PATH) ?
+                "" :
+                ((S3FileName) parentName).getS3KeyAs(FOLDER);
+        final FileObject parent = fileSystem.resolveFile(parentName);
+
+        ObjectListing listing = fileSystem.listObjects(
+                new ListObjectsRequest().
+                        withBucketName(((S3FileName) fileSystem.getRootName()).getBucket()).
+                        withDelimiter(SEPARATOR).
+                        withPrefix(prefix)
+        );
+
+        int pages = 1;
+
+        while (true) {
+            for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                final List<S3FileObject> found = files.remove(summary.getKey());
+
+                if (found != null) {
+                    for (S3FileObject file : found) {
+                        file.attachFromListing(FILE, new ObjectMetadataHolder(summary), parent);
+                    }
+                }
+            }
+
+            for (String commonPrefix : listing.getCommonPrefixes()) {
+                final List<S3FileObject> found = files.remove(commonPrefix.substring(0, commonPrefix.length() - 1));
+
+                if (found != null) {
+                    for (S3FileObject file : found) {
+                        file.attachFromListing(FOLDER, ObjectMetadataHolder.virtualFolder(), parent);
+                    }
+                }
+            }
+
+            if (files.isEmpty()) {
+                return null;
+            }
+
+            if (!listing.isTruncated()) {
+                break;
+            }
+
+            if (pages >= files.size()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Stop listing of [" + prefix + "] after " + pages + " pages, probe " + files.size() + " names");
+                }
+
+                return files.values();
+            }
+
+            listing = fileSystem.listNextBatchOfObjects(listing);
+            pages++;
+        }
+
+        // Full listing is done so all other names are missed
+        for (List<S3FileObject> missed : files.values()) {
+            for (S3FileObject file : missed) {
+                file.attachFromListing(null, new ObjectMetadataHolder(), parent);
+            }
+        }
+
+        return null;
+    }
+}
@@ -22,37 +22,100 @@ import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystem;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemManager;
 import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
 import org.apache.commons.vfs2.provider.AbstractFileProvider;
 import org.apache.commons.vfs2.provider.FileProvider;
 import org.apache.commons.vfs2.provider.VfsComponent;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import static org.apache.commons.vfs2.FileName.ROOT_PATH;
 
 /**
  * A {@link FileProvider} that handles physical files, such as the files in a local fs, or on an FTP server. An
  * originating file system cannot be layered on top of another file system.
+ * <p>
+ * File systems without open streams could be closed after idle timeout or when there are too many of them, both
+ * limits are off by default. File objects of closed file system should not be used anymore, so enable it only if
+ * file objects are not kept longer than idle timeout. Defaults could be set with system properties
+ * {@value #IDLE_TIMEOUT_PROPERTY} (milliseconds) and {@value #MAX_FILE_SYSTEMS_PROPERTY}.
  */
 abstract class CachingFileProvider extends AbstractFileProvider {
-    private final ReadWriteLock globalLock = new ReentrantReadWriteLock();
-    private final Lock readLock = globalLock.readLock();
-    private final Lock writeLock = globalLock.writeLock();
+    public static final String IDLE_TIMEOUT_PROPERTY = "vfs.s3.idleTimeout";
+    public static final String MAX_FILE_SYSTEMS_PROPERTY = "vfs.s3.maxFileSystems";
+
+    private static final long MIN_SWEEP_PERIOD = 1000;
+    private static final long MAX_SWEEP_PERIOD = 60_000;
+
+    private static final FileSystemOptions EMPTY_OPTIONS = new FileSystemOptions();
+    private static final FileSystem[] NO_FILE_SYSTEMS = new FileSystem[0];
+
+    /**
+     * Lookups are lock-free, only creation and removal of file systems are serialized by this lock.
+     */
+    private final Object creationLock = new Object();
 
-    private final Map<FileSystemKey, FileSystem> fileSystems = new TreeMap<>();
+    /**
+     * File systems by root name, usually one per name. Arrays are replaced under creation lock and never modified.
+     */
+    private final ConcurrentMap<Comparable<?>, FileSystem[]> fileSystems = new ConcurrentHashMap<>();
     private final Log log = LogFactory.getLog(getClass());
 
+    private volatile long idleTimeout = Long.getLong(IDLE_TIMEOUT_PROPERTY, 0);
+    private volatile int maxFileSystems = Integer.getInteger(MAX_FILE_SYSTEMS_PROPERTY, 0);
+
+    private ScheduledExecutorService sweeper;
+
     public CachingFileProvider() {
         super();
     }
 
+    /**
+     * Close file systems without open streams after this time without usage.
+     *
+     * @param idleTimeout timeout in milliseconds, zero to keep file systems forever
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("Idle timeout should not be negative [" + idleTimeout + "]");
+        }
+
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Close least recently used file systems without open streams when there are more of them.
+     *
+     * @param maxFileSystems max number of file systems, zero for unbounded
+     */
+    public void setMaxFileSystems(int maxFileSystems) {
+        if (maxFileSystems < 0) {
+            throw new IllegalArgumentException("Max number should not be negative [" + maxFileSystems + "]");
+        }
+
+        this.maxFileSystems = maxFileSystems;
+    }
+
+    public int getMaxFileSystems() {
+        return maxFileSystems;
+    }
+
     /**
      * Creates a {@link FileSystem}. If the returned FileSystem implements {@link VfsComponent}, it will be initialised.
      *
@@ -106,9 +169,7 @@ abstract class CachingFileProvider extends AbstractFileProvider {
         FileSystem fs = findFileSystem(rootName, fileSystemOptions);
 
         if (fs == null) {
-            writeLock.lock();
-
-            try {
+            synchronized (creationLock) {
                 // Double check
                 fs = findFileSystem(rootName, fileSystemOptions);
 
@@ -122,25 +183,43 @@ abstract class CachingFileProvider extends AbstractFileProvider {
 
                     addFileSystem(rootName, fs);
                 }
-            } finally {
-                writeLock.unlock();
             }
+
+            evictFileSystems(fs);
         }
 
         return fs.resolveFile(name);
     }
 
+    /**
+     * Only root name is hashed on lookup. Options are compared by identity first, it hits when files are resolved
+     * relative to a file of the same file system, and compared fully only for other instances.
+     */
     @Override
     protected FileSystem findFileSystem(Comparable<?> rootName, FileSystemOptions fileSystemProps) {
-        final FileSystemKey treeKey = new FileSystemKey(rootName, fileSystemProps);
+        final FileSystem[] candidates = fileSystems.get(rootName);
 
-        readLock.lock();
+        if (candidates == null) {
+            return null;
+        }
 
-        try {
-            return fileSystems.get(treeKey);
-        } finally {
-            readLock.unlock();
+        for (FileSystem fs : candidates) {
+            if (fs.getFileSystemOptions() == fileSystemProps) {
+                return fs;
+            }
         }
+
+        final FileSystemOptions options = (fileSystemProps != null) ? fileSystemProps : EMPTY_OPTIONS;
+
+        for (FileSystem fs : candidates) {
+            final FileSystemOptions other = fs.getFileSystemOptions();
+
+            if (options.equals((other != null) ? other : EMPTY_OPTIONS)) {
+                return fs;
+            }
+        }
+
+        return null;
     }
 
     @Override
@@ -152,36 +231,156 @@ abstract class CachingFileProvider extends AbstractFileProvider {
             log.debug("Add new file system [key=" + key + ",options=" + fs.getFileSystemOptions() + "]");
         }
 
-        final FileSystemKey treeKey = new FileSystemKey(key, fs.getFileSystemOptions());
+        synchronized (creationLock) {
+            final FileSystem[] current = fileSystems.getOrDefault(key, NO_FILE_SYSTEMS);
+            final FileSystem[] updated = Arrays.copyOf(current, current.length + 1);
 
-        fileSystems.put(treeKey, fs);
+            updated[current.length] = fs;
+
+            fileSystems.put(key, updated);
+
+            startSweeper();
+        }
     }
 
     @Override
     public void freeUnusedResources() {
-        // Nothing to do with resources
+        evictFileSystems(null);
     }
 
     @Override
-    public void closeFileSystem(FileSystem fileSystem) {
-        writeLock.lock();
+    public void close() {
+        synchronized (creationLock) {
+            if (sweeper != null) {
+                sweeper.shutdownNow();
+                sweeper = null;
+            }
+        }
 
-        try {
-            List<FileSystemKey> keys = new LinkedList<>();
+        super.close();
+    }
 
-            for (Map.Entry<FileSystemKey, FileSystem> entry : fileSystems.entrySet()) {
-                if (entry.getValue().equals(fileSystem)) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Remove file system " + entry.getKey());
+    /**
+     * Close idle file systems and least recently used ones over the limit, file systems with open streams are kept.
+     *
+     * @param keep file system which should not be closed, could be null
+     */
+    void evictFileSystems(FileSystem keep) {
+        final long timeout = MILLISECONDS.toNanos(idleTimeout);
+        final int max = maxFileSystems;
+
+        if ((timeout == 0) && (max == 0)) {
+            return;
+        }
+
+        // Both sweeper and lookups evict, so candidates are checked and closed under the lock
+        synchronized (creationLock) {
+            final List<AbstractFileSystem> candidates = new ArrayList<>();
+            int total = 0;
+
+            for (FileSystem[] named : fileSystems.values()) {
+                for (FileSystem fs : named) {
+                    if ((fs != keep) && (fs instanceof AbstractFileSystem) && !((AbstractFileSystem) fs).isOpen()) {
+                        candidates.add((AbstractFileSystem) fs);
                     }
+                }
+
+                total += named.length;
+            }
+
+            // Most idle first
+            candidates.sort(Comparator.comparingLong(AbstractFileSystem::getIdleTime).reversed());
+
+            int excess = (max > 0) ? (total - max) : 0;
+
+            for (AbstractFileSystem fs : candidates) {
+                final boolean idle = (timeout > 0) && (fs.getIdleTime() > timeout);
+
+                if (!idle && (excess <= 0)) {
+                    break;
+                }
 
-                    keys.add(entry.getKey());
+                // Stream could be opened since candidates were collected
+                if (fs.isOpen()) {
+                    continue;
                 }
+
+                if (log.isDebugEnabled()) {
+                    log.debug("Close " + (idle ? "idle" : "least recently used") + " file system " + fs.getRootName());
+                }
+
+                evict(fs);
+
+                excess--;
+            }
+        }
+    }
+
+    private void evict(FileSystem fs) {
+        final FileSystemManager manager = getContext().getFileSystemManager();
+
+        if (manager instanceof DefaultFileSystemManager) {
+            // Clears files cache of the manager too
+            ((DefaultFileSystemManager) manager).closeFileSystem(fs);
+        } else {
+            closeFileSystem(fs);
+        }
+    }
+
+    /**
+     * Start background eviction of idle file systems if it is enabled.
+     */
+    private void startSweeper() {
+        final long timeout = idleTimeout;
+
+        if ((timeout == 0) || (sweeper != null)) {
+            return;
+        }
+
+        final long period = Math.max(MIN_SWEEP_PERIOD, Math.min(MAX_SWEEP_PERIOD, timeout / 2));
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vfs-s3-eviction");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                evictFileSystems(null);
+            } catch (RuntimeException e) {
+                log.warn("Not able to evict file systems", e);
             }
+        }, period, period, MILLISECONDS);
+    }
+
+    @Override
+    public void closeFileSystem(FileSystem fileSystem) {
+        synchronized (creationLock) {
+            for (Map.Entry<Comparable<?>, FileSystem[]> entry : fileSystems.entrySet()) {
+                final List<FileSystem> kept = new ArrayList<>();
+
+                for (FileSystem fs : entry.getValue()) {
+                    if (fs.equals(fileSystem)) {
+                        if (log.isDebugEnabled()) {
+                            log.debug(
+                                    "Remove file system [key=" + entry.getKey() +
+                                    ",options=" + fs.getFileSystemOptions() + "]"
+                            );
+                        }
+                    } else {
+                        kept.add(fs);
+                    }
+                }
 
-            keys.forEach(fileSystems::remove);
-        } finally {
-            writeLock.unlock();
+                if (kept.isEmpty()) {
+                    fileSystems.remove(entry.getKey());
+                } else if (kept.size() < entry.getValue().length) {
+                    fileSystems.put(entry.getKey(), kept.toArray(NO_FILE_SYSTEMS));
+                }
+            }
         }
 
         removeComponent(fileSystem);
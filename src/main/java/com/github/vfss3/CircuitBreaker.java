@@ -0,0 +1,226 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Circuit breaker for requests of one file system, so for one endpoint and bucket. Counts failed and slow requests
+ * in the sliding window of last 10 seconds, open circuit rejects requests with {@link S3CircuitOpenException}
+ * without waiting for all retries of the SDK.
+ * <p>
+ * Failure is any client side error like connection error or timeout, server error except throttling and request
+ * slower than the threshold. Other responses of S3 like 404 mean that the endpoint works. Circuit opens when there
+ * are at least 20 requests in the window and share of failures reaches the limit. After open interval it lets one
+ * probe request through - success closes the circuit and failure opens it again.
+ * <p>
+ * Counters in the window are updated without locks, so they are approximate when second changes under load.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int WINDOW = 10;
+    private static final int MIN_REQUESTS = 20;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final Log log = LogFactory.getLog(CircuitBreaker.class);
+
+    private final String name;
+    private final double failureRate;
+    private final long openInterval;
+    private final long slowThreshold;
+    private final AtomicLongArray seconds = new AtomicLongArray(WINDOW);
+    private final AtomicLongArray requests = new AtomicLongArray(WINDOW);
+    private final AtomicLongArray failures = new AtomicLongArray(WINDOW);
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private long probeStartedAt;
+
+    /**
+     * @param name endpoint and bucket for logs and exceptions
+     * @param failureRate share of failures which opens the circuit
+     * @param openInterval time in milliseconds before probe request
+     * @param slowThreshold time in milliseconds after which request counts as failure, zero to ignore latency
+     */
+    CircuitBreaker(String name, double failureRate, long openInterval, long slowThreshold) {
+        if ((failureRate <= 0) || (failureRate > 1)) {
+            throw new IllegalArgumentException("Failure rate should be between 0 and 1 [" + failureRate + "]");
+        }
+
+        this.name = name;
+        this.failureRate = failureRate;
+        this.openInterval = MILLISECONDS.toNanos(openInterval);
+        this.slowThreshold = MILLISECONDS.toNanos(slowThreshold);
+
+        for (int i = 0; i < WINDOW; i++) {
+            seconds.set(i, EMPTY);
+        }
+    }
+
+    State getState() {
+        return state;
+    }
+
+    /**
+     * Check that request could be sent.
+     *
+     * @throws S3CircuitOpenException if circuit is open or probe request is already sent
+     */
+    void acquire() throws S3CircuitOpenException {
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+
+        synchronized (this) {
+            if (state == State.OPEN) {
+                final long left = openedAt + openInterval - now;
+
+                if (left > 0) {
+                    throw new S3CircuitOpenException(name, NANOSECONDS.toMillis(left));
+                }
+
+                state = State.HALF_OPEN;
+                probeStartedAt = now - openInterval;
+            }
+
+            if (state == State.HALF_OPEN) {
+                // Probe without result for whole interval was coalesced or lost, let the next one go
+                final long left = probeStartedAt + openInterval - now;
+
+                if (left > 0) {
+                    throw new S3CircuitOpenException(name, NANOSECONDS.toMillis(left));
+                }
+
+                probeStartedAt = now;
+            }
+        }
+    }
+
+    /**
+     * Result of sent request.
+     *
+     * @param nanos time of the request
+     * @param latencyBound false if time depends on size of content
+     * @param e error or null for success
+     */
+    void record(long nanos, boolean latencyBound, Exception e) {
+        if (e instanceof AbortedException) {
+            // Interrupted by the caller, nothing is known about endpoint
+            return;
+        }
+
+        final boolean failed = isFailure(e) || (latencyBound && (slowThreshold > 0) && (nanos > slowThreshold));
+        final long now = System.nanoTime();
+
+        switch (state) {
+            case CLOSED:
+                count(now, failed);
+
+                if (failed && isFailing(now)) {
+                    open(now);
+                }
+                break;
+            case HALF_OPEN:
+                synchronized (this) {
+                    if (state != State.HALF_OPEN) {
+                        break;
+                    }
+
+                    if (failed) {
+                        open(now);
+                    } else {
+                        close();
+                    }
+                }
+                break;
+            default:
+                // Requests sent before open
+        }
+    }
+
+    private static boolean isFailure(Exception e) {
+        if (e == null) {
+            return false;
+        }
+
+        if (e instanceof AmazonServiceException) {
+            return (((AmazonServiceException) e).getStatusCode() >= 500) && !AdaptiveRateLimiter.isThrottling(e);
+        }
+
+        return true;
+    }
+
+    private void count(long now, boolean failed) {
+        final long second = NANOSECONDS.toSeconds(now);
+        final int index = (int) Math.floorMod(second, (long) WINDOW);
+        final long current = seconds.get(index);
+
+        if ((current != second) && seconds.compareAndSet(index, current, second)) {
+            requests.set(index, 0);
+            failures.set(index, 0);
+        }
+
+        requests.incrementAndGet(index);
+
+        if (failed) {
+            failures.incrementAndGet(index);
+        }
+    }
+
+    private boolean isFailing(long now) {
+        final long second = NANOSECONDS.toSeconds(now);
+
+        long total = 0;
+        long failed = 0;
+
+        for (int i = 0; i < WINDOW; i++) {
+            final long bucket = seconds.get(i);
+
+            if ((bucket != EMPTY) && ((second - bucket) < WINDOW)) {
+                total += requests.get(i);
+                failed += failures.get(i);
+            }
+        }
+
+        return (total >= MIN_REQUESTS) && (failed >= (total * failureRate));
+    }
+
+    private synchronized void open(long now) {
+        if (state != State.OPEN) {
+            log.warn(
+                    "Open circuit for [" + name + "] for " + NANOSECONDS.toMillis(openInterval) +
+                    "ms after failed requests"
+            );
+        }
+
+        state = State.OPEN;
+        openedAt = now;
+    }
+
+    private synchronized void close() {
+        for (int i = 0; i < WINDOW; i++) {
+            seconds.set(i, EMPTY);
+        }
+
+        state = State.CLOSED;
+
+        if (log.isInfoEnabled()) {
+            log.info("Close circuit for [" + name + "] after successful probe");
+        }
+    }
+}
@@ -30,10 +30,14 @@ import org.apache.commons.vfs2.util.RandomAccessMode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.WeakReference;
 import java.security.cert.Certificate;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The content of a file.
@@ -59,44 +63,45 @@ final class DefaultFileContent implements FileContent {
     private FileContentInfo fileContentInfo;
     private final FileContentInfoFactory fileContentInfoFactory;
 
-    private final ThreadLocal<FileContentThreadData> threadLocal = new ThreadLocal<>();
     private boolean resetAttributes;
 
+    /**
+     * Open streams and random access handles of this content. Kept on content level instead of thread local so
+     * stream could be closed from any thread and pooled or virtual threads don't leave stale entries behind. Every
+     * stream weakly remembers thread which opened it, {@link #close()} and {@link #isOpen()} see only streams of the
+     * calling thread.
+     */
+    private final Set<FileContentInputStream> inputStreams = ConcurrentHashMap.newKeySet();
+    private final Set<FileRandomAccessContent> randomAccessContents = ConcurrentHashMap.newKeySet();
+    private final Set<FileContentOutputStream> outputStreams = ConcurrentHashMap.newKeySet();
+
     /**
      * Counts open streams for this file.
      */
-    private int openStreams;
+    private final AtomicInteger openStreams = new AtomicInteger();
+
+    /**
+     * Guards attributes. Explicit lock instead of monitor because attributes are loaded from network and monitor pins
+     * carrier thread of virtual thread for the whole call.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
 
     public DefaultFileContent(final AbstractFileObject file, final FileContentInfoFactory fileContentInfoFactory) {
         this.fileObject = file;
         this.fileContentInfoFactory = fileContentInfoFactory;
     }
 
-    private FileContentThreadData getOrCreateThreadData() {
-        FileContentThreadData data = this.threadLocal.get();
-        if (data == null) {
-            data = new FileContentThreadData();
-            this.threadLocal.set(data);
-        }
-        return data;
-    }
-
     void streamOpened() {
-        synchronized (this) {
-            openStreams++;
-        }
+        openStreams.incrementAndGet();
+
         ((AbstractFileSystem) fileObject.getFileSystem()).streamOpened();
     }
 
     void streamClosed() {
-        synchronized (this) {
-            if (openStreams > 0) {
-                openStreams--;
-                if (openStreams < 1) {
-                    fileObject.notifyAllStreamsClosed();
-                }
-            }
+        if (openStreams.decrementAndGet() == 0) {
+            fileObject.notifyAllStreamsClosed();
         }
+
         ((AbstractFileSystem) fileObject.getFileSystem()).streamClosed();
     }
 
@@ -211,10 +216,13 @@ final class DefaultFileContent implements FileContent {
         }
         if (resetAttributes || roAttrs == null) {
             try {
-                synchronized (this) {
+                lock.lock();
+                try {
                     attrs = fileObject.doGetAttributes();
                     roAttrs = Collections.unmodifiableMap(attrs);
                     resetAttributes = false;
+                } finally {
+                    lock.unlock();
                 }
             } catch (final Exception e) {
                 throw new FileSystemException("vfs.provider/get-attributes.error", fileObject, e);
@@ -375,7 +383,7 @@ final class DefaultFileContent implements FileContent {
 
         final FileRandomAccessContent rac = new FileRandomAccessContent(fileObject, rastr);
 
-        getOrCreateThreadData().addRastr(rac);
+        randomAccessContents.add(rac);
         streamOpened();
 
         return rac;
@@ -432,51 +440,52 @@ final class DefaultFileContent implements FileContent {
     }
 
     /**
-     * Closes all resources used by the content, including all streams, readers and writers.
+     * Closes all resources used by the content, including all streams, readers and writers, which were opened by the
+     * calling thread. Streams of other threads are kept open, same as with thread local tracking.
      *
      * @throws FileSystemException if an error occurs.
      */
     @Override
     public void close() throws FileSystemException {
         FileSystemException caught = null;
-        try {
-            final FileContentThreadData fileContentThreadData = getOrCreateThreadData();
 
-            // Close the input stream
-            while (fileContentThreadData.getInstrsSize() > 0) {
-                final FileContentInputStream inputStream = (FileContentInputStream) fileContentThreadData
-                        .removeInstr(0);
-                try {
-                    inputStream.close();
-                } catch (final FileSystemException ex) {
-                    caught = ex;
+        // Close the input streams
+        for (FileContentInputStream inputStream : inputStreams) {
+            if (!isCurrentThread(inputStream.owner)) {
+                continue;
+            }
 
-                }
+            try {
+                inputStream.close();
+            } catch (final FileSystemException ex) {
+                caught = ex;
             }
+        }
 
-            // Close the randomAccess stream
-            while (fileContentThreadData.getRastrsSize() > 0) {
-                final FileRandomAccessContent randomAccessContent = (FileRandomAccessContent) fileContentThreadData
-                        .removeRastr(0);
-                try {
-                    randomAccessContent.close();
-                } catch (final FileSystemException ex) {
-                    caught = ex;
-                }
+        // Close the randomAccess streams
+        for (FileRandomAccessContent randomAccessContent : randomAccessContents) {
+            if (!isCurrentThread(randomAccessContent.owner)) {
+                continue;
             }
 
-            // Close the output stream
-            final FileContentOutputStream outputStream = fileContentThreadData.getOutstr();
-            if (outputStream != null) {
-                fileContentThreadData.setOutstr(null);
-                try {
-                    outputStream.close();
-                } catch (final FileSystemException ex) {
-                    caught = ex;
-                }
+            try {
+                randomAccessContent.close();
+            } catch (final FileSystemException ex) {
+                caught = ex;
+            }
+        }
+
+        // Close the output streams
+        for (FileContentOutputStream outputStream : outputStreams) {
+            if (!isCurrentThread(outputStream.owner)) {
+                continue;
+            }
+
+            try {
+                outputStream.close();
+            } catch (final FileSystemException ex) {
+                caught = ex;
             }
-        } finally {
-            threadLocal.remove();
         }
 
         // throw last error (out >> rac >> input) after all closes have been tried
@@ -494,11 +503,11 @@ final class DefaultFileContent implements FileContent {
         // Get the raw input stream
         final InputStream inputStream = fileObject.getInputStream();
 
-        final InputStream wrappedInputStream = bufferSize == 0 ?
+        final FileContentInputStream wrappedInputStream = bufferSize == 0 ?
             new FileContentInputStream(fileObject, inputStream) :
             new FileContentInputStream(fileObject, inputStream, bufferSize);
 
-        getOrCreateThreadData().addInstr(wrappedInputStream);
+        inputStreams.add(wrappedInputStream);
         streamOpened();
 
         return wrappedInputStream;
@@ -508,10 +517,11 @@ final class DefaultFileContent implements FileContent {
         /*
          * if (getThreadData().getState() != STATE_NONE)
          */
-        final FileContentThreadData streams = getOrCreateThreadData();
-
-        if (streams.getOutstr() != null) {
-            throw new FileSystemException("vfs.provider/write-in-use.error", fileObject);
+        // One output stream per thread, same as before
+        for (FileContentOutputStream outputStream : outputStreams) {
+            if (isCurrentThread(outputStream.owner)) {
+                throw new FileSystemException("vfs.provider/write-in-use.error", fileObject);
+            }
         }
 
         // Get the raw output stream
@@ -521,7 +531,7 @@ final class DefaultFileContent implements FileContent {
         final FileContentOutputStream wrapped = bufferSize == 0 ?
             new FileContentOutputStream(fileObject, outstr) :
             new FileContentOutputStream(fileObject, outstr, bufferSize);
-        streams.setOutstr(wrapped);
+        outputStreams.add(wrapped);
         streamOpened();
 
         return wrapped;
@@ -531,64 +541,62 @@ final class DefaultFileContent implements FileContent {
      * Handles the end of input stream.
      */
     private void endInput(final FileContentInputStream instr) {
-        final FileContentThreadData fileContentThreadData = threadLocal.get();
-        if (fileContentThreadData != null) {
-            fileContentThreadData.removeInstr(instr);
-        }
-        if (fileContentThreadData == null || !fileContentThreadData.hasStreams()) {
-            // remove even when no value is set to remove key
-            threadLocal.remove();
+        if (inputStreams.remove(instr)) {
+            streamClosed();
         }
-        streamClosed();
     }
 
     /**
      * Handles the end of random access.
      */
-    private void endRandomAccess(final RandomAccessContent rac) {
-        final FileContentThreadData fileContentThreadData = threadLocal.get();
-        if (fileContentThreadData != null) {
-            fileContentThreadData.removeRastr(rac);
-        }
-        if (fileContentThreadData == null || !fileContentThreadData.hasStreams()) {
-            // remove even when no value is set to remove key
-            threadLocal.remove();
+    private void endRandomAccess(final FileRandomAccessContent rac) {
+        if (randomAccessContents.remove(rac)) {
+            streamClosed();
         }
-        streamClosed();
     }
 
     /**
      * Handles the end of output stream.
      */
-    private void endOutput() throws Exception {
-        final FileContentThreadData fileContentThreadData = threadLocal.get();
-        if (fileContentThreadData != null) {
-            fileContentThreadData.setOutstr(null);
+    private void endOutput(final FileContentOutputStream outstr) throws Exception {
+        if (outputStreams.remove(outstr)) {
+            streamClosed();
+            fileObject.endOutput();
         }
-        if (fileContentThreadData == null || !fileContentThreadData.hasStreams()) {
-            // remove even when no value is set to remove key
-            threadLocal.remove();
-        }
-        streamClosed();
-        fileObject.endOutput();
     }
 
     /**
      * Checks if a input and/or output stream is open.
      * <p>
-     * This checks only the scope of the current thread.
+     * This only checks streams opened by the current thread, see {@link #isOpenGlobal()} for all threads.
      * </p>
      *
      * @return true if this is the case
      */
     @Override
     public boolean isOpen() {
-        final FileContentThreadData fileContentThreadData = threadLocal.get();
-        if (fileContentThreadData != null && fileContentThreadData.hasStreams()) {
-            return true;
+        if (openStreams.get() == 0) {
+            return false;
+        }
+
+        for (FileContentInputStream inputStream : inputStreams) {
+            if (isCurrentThread(inputStream.owner)) {
+                return true;
+            }
+        }
+
+        for (FileRandomAccessContent randomAccessContent : randomAccessContents) {
+            if (isCurrentThread(randomAccessContent.owner)) {
+                return true;
+            }
+        }
+
+        for (FileContentOutputStream outputStream : outputStreams) {
+            if (isCurrentThread(outputStream.owner)) {
+                return true;
+            }
         }
-        // threadData.get() created empty entry
-        threadLocal.remove();
+
         return false;
     }
 
@@ -598,9 +606,15 @@ final class DefaultFileContent implements FileContent {
      * @return true if this is the case
      */
     public boolean isOpenGlobal() {
-        synchronized (this) {
-            return openStreams > 0;
-        }
+        return openStreams.get() > 0;
+    }
+
+    /**
+     * Streams keep thread which opened them in weak reference, so finished pooled or virtual threads could be
+     * collected while their streams are still open.
+     */
+    private static boolean isCurrentThread(WeakReference<Thread> owner) {
+        return owner.get() == Thread.currentThread();
     }
 
     /**
@@ -609,6 +623,7 @@ final class DefaultFileContent implements FileContent {
     private final class FileContentInputStream extends MonitorInputStream {
         // avoid gc
         private final FileObject file;
+        private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
 
         FileContentInputStream(final FileObject file, final InputStream instr) {
             super(instr);
@@ -651,6 +666,7 @@ final class DefaultFileContent implements FileContent {
     private final class FileRandomAccessContent extends MonitorRandomAccessContent {
         // also avoids gc
         private final FileObject file;
+        private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
 
         FileRandomAccessContent(final FileObject file, final RandomAccessContent content) {
             super(content);
@@ -685,6 +701,7 @@ final class DefaultFileContent implements FileContent {
     final class FileContentOutputStream extends MonitorOutputStream {
         // avoid gc
         private final FileObject file;
+        private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
 
         FileContentOutputStream(final FileObject file, final OutputStream outstr) {
             super(outstr);
@@ -717,7 +734,7 @@ final class DefaultFileContent implements FileContent {
                 super.onClose();
             } finally {
                 try {
-                    endOutput();
+                    endOutput(this);
                 } catch (final Exception e) {
                     throw new FileSystemException("vfs.provider/close-outstr.error", file, e);
                 }
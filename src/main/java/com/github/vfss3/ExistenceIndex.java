@@ -0,0 +1,193 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.commons.vfs2.FileName.SEPARATOR_CHAR;
+
+/**
+ * Probabilistic index of all keys and folder prefixes under some root inside a bucket. Built from one flat listing
+ * and rebuilt periodically, so it could answer "definitely not present" without any request to S3.
+ * <p>
+ * Objects created by other clients after the last rebuild are invisible until the next one, so it fits only
+ * read-mostly buckets. Objects created through the same file system are added right away.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class ExistenceIndex {
+    private final Log log = LogFactory.getLog(ExistenceIndex.class);
+
+    private final String bucket;
+    private final String prefix;
+    private final double falsePositiveRate;
+
+    private volatile long expectedKeys;
+    private volatile BloomFilter current;
+    private volatile BloomFilter building;
+
+    /**
+     * @param bucket bucket to index
+     * @param prefix only keys with this prefix are indexed, empty string for whole bucket
+     * @param expectedKeys initial guess for the number of keys
+     * @param falsePositiveRate desired false positive rate
+     */
+    ExistenceIndex(String bucket, String prefix, long expectedKeys, double falsePositiveRate) {
+        this.bucket = requireNonNull(bucket);
+        this.prefix = requireNonNull(prefix);
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+
+        // Fail fast on wrong configuration
+        new BloomFilter(1, falsePositiveRate);
+    }
+
+    /**
+     * Is index built at least once.
+     */
+    boolean isReady() {
+        return (current != null);
+    }
+
+    /**
+     * Does index cover this key.
+     */
+    boolean covers(String key) {
+        return key.startsWith(prefix);
+    }
+
+    /**
+     * Returns false only if the key definitely doesn't exist. Keys outside of the index and calls before
+     * the first rebuild always return true.
+     *
+     * @param key object key or folder prefix with trailing slash
+     */
+    boolean mightExist(String key) {
+        final BloomFilter filter = current;
+
+        if ((filter == null) || !covers(key)) {
+            return true;
+        }
+
+        return filter.mightContain(key);
+    }
+
+    /**
+     * Register key created through the file system together with all its parent folders.
+     *
+     * @param key
+     */
+    void add(String key) {
+        if (!covers(key)) {
+            return;
+        }
+
+        final BloomFilter filter = current;
+        final BloomFilter next = building;
+
+        if (filter != null) {
+            putWithParents(filter, key, 0);
+        }
+
+        if (next != null) {
+            putWithParents(next, key, 0);
+        }
+    }
+
+    /**
+     * Rebuild index from one flat listing of the prefix.
+     *
+     * @param first request for the first page of listing
+     * @param next request for the next page of listing
+     */
+    void rebuild(Function<ListObjectsRequest, ObjectListing> first, UnaryOperator<ObjectListing> next) {
+        final long started = System.currentTimeMillis();
+        final BloomFilter filter = new BloomFilter(expectedKeys, falsePositiveRate);
+
+        building = filter;
+
+        try {
+            ObjectListing listing = first.apply(new ListObjectsRequest().withBucketName(bucket).withPrefix(prefix));
+
+            long keys = 0;
+            String previous = "";
+
+            while (true) {
+                for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                    final String key = summary.getKey();
+
+                    putWithParents(filter, key, commonPrefixLength(previous, key));
+
+                    previous = key;
+                    keys++;
+                }
+
+                if (!listing.isTruncated()) {
+                    break;
+                }
+
+                listing = next.apply(listing);
+            }
+
+            if (keys > filter.getExpectedInsertions()) {
+                log.warn(
+                        "Existence index for [" + bucket + "/" + prefix + "] has " + keys +
+                        " keys but was sized for " + filter.getExpectedInsertions() +
+                        " - false positive rate is higher than configured until next rebuild"
+                );
+            }
+
+            // Leave some space for growth
+            expectedKeys = Math.max(expectedKeys, keys + keys / 4);
+            current = filter;
+
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Rebuilt existence index [bucket=" + bucket + ",prefix=" + prefix + ",keys=" + keys +
+                        ",filter=" + filter + ",time=" + (System.currentTimeMillis() - started) + "ms]"
+                );
+            }
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * Put key and all parent folders. Listing is sorted so parents shared with previous key are already inside.
+     */
+    private void putWithParents(BloomFilter filter, String key, int skip) {
+        filter.put(key);
+
+        for (int i = key.indexOf(SEPARATOR_CHAR, skip); (i >= 0) && (i < key.length() - 1); i = key.indexOf(SEPARATOR_CHAR, i + 1)) {
+            filter.put(key.subSequence(0, i + 1));
+        }
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        final int length = Math.min(a.length(), b.length());
+
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return i;
+            }
+        }
+
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return "ExistenceIndex{" +
+                "bucket='" + bucket + '\'' +
+                ", prefix='" + prefix + '\'' +
+                ", falsePositiveRate=" + falsePositiveRate +
+                ", filter=" + current +
+                '}';
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.vfss3;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.events.AbstractFileChangeEvent;
+import org.apache.commons.vfs2.events.ChangedEvent;
+import org.apache.commons.vfs2.events.CreateEvent;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous delivery of file change events for one file system. Names with pending events are kept in bounded
+ * queue and delivered one by one from single drain task, so events for the same name keep their order.
+ * <p>
+ * Events for the name which is still waiting in the queue are coalesced - the last one wins, except change after
+ * create which is still delivered as create. When queue is full the event is delivered by the caller thread. Every
+ * delivery holds the same lock, so listeners of one file system are never called concurrently.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class FileEventDispatcher {
+    private final Executor executor;
+    private final Consumer<AbstractFileChangeEvent> listeners;
+    private final BlockingQueue<FileName> queue;
+    private final Map<FileName, AbstractFileChangeEvent> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Serializes delivery by drain task and by callers on full queue. Explicit lock instead of monitor because
+     * listeners could block and monitor pins carrier thread of virtual thread.
+     */
+    private final ReentrantLock delivery = new ReentrantLock();
+
+    /**
+     * @param executor executor for drain task
+     * @param queueSize max number of names with pending events
+     * @param listeners delivery of one event to all listeners of its file
+     */
+    FileEventDispatcher(Executor executor, int queueSize, Consumer<AbstractFileChangeEvent> listeners) {
+        this.executor = executor;
+        this.listeners = listeners;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    void dispatch(AbstractFileChangeEvent event) {
+        final FileName name = event.getFileObject().getName();
+        final boolean[] added = new boolean[1];
+
+        pending.compute(name, (key, previous) -> {
+            if (previous == null) {
+                added[0] = true;
+
+                return event;
+            }
+
+            return coalesce(previous, event);
+        });
+
+        if (added[0] && !queue.offer(name)) {
+            deliver(name);
+
+            return;
+        }
+
+        scheduleDrain();
+    }
+
+    /**
+     * Number of names with pending events.
+     */
+    int getPendingEvents() {
+        return pending.size();
+    }
+
+    private void scheduleDrain() {
+        if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Event threads are busy or closed, deliver the rest by the caller
+                drain();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            FileName name;
+
+            while ((name = queue.poll()) != null) {
+                deliver(name);
+            }
+        } finally {
+            draining.set(false);
+        }
+
+        // Event could be added after the last poll but before reset of the flag
+        scheduleDrain();
+    }
+
+    /**
+     * Deliver pending event of the name. Event is taken under the lock, so the next event for the same name couldn't
+     * overtake the one which is being delivered.
+     */
+    private void deliver(FileName name) {
+        delivery.lock();
+
+        try {
+            final AbstractFileChangeEvent event = pending.remove(name);
+
+            if (event != null) {
+                listeners.accept(event);
+            }
+        } finally {
+            delivery.unlock();
+        }
+    }
+
+    private static AbstractFileChangeEvent coalesce(AbstractFileChangeEvent previous, AbstractFileChangeEvent next) {
+        if ((previous instanceof CreateEvent) && (next instanceof ChangedEvent)) {
+            return previous;
+        }
+
+        return next;
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.vfss3;
+
+/**
+ * Name of the file object method which is executed by the current thread, for {@link S3RequestInfo#getFileOperation()}.
+ * Only the outermost method is kept, so all requests of {@code copyFrom} are tagged with it even if they are sent
+ * from {@code getChildren} or {@code exists} inside. Thread local value is never removed, only cleared, so tagging
+ * doesn't allocate anything after the first method.
+ * <pre>
+ * return FileOperationTag.call("delete", super::delete);
+ * </pre>
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+final class FileOperationTag {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private FileOperationTag() {
+    }
+
+    /**
+     * @param operation name of the method
+     * @return true if the current thread was not tagged before and should be cleared with {@link #exit(boolean)}
+     */
+    static boolean enter(String operation) {
+        if (CURRENT.get() != null) {
+            return false;
+        }
+
+        CURRENT.set(operation);
+
+        return true;
+    }
+
+    /**
+     * @param tagged result of {@link #enter(String)}
+     */
+    static void exit(boolean tagged) {
+        if (tagged) {
+            CURRENT.set(null);
+        }
+    }
+
+    /**
+     * Execute the call tagged with the operation.
+     *
+     * @param operation name of the method
+     * @param call body of the method
+     * @return result of the call
+     */
+    static <T, E extends Exception> T call(String operation, Call<T, E> call) throws E {
+        final boolean tagged = enter(operation);
+
+        try {
+            return call.call();
+        } finally {
+            exit(tagged);
+        }
+    }
+
+    /**
+     * Execute the call without result tagged with the operation.
+     *
+     * @param operation name of the method
+     * @param call body of the method
+     */
+    static <E extends Exception> void run(String operation, Run<E> call) throws E {
+        final boolean tagged = enter(operation);
+
+        try {
+            call.run();
+        } finally {
+            exit(tagged);
+        }
+    }
+
+    /**
+     * Operation of the current thread or null.
+     */
+    static String current() {
+        return CURRENT.get();
+    }
+
+    interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    interface Run<E extends Exception> {
+        void run() throws E;
+    }
+}
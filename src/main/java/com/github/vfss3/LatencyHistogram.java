@@ -0,0 +1,122 @@
+package com.github.vfss3;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Lock-free histogram of latencies with logarithmic buckets. Every power of two of microseconds is split into eight
+ * buckets, so percentiles are known with about 6% error from one microsecond to nine hours. Recording is one
+ * increment of {@link LongAdder}, percentiles are calculated only on read.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 35;
+    private static final int BUCKETS = index((1L << (MAX_EXPONENT + 1)) - 1) + 1;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        final long micros = Math.max(0, NANOSECONDS.toMicros(nanos));
+
+        buckets[Math.min(BUCKETS - 1, index(micros))].increment();
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Average latency in milliseconds.
+     */
+    double getMean() {
+        final long values = count.sum();
+
+        return (values > 0) ? toMillis((double) sum.sum() / values) : 0;
+    }
+
+    /**
+     * Max latency in milliseconds.
+     */
+    double getMax() {
+        return toMillis(max.get());
+    }
+
+    /**
+     * Latency in milliseconds which is not exceeded by given percent of requests.
+     *
+     * @param percentile between 0 and 100
+     */
+    double getPercentile(double percentile) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        // Buckets are read once, concurrent updates could only shift the result to the next bucket
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return toMillis(Math.min(middle(i), max.get()));
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Values below 16 have own buckets, bigger ones are split by top four bits.
+     */
+    private static int index(long micros) {
+        if (micros < (SUB_BUCKETS << 1)) {
+            return (int) micros;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+
+        return (exponent - SUB_BITS) * SUB_BUCKETS + (int) (micros >>> (exponent - SUB_BITS));
+    }
+
+    private static double middle(int index) {
+        if (index < (SUB_BUCKETS << 1)) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lower = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+
+        return lower + (1L << shift) / 2.0;
+    }
+
+    private static double toMillis(double micros) {
+        return micros / MILLISECONDS.toMicros(1);
+    }
+}
@@ -3,205 +3,648 @@ package com.github.vfss3;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.FileSystemException;
-import org.apache.commons.vfs2.util.MonitorInputStream;
 import org.apache.commons.vfs2.util.MonitorOutputStream;
 
 import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-import static java.nio.channels.Channels.newChannel;
 import static java.nio.channels.FileChannel.open;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.Objects.requireNonNull;
 
 /**
- * Special container to keep input and output streams inside temporary file.
+ * Special container to keep input and output streams inside temporary files.
+ * <p>
+ * Content is versioned - every download and every write goes into own temporary file. Readers keep reading the
+ * version they opened, new version replaces current one atomically when its download starts or its upload succeeds.
+ * Replaced version is deleted when its last reader is closed, so writers never wait for readers and readers never
+ * see partially written content.
+ * <p>
+ * Download of a version is single-flight - first reader downloads the object, readers which come during download
+ * don't wait for the end of it but read already downloaded prefix and wait only for bytes which are not there yet.
+ * All state is guarded by one lock, readers are woken up after every downloaded chunk.
  *
  * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
  */
 class ObjectContentHolder implements Closeable {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
     private final Log log = LogFactory.getLog(ObjectContentHolder.class);
 
-    private Path file;
-    private int openForRead = 0;
-    private boolean openForWrite = false;
-    private String md5;
-    private long contentLength;
+    private final S3Metrics metrics;
+    private final String bucket;
+    private final String key;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition progress = lock.newCondition();
 
-    public ObjectContentHolder() throws IOException {
-        this.file = Files.createTempFile("vfs.", ".s3");
+    private Version current;
+    private boolean closed;
+    private int openForRead;
+    private int openForWrite;
 
-        file.toFile().deleteOnExit();
+    ObjectContentHolder() {
+        this(new S3Metrics(null), null, null);
+    }
 
-        if (log.isDebugEnabled()) {
-            log.debug("Initialized cache file " + file);
-        }
+    /**
+     * @param metrics metrics of temporary files and open streams
+     * @param bucket bucket of the object for flight recorder events
+     * @param key key of the object for flight recorder events
+     */
+    ObjectContentHolder(S3Metrics metrics, String bucket, String key) {
+        this.metrics = requireNonNull(metrics);
+        this.bucket = bucket;
+        this.key = key;
     }
 
-    public void populateData(InputStream data, ObjectMetadataHolder metadata) throws IOException {
-        populateData(
-                data,
-                metadata.getContentLength(),
-                metadata.getMD5Hash().orElseThrow(() -> new FileSystemException("Empty MD5 for the object"))
-        );
+    /**
+     * Source of object content for download.
+     */
+    interface ContentSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Target for written content.
+     */
+    interface Uploader {
+        /**
+         * @return MD5 of uploaded content
+         */
+        String upload(File file) throws IOException;
     }
 
     /**
-     * Save data from the stream into temporary file.
+     * Get input stream for the content described by metadata. If current version has another content then the
+     * caller downloads new version from the source before return, concurrent callers get stream which follows the
+     * download.
      *
-     * @param data
-     * @param md5
+     * @param metadata
+     * @param source
+     * @return
+     * @throws IOException
      */
-    public void populateData(InputStream data, long contentLength, String md5) throws IOException {
-        if (file == null) {
-            throw new FileSystemException("Content holder was closed");
+    public InputStream getInputStream(ObjectMetadataHolder metadata, ContentSource source) throws IOException {
+        final String expectedMD5 = metadata.getMD5Hash().orElseThrow(
+                () -> new FileSystemException("Empty MD5 for the object")
+        );
+
+        Version version = null;
+
+        lock.lock();
+
+        try {
+            checkNotClosed();
+
+            if ((current != null) && current.sameData(metadata)) {
+                version = current;
+                version.readers++;
+                openForRead++;
+                metrics.inputStreams(1);
+            }
+        } finally {
+            lock.unlock();
         }
 
-        this.openForWrite = true;
-        this.md5 = requireNonNull(md5);
-        this.contentLength = contentLength;
+        if (version != null) {
+            return openStream(version);
+        }
+
+        // Temporary file is created outside of the lock
+        final Version created = new Version(createTempFile(), expectedMD5, metadata.getContentLength(), true);
+
+        lock.lock();
+
+        try {
+            if (closed) {
+                created.delete();
+
+                throw new FileSystemException("Content holder was closed");
+            }
 
-        try (FileChannel target = open(file, WRITE)) {
-            if (contentLength == 0) {
-                target.truncate(0);
+            if ((current != null) && current.sameData(metadata)) {
+                // Somebody else has started the same download
+                version = current;
             } else {
-                try (ReadableByteChannel source = newChannel(data)) {
-                    target.transferFrom(source, 0, contentLength);
+                replaceCurrent(created);
+
+                version = created;
+            }
+
+            version.readers++;
+            openForRead++;
+            metrics.inputStreams(1);
+        } finally {
+            lock.unlock();
+        }
+
+        if (version != created) {
+            created.delete();
+
+            return openStream(version);
+        }
+
+        final InputStream result = openStream(created);
+
+        try {
+            download(created, source);
+        } catch (IOException | RuntimeException e) {
+            result.close();
+
+            throw e;
+        }
+
+        return result;
+    }
+
+    /**
+     * Save data from the source into version file and notify readers after every chunk.
+     */
+    private void download(Version version, ContentSource source) throws IOException {
+        final S3Events.Spool event = new S3Events.Spool();
+
+        event.begin();
+
+        try (FileChannel channel = open(version.file, WRITE); InputStream data = source.open()) {
+            final byte[] buffer = new byte[(int) Math.min(CHUNK_SIZE, Math.max(version.contentLength, 1))];
+            long written = 0;
+
+            while (written < version.contentLength) {
+                final int read = data.read(buffer, 0, (int) Math.min(buffer.length, version.contentLength - written));
+
+                if (read < 0) {
+                    throw new EOFException(
+                            "Object content is shorter than expected " + version.contentLength + " bytes"
+                    );
+                }
+
+                final ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+
+                written += read;
+
+                metrics.spooled(read);
+
+                lock.lock();
+
+                try {
+                    version.downloaded = written;
+                    progress.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            lock.lock();
+
+            try {
+                version.failure = (e instanceof IOException) ? (IOException) e : new IOException(e);
+
+                // Next reader should try again
+                if (current == version) {
+                    replaceCurrent(null);
                 }
+            } finally {
+                lock.unlock();
             }
+
+            throw e;
         } finally {
-            openForWrite = false;
+            final long downloaded;
+
+            lock.lock();
+
+            try {
+                version.downloading = false;
+                downloaded = version.downloaded;
+                progress.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            event.finish(bucket, key, "download", downloaded, 0, 0);
         }
     }
 
     /**
-     * Check content length and md5 for current data
+     * Get output stream into new version. Content becomes current after successful upload.
      *
+     * @param uploader
      * @return
+     * @throws FileSystemException
      */
-    public boolean sameData(ObjectMetadataHolder metadata) throws IOException{
-        if (file == null) {
-            throw new FileSystemException("Content holder was closed");
+    public OutputStream getOutputStream(Uploader uploader) throws FileSystemException {
+        requireNonNull(uploader);
+
+        lock.lock();
+
+        try {
+            checkNotClosed();
+
+            openForWrite++;
+            metrics.outputStreams(1);
+        } finally {
+            lock.unlock();
         }
 
-        return (metadata.getContentLength() == contentLength) &&
-                (md5 != null) &&
-                (md5.equalsIgnoreCase(metadata.getMD5Hash().orElse(null)));
-    }
+        Path file = null;
 
-    public InputStream getInputStream() throws FileSystemException {
-        if (file == null) {
-            throw new FileSystemException("Content holder was closed");
+        try {
+            file = createTempFile();
+
+            return (new UploadOnCloseOutputStream(uploader, file));
+        } catch (IOException e) {
+            log.error("Not able to get output stream for temporary file", e);
+
+            writeFinished(file, null);
+
+            throw new FileSystemException("Not able to get output stream for temporary file");
         }
+    }
 
-        if (openForWrite) {
-            throw new FileSystemException("Close write stream before using it for read");
+    @Override
+    public void close() {
+        lock.lock();
+
+        try {
+            if (!closed) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Close content holder with " + openForRead + " open streams");
+                }
+
+                closed = true;
+
+                replaceCurrent(null);
+            }
+        } finally {
+            lock.unlock();
         }
+    }
+
+    /**
+     * Get absolute path for file with current version.
+     *
+     * @return path or null if there is no content yet
+     * @throws FileSystemException
+     */
+    public String getFile() throws FileSystemException {
+        lock.lock();
 
         try {
-            return new UnlockOnCloseInputStream();
-        } catch (IOException e) {
-            log.error("Not able to get input stream for temporary file", e);
+            checkNotClosed();
 
-            throw new FileSystemException("Not able to get input stream for temporary file");
+            return (current != null) ? current.file.toFile().getAbsolutePath() : null;
+        } finally {
+            lock.unlock();
         }
     }
 
-    public OutputStream getOutputStream(S3FileObject object) throws FileSystemException {
-        if (file == null) {
-            throw new FileSystemException("Content holder was closed");
+    /**
+     * Number of input streams which are not closed yet.
+     */
+    int getOpenForRead() {
+        lock.lock();
+
+        try {
+            return openForRead;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        if (openForRead > 0 || openForWrite) {
-            throw new FileSystemException("Close stream before using it for write");
+    /**
+     * Number of output streams which are not closed yet.
+     */
+    int getOpenForWrite() {
+        lock.lock();
+
+        try {
+            return openForWrite;
+        } finally {
+            lock.unlock();
         }
+    }
 
+    private InputStream openStream(Version version) throws IOException {
         try {
-            return (new UploadOnCloseOutputStream(requireNonNull(object)));
-        } catch (IOException e) {
-            log.error("Not able to get output stream for temporary file", e);
+            return new ContentInputStream(version);
+        } catch (IOException | RuntimeException e) {
+            streamClosed(version);
 
-            throw new FileSystemException("Not able to get output stream for temporary file");
+            throw e;
         }
     }
 
-    @Override
-    public void close() {
-        if (file != null) {
-            if (log.isDebugEnabled()) {
-                log.debug("Close cache file " + file);
+    /**
+     * Make version current and retire previous one, must be called under the lock.
+     */
+    private void replaceCurrent(Version version) {
+        final Version previous = current;
+
+        current = version;
+
+        if (previous != null) {
+            previous.retired = true;
+
+            if (previous.readers == 0) {
+                previous.delete();
             }
+        }
+    }
+
+    private void streamClosed(Version version) {
+        lock.lock();
 
+        try {
+            openForRead--;
+            metrics.inputStreams(-1);
+            version.readers--;
+
+            if (version.retired && (version.readers == 0)) {
+                version.delete();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param file written file or null if it was not created
+     * @param md5 MD5 of uploaded content or null if upload failed
+     */
+    private void writeFinished(Path file, String md5) {
+        Version uploaded = null;
+
+        if ((file != null) && (md5 != null)) {
             try {
-                Files.deleteIfExists(file);
+                uploaded = new Version(file, md5, Files.size(file), false);
             } catch (IOException e) {
-                log.warn("Error deleting temp file: " + file, e);
+                log.warn("Not able to keep uploaded content " + file, e);
             }
+        }
+
+        lock.lock();
+
+        try {
+            openForWrite--;
+            metrics.outputStreams(-1);
+
+            if ((uploaded != null) && !closed) {
+                replaceCurrent(uploaded);
+
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (file != null) {
+            deleteFile(file);
+        }
+    }
+
+    private void checkNotClosed() throws FileSystemException {
+        if (closed) {
+            throw new FileSystemException("Content holder was closed");
+        }
+    }
+
+    private void awaitProgress() throws InterruptedIOException {
+        try {
+            progress.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for download");
+        }
+    }
+
+    private Path createTempFile() throws IOException {
+        final Path file = Files.createTempFile("vfs.", ".s3");
+
+        metrics.spoolFileCreated();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Initialized cache file " + file);
+        }
+
+        return file;
+    }
+
+    private void deleteFile(Path file) {
+        if (log.isDebugEnabled()) {
+            log.debug("Delete cache file " + file);
+        }
+
+        try {
+            final long size = Files.size(file);
+
+            Files.delete(file);
 
-            file = null;
+            metrics.spoolFileDeleted(size);
+        } catch (NoSuchFileException e) {
+            // Already deleted
+        } catch (IOException e) {
+            log.warn("Error deleting temp file: " + file, e);
         }
     }
 
     /**
-     * Get absolute path for cache file
-     * @return
-     * @throws FileSystemException
+     * One version of content in own file. Mutable fields are guarded by the lock of holder.
      */
-    public String getFile() throws FileSystemException {
-        if (file == null) {
-            throw new FileSystemException("Content holder was closed");
+    private class Version {
+        private final Path file;
+        private final String md5;
+        private final long contentLength;
+
+        private long downloaded;
+        private boolean downloading;
+        private IOException failure;
+        private int readers;
+        private boolean retired;
+
+        Version(Path file, String md5, long contentLength, boolean downloading) {
+            this.file = file;
+            this.md5 = md5;
+            this.contentLength = contentLength;
+            this.downloading = downloading;
+            this.downloaded = downloading ? 0 : contentLength;
+        }
+
+        /**
+         * Check content length and md5 for this version.
+         */
+        boolean sameData(ObjectMetadataHolder metadata) {
+            return (failure == null) &&
+                    (metadata.getContentLength() == contentLength) &&
+                    (md5 != null) &&
+                    (md5.equalsIgnoreCase(metadata.getMD5Hash().orElse(null)));
         }
 
-        return file.toFile().getAbsolutePath();
+        void delete() {
+            deleteFile(file);
+        }
     }
 
     private class UploadOnCloseOutputStream extends MonitorOutputStream {
-        private final S3FileObject object;
+        private final Uploader uploader;
+        private final Path file;
+        private final S3Events.Spool event = new S3Events.Spool();
 
-        UploadOnCloseOutputStream(S3FileObject object) throws IOException {
+        private long written;
+
+        UploadOnCloseOutputStream(Uploader uploader, Path file) throws IOException {
             super(Files.newOutputStream(file));
 
-            this.object = object;
+            this.uploader = uploader;
+            this.file = file;
+
+            event.begin();
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
 
-            openForWrite = true;
+            written++;
+            metrics.spooled(1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+
+            written += len;
+            metrics.spooled(len);
         }
 
         @Override
         protected void onClose() throws IOException {
             super.onClose();
 
+            event.finish(bucket, key, "write", written, 0, 0);
+
+            String md5 = null;
+
             try {
                 if (log.isDebugEnabled()) {
                     log.debug("Start to upload file " + file);
                 }
 
-                md5 = object.upload(file.toFile());
-            } catch (Exception e) {
-                throw new IOException(e);
+                md5 = uploader.upload(file.toFile());
             } finally {
-                openForWrite = false;
+                writeFinished(file, md5);
             }
         }
     }
 
-    private class UnlockOnCloseInputStream extends MonitorInputStream {
-        public UnlockOnCloseInputStream() throws IOException {
-            super(Files.newInputStream(file));
+    /**
+     * Reads file of one version up to downloaded position and waits while download is in progress.
+     */
+    private class ContentInputStream extends InputStream {
+        private final Version version;
+        private final FileChannel channel;
+        private long position;
+        private boolean closed;
+
+        ContentInputStream(Version version) throws IOException {
+            this.version = version;
+            this.channel = open(version.file, READ);
+        }
 
-            openForRead++;
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+
+            return (read(single, 0, 1) < 0) ? -1 : (single[0] & 0xff);
         }
 
         @Override
-        protected void onClose() throws IOException {
-            super.onClose();
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
 
-            openForRead--;
+            final long available = awaitAvailable();
+
+            if (available <= 0) {
+                return -1;
+            }
+
+            final int read = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math.min(length, available)), position);
+
+            if (read > 0) {
+                position += read;
+            }
+
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            lock.lock();
+
+            try {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(0, version.downloaded - position));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+
+                try {
+                    channel.close();
+                } finally {
+                    streamClosed(version);
+                }
+            }
+        }
+
+        /**
+         * Wait for bytes after current position.
+         *
+         * @return number of bytes which could be read without waiting, zero at the end of content
+         */
+        private long awaitAvailable() throws IOException {
+            if (closed) {
+                throw new IOException("Stream was closed");
+            }
+
+            lock.lock();
+
+            try {
+                while ((position >= version.downloaded) && version.downloading) {
+                    awaitProgress();
+                }
+
+                if (version.failure != null) {
+                    throw new IOException("Download of the object failed", version.failure);
+                }
+
+                return version.downloaded - position;
+            } finally {
+                lock.unlock();
+            }
         }
     }
 }
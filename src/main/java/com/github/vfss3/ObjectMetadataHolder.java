@@ -7,45 +7,116 @@ import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
+import static com.amazonaws.services.s3.Headers.CONTENT_LENGTH;
+import static com.amazonaws.services.s3.Headers.CONTENT_TYPE;
 import static com.amazonaws.services.s3.Headers.ETAG;
+import static com.amazonaws.services.s3.Headers.SERVER_SIDE_ENCRYPTION;
 import static com.amazonaws.services.s3.model.ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION;
 import static com.amazonaws.util.DateUtils.cloneDate;
-import static java.util.Objects.requireNonNull;
-import static java.util.Optional.ofNullable;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
 
 /**
- * Build class for S3 ObjectMetadata
+ * Immutable compact holder for object metadata. Size, date and ETag are kept in primitive fields, ETag which is
+ * plain MD5 is packed into two longs. Full SDK {@link ObjectMetadata} is built only for PUT and COPY requests.
+ * <p>
+ * Metadata from HEAD requests keeps reference to the original SDK object for user metadata and other headers, it is
+ * never modified and never cloned until {@link #sendWith} is called.
  *
  * @author <A href="mailto:alexey at abashev dot ru">Alexey Abashev</A>
  */
-class ObjectMetadataHolder {
-    private final ObjectMetadata metadata;
-    private final boolean virtual;
+final class ObjectMetadataHolder {
+    private static final byte VIRTUAL = 1;
+    private static final byte HAS_LENGTH = 2;
+    private static final byte HAS_LAST_MODIFIED = 4;
+    private static final byte PACKED_MD5 = 8;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ObjectMetadataHolder VIRTUAL_FOLDER =
+            new ObjectMetadataHolder().withZeroContentLength().withContentType("");
+
+    private final byte flags;
+    private final long contentLength;
+    private final long lastModified;
+    private final long md5High;
+    private final long md5Low;
+    private final String eTag;
+    private final String contentType;
+    private final String serverSideEncryption;
+    private final ObjectMetadata source;
 
     ObjectMetadataHolder() {
-        this.metadata = new ObjectMetadata();
-        this.virtual = true;
+        this(VIRTUAL, 0, 0, 0, 0, null, null, null, null);
     }
 
-    ObjectMetadataHolder(ObjectMetadata metadata) {
-        this(metadata, false);
+    /**
+     * Metadata for folder without own object.
+     */
+    static ObjectMetadataHolder virtualFolder() {
+        return VIRTUAL_FOLDER;
     }
 
-    private ObjectMetadataHolder(ObjectMetadata metadata, boolean virtual) {
-        this.metadata = requireNonNull(metadata);
-        this.virtual = virtual;
+    ObjectMetadataHolder(ObjectMetadata metadata) {
+        this(
+                (byte) (
+                        ((metadata.getRawMetadataValue(CONTENT_LENGTH) != null) ? HAS_LENGTH : 0) |
+                        ((metadata.getLastModified() != null) ? HAS_LAST_MODIFIED : 0)
+                ),
+                metadata.getContentLength(),
+                (metadata.getLastModified() != null) ? metadata.getLastModified().getTime() : 0L,
+                metadata.getETag(),
+                metadata.getContentType(),
+                metadata.getSSEAlgorithm(),
+                metadata
+        );
     }
 
     ObjectMetadataHolder(S3ObjectSummary summary) {
-        this();
+        this(
+                (byte) (VIRTUAL | HAS_LENGTH | ((summary.getLastModified() != null) ? HAS_LAST_MODIFIED : 0)),
+                summary.getSize(),
+                (summary.getLastModified() != null) ? summary.getLastModified().getTime() : 0L,
+                summary.getETag(),
+                null,
+                null,
+                null
+        );
+    }
+
+    private ObjectMetadataHolder(
+            byte flags, long contentLength, long lastModified,
+            String eTag, String contentType, String serverSideEncryption, ObjectMetadata source
+    ) {
+        this(
+                (byte) (flags | (isMD5(eTag) ? PACKED_MD5 : 0)),
+                contentLength,
+                lastModified,
+                isMD5(eTag) ? parseHex(eTag, 0) : 0,
+                isMD5(eTag) ? parseHex(eTag, 16) : 0,
+                isMD5(eTag) ? null : eTag,
+                contentType,
+                serverSideEncryption,
+                source
+        );
+    }
 
-        metadata.setContentLength(requireNonNull(summary).getSize());
-        metadata.setLastModified(summary.getLastModified());
-        metadata.setHeader(ETAG, summary.getETag());
+    private ObjectMetadataHolder(
+            byte flags, long contentLength, long lastModified, long md5High, long md5Low,
+            String eTag, String contentType, String serverSideEncryption, ObjectMetadata source
+    ) {
+        this.flags = flags;
+        this.contentLength = contentLength;
+        this.lastModified = lastModified;
+        this.md5High = md5High;
+        this.md5Low = md5Low;
+        this.eTag = eTag;
+        this.contentType = contentType;
+        this.serverSideEncryption = serverSideEncryption;
+        this.source = source;
     }
 
     ObjectMetadataHolder withZeroContentLength() {
@@ -53,59 +124,71 @@ class ObjectMetadataHolder {
     }
 
     ObjectMetadataHolder withContentLength(long length) {
-        ObjectMetadata newMeta = metadata.clone();
-
-        newMeta.setContentLength(length);
-
-        return new ObjectMetadataHolder(newMeta, virtual);
+        return new ObjectMetadataHolder(
+                (byte) (flags | HAS_LENGTH), length, lastModified, md5High, md5Low,
+                eTag, contentType, serverSideEncryption, source
+        );
     }
 
     ObjectMetadataHolder withContentType(String type) {
-        ObjectMetadata newMeta = metadata.clone();
-
-        newMeta.setContentType(Mimetypes.getInstance().getMimetype(type));
-
-        return new ObjectMetadataHolder(newMeta, virtual);
+        return new ObjectMetadataHolder(
+                flags, contentLength, lastModified, md5High, md5Low,
+                eTag, Mimetypes.getInstance().getMimetype(type), serverSideEncryption, source
+        );
     }
 
     ObjectMetadataHolder withLastModifiedNow() {
-        ObjectMetadata newMeta = metadata.clone();
-
-        newMeta.setLastModified(new Date());
-
-        return new ObjectMetadataHolder(newMeta, virtual);
+        return new ObjectMetadataHolder(
+                (byte) (flags | HAS_LAST_MODIFIED), contentLength, System.currentTimeMillis(), md5High, md5Low,
+                eTag, contentType, serverSideEncryption, source
+        );
     }
 
     ObjectMetadataHolder withServerSideEncryption(boolean useEncryption) {
-        ObjectMetadata newMeta = metadata.clone();
-
-        if (useEncryption) {
-            newMeta.setSSEAlgorithm(AES_256_SERVER_SIDE_ENCRYPTION);
+        if (!useEncryption) {
+            return this;
         }
 
-        return new ObjectMetadataHolder(newMeta, virtual);
+        return new ObjectMetadataHolder(
+                flags, contentLength, lastModified, md5High, md5Low,
+                eTag, contentType, AES_256_SERVER_SIDE_ENCRYPTION, source
+        );
     }
 
     String getServerSideEncryption() {
-        return metadata.getSSEAlgorithm();
+        return serverSideEncryption;
     }
 
     public boolean isVirtual() {
-        return virtual;
+        return (flags & VIRTUAL) != 0;
     }
 
     public Optional<String> getMD5Hash() {
-        return ofNullable(metadata.getETag());
+        if ((flags & PACKED_MD5) != 0) {
+            return of(toHex(md5High, md5Low));
+        }
+
+        return (eTag != null) ? of(eTag) : empty();
     }
 
     public long getContentLength() {
-        return metadata.getContentLength();
+        return contentLength;
     }
 
     public long getLastModified() {
-        Date lastModified = metadata.getLastModified();
+        return lastModified;
+    }
 
-        return (lastModified != null) ? lastModified.getTime() : 0L;
+    /**
+     * Do both holders describe the same content - length, last modified and MD5 are equal.
+     *
+     * @param other
+     * @return
+     */
+    boolean sameContent(ObjectMetadataHolder other) {
+        return (contentLength == other.contentLength) &&
+                (lastModified == other.lastModified) &&
+                getMD5Hash().equals(other.getMD5Hash());
     }
 
     /**
@@ -114,40 +197,100 @@ class ObjectMetadataHolder {
      * @param request
      */
     public void sendWith(PutObjectRequest request) {
-        request.setMetadata(deepMetadataClone());
+        request.setMetadata(toObjectMetadata());
     }
 
     public void sendWith(CopyObjectRequest request) {
-        request.setNewObjectMetadata(deepMetadataClone());
+        request.setNewObjectMetadata(toObjectMetadata());
     }
 
     /**
-     * Make deep clone for ObjectMetadata and remove tracing headers (break mail.ru cloud integration)
+     * Build new ObjectMetadata with all headers from the source except tracing ones (break mail.ru cloud
+     * integration) and own values on top.
      *
      * @return
      */
-    private ObjectMetadata deepMetadataClone() {
+    private ObjectMetadata toObjectMetadata() {
         ObjectMetadata result = new ObjectMetadata();
 
-        final Map<String, Object> headers = new HashMap<>(metadata.getRawMetadata());
+        if (source != null) {
+            for (Map.Entry<String, Object> header : source.getRawMetadata().entrySet()) {
+                // Length is set below with canonical name, SDK sends header with other case as duplicate
+                if (!header.getKey().equals("X-Host") && !header.getKey().equals("X-Req-Id") &&
+                        !header.getKey().equalsIgnoreCase(CONTENT_LENGTH)) {
+                    result.setHeader(header.getKey(), header.getValue());
+                }
+            }
+
+            result.setUserMetadata(source.getUserMetadata());
+
+            result.setExpirationTime(cloneDate(source.getExpirationTime()));
+            result.setHttpExpiresDate(cloneDate(source.getHttpExpiresDate()));
+            result.setRestoreExpirationTime(cloneDate(source.getRestoreExpirationTime()));
 
-        headers.remove("X-Host");
-        headers.remove("X-Req-Id");
+            if (source.getOngoingRestore() != null) {
+                result.setOngoingRestore(source.getOngoingRestore());
+            }
 
-        headers.forEach(result::setHeader);
+            result.setExpirationTimeRuleId(source.getExpirationTimeRuleId());
+        }
+
+        if ((flags & HAS_LENGTH) != 0) {
+            result.setContentLength(contentLength);
+        }
 
-        result.setUserMetadata(metadata.getUserMetadata());
+        if ((flags & HAS_LAST_MODIFIED) != 0) {
+            result.setLastModified(new Date(lastModified));
+        }
 
-        result.setExpirationTime(cloneDate(metadata.getExpirationTime()));
-        result.setHttpExpiresDate(cloneDate(metadata.getHttpExpiresDate()));
-        result.setRestoreExpirationTime(cloneDate(metadata.getRestoreExpirationTime()));
+        getMD5Hash().ifPresent(value -> result.setHeader(ETAG, value));
 
-        if (metadata.getOngoingRestore() != null) {
-            result.setOngoingRestore(metadata.getOngoingRestore());
+        if (contentType != null) {
+            result.setHeader(CONTENT_TYPE, contentType);
         }
 
-        result.setExpirationTimeRuleId(metadata.getExpirationTimeRuleId());
+        if (serverSideEncryption != null) {
+            result.setHeader(SERVER_SIDE_ENCRYPTION, serverSideEncryption);
+        }
 
         return result;
     }
+
+    private static boolean isMD5(String value) {
+        if ((value == null) || (value.length() != 32)) {
+            return false;
+        }
+
+        for (int i = 0; i < 32; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long parseHex(String value, int offset) {
+        long result = 0;
+
+        for (int i = offset; i < offset + 16; i++) {
+            result = (result << 4) | Character.digit(value.charAt(i), 16);
+        }
+
+        return result;
+    }
+
+    private static String toHex(long high, long low) {
+        final char[] result = new char[32];
+
+        for (int i = 15; i >= 0; i--) {
+            result[i] = HEX[(int) (high & 0xf)];
+            result[i + 16] = HEX[(int) (low & 0xf)];
+
+            high >>>= 4;
+            low >>>= 4;
+        }
+
+        return new String(result);
+    }
 }
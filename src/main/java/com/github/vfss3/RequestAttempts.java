@@ -0,0 +1,86 @@
+package com.github.vfss3;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.HandlerBeforeAttemptContext;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.handlers.RequestHandler2;
+
+/**
+ * Attempts of one request and HTTP status of the last one. Tracked only for requests which have it in handler
+ * context and only by clients with {@link #HANDLER}, clients created by {@link S3FileProvider} have it.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class RequestAttempts {
+    static final HandlerContextKey<RequestAttempts> KEY = new HandlerContextKey<>("vfs-s3-attempts");
+
+    static final RequestHandler2 HANDLER = new AttemptsHandler();
+
+    private volatile int attempts;
+    private volatile int status;
+
+    /**
+     * Track attempts of the request.
+     */
+    static RequestAttempts track(AmazonWebServiceRequest request) {
+        final RequestAttempts result = new RequestAttempts();
+
+        request.addHandlerContext(KEY, result);
+
+        return result;
+    }
+
+    /**
+     * Number of attempts after the first one.
+     */
+    int getRetries() {
+        return Math.max(0, attempts - 1);
+    }
+
+    /**
+     * HTTP status of the last attempt or zero if it is not known.
+     */
+    int getStatus() {
+        return status;
+    }
+
+    private static class AttemptsHandler extends RequestHandler2 {
+        @Override
+        public void beforeAttempt(HandlerBeforeAttemptContext context) {
+            final RequestAttempts attempts = attempts(context.getRequest());
+
+            if (attempts != null) {
+                attempts.attempts++;
+            }
+        }
+
+        @Override
+        public void afterAttempt(HandlerAfterAttemptContext context) {
+            final RequestAttempts attempts = attempts(context.getRequest());
+
+            if (attempts == null) {
+                return;
+            }
+
+            final Response<?> response = context.getResponse();
+
+            if ((response != null) && (response.getHttpResponse() != null)) {
+                attempts.status = response.getHttpResponse().getStatusCode();
+            } else if (context.getException() instanceof AmazonServiceException) {
+                attempts.status = ((AmazonServiceException) context.getException()).getStatusCode();
+            } else {
+                attempts.status = 0;
+            }
+        }
+
+        private static RequestAttempts attempts(Request<?> request) {
+            final AmazonWebServiceRequest original = (request != null) ? request.getOriginalRequest() : null;
+
+            return (original != null) ? original.getHandlerContext(KEY) : null;
+        }
+    }
+}
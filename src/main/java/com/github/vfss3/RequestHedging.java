@@ -0,0 +1,353 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Hedging of idempotent reads. Request which is not completed after the hedging delay is sent once more and the
+ * first response wins, the other attempt is interrupted and its result is discarded.
+ * <p>
+ * Delay is fixed or learned as percentile of recent latencies of the same kind of requests, until enough samples
+ * are collected learned delay is not known and requests are not hedged. Number of hedges is limited by the budget -
+ * every request earns share of one hedge, so extra requests never exceed the budget share of all requests.
+ * <p>
+ * Both attempts run on the hedging executor while the caller waits, so the caller could return as soon as any of
+ * them completes. When executor has no free thread the request is sent by the caller without hedging.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class RequestHedging {
+    private static final int SAMPLES = 1024;
+    private static final int MIN_SAMPLES = 128;
+    private static final long HEDGE_COST = 1_000_000;
+    private static final long MAX_TOKENS = HEDGE_COST * 10;
+
+    private final Log log = LogFactory.getLog(RequestHedging.class);
+
+    private final Executor executor;
+    private final long delay;
+    private final double percentile;
+    private final long credit;
+    private final AtomicLong tokens = new AtomicLong();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder won = new LongAdder();
+
+    /**
+     * @param executor executor for attempts, should reject tasks instead of running them by the caller
+     * @param delay fixed hedging delay in milliseconds or zero for learned one
+     * @param percentile percentile of latency for learned delay
+     * @param budget max share of extra requests
+     */
+    RequestHedging(Executor executor, long delay, double percentile, double budget) {
+        if ((percentile <= 0) || (percentile >= 100)) {
+            throw new IllegalArgumentException("Percentile should be between 0 and 100 [" + percentile + "]");
+        }
+
+        if ((budget < 0) || (budget > 1)) {
+            throw new IllegalArgumentException("Budget should be between 0 and 1 [" + budget + "]");
+        }
+
+        this.executor = executor;
+        this.delay = MILLISECONDS.toNanos(delay);
+        this.percentile = percentile;
+        this.credit = (long) (HEDGE_COST * budget);
+    }
+
+    /**
+     * New tracker of latencies for one kind of requests.
+     */
+    Latency latency() {
+        return new Latency();
+    }
+
+    /**
+     * Execute the call, hedge it if it is slower than the delay and budget allows.
+     *
+     * @param latency latencies of this kind of requests
+     * @param call idempotent request
+     * @param discard release of result which lost the race
+     */
+    <T> T execute(Latency latency, Supplier<T> call, Consumer<? super T> discard) {
+        tokens.accumulateAndGet(credit, (value, add) -> Math.min(MAX_TOKENS, value + add));
+
+        final long threshold = (delay > 0) ? delay : latency.getThreshold();
+
+        if (threshold <= 0) {
+            return latency.measure(call);
+        }
+
+        final Race<T> race = new Race<>(latency, call, discard);
+
+        if (!race.start()) {
+            return latency.measure(call);
+        }
+
+        try {
+            if (!race.await(threshold) && acquireHedge()) {
+                if (race.start()) {
+                    hedged.increment();
+
+                    if (log.isDebugEnabled()) {
+                        log.debug("Hedge request after " + NANOSECONDS.toMillis(threshold) + "ms");
+                    }
+                } else {
+                    tokens.addAndGet(HEDGE_COST);
+                }
+            }
+
+            race.await(Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            race.cancel();
+
+            Thread.currentThread().interrupt();
+
+            throw new AbortedException(e);
+        }
+
+        if (race.isHedgeWon()) {
+            won.increment();
+        }
+
+        return race.getResult();
+    }
+
+    /**
+     * Number of sent hedge requests.
+     */
+    long getHedgedRequests() {
+        return hedged.sum();
+    }
+
+    /**
+     * Number of hedge requests which completed before original ones.
+     */
+    long getHedgeWins() {
+        return won.sum();
+    }
+
+    private boolean acquireHedge() {
+        while (true) {
+            final long value = tokens.get();
+
+            if (value < HEDGE_COST) {
+                return false;
+            }
+
+            if (tokens.compareAndSet(value, value - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Recent latencies of one kind of requests and percentile of them.
+     */
+    class Latency {
+        private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+        private final AtomicLong count = new AtomicLong();
+
+        private volatile long threshold;
+
+        /**
+         * Learned hedging delay in nanoseconds or zero if there are not enough samples yet.
+         */
+        long getThreshold() {
+            return threshold;
+        }
+
+        void record(long nanos) {
+            final long index = count.getAndIncrement();
+
+            samples.set((int) (index % SAMPLES), nanos);
+
+            if (((index + 1) % MIN_SAMPLES) == 0) {
+                final long[] values = new long[(int) Math.min(index + 1, SAMPLES)];
+
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = samples.get(i);
+                }
+
+                Arrays.sort(values);
+
+                threshold = values[(int) Math.min(values.length - 1, values.length * percentile / 100)];
+            }
+        }
+
+        private <T> T measure(Supplier<T> call) {
+            final long start = System.nanoTime();
+
+            try {
+                return call.get();
+            } finally {
+                record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Original and hedge attempts of one request. The first response wins, client side error of one attempt waits
+     * for another one.
+     */
+    private class Race<T> {
+        private final Latency latency;
+        private final Supplier<T> call;
+        private final Consumer<? super T> discard;
+        private final Thread[] threads = new Thread[2];
+
+        private int started;
+        private int finished;
+        private boolean done;
+        private boolean hedgeWon;
+        private T result;
+        private RuntimeException error;
+
+        Race(Latency latency, Supplier<T> call, Consumer<? super T> discard) {
+            this.latency = latency;
+            this.call = call;
+            this.discard = discard;
+        }
+
+        /**
+         * Start next attempt.
+         *
+         * @return false if executor has no free thread
+         */
+        boolean start() {
+            final int attempt;
+
+            synchronized (this) {
+                attempt = started++;
+            }
+
+            try {
+                executor.execute(() -> run(attempt));
+
+                return true;
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    started--;
+                }
+
+                return false;
+            }
+        }
+
+        /**
+         * Wait for the winner.
+         *
+         * @return true if the race is decided
+         */
+        synchronized boolean await(long nanos) throws InterruptedException {
+            final long deadline = System.nanoTime() + nanos;
+
+            while (!done) {
+                final long left = (nanos == Long.MAX_VALUE) ? Long.MAX_VALUE : deadline - System.nanoTime();
+
+                if (left <= 0) {
+                    return false;
+                }
+
+                if (left == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    NANOSECONDS.timedWait(this, left);
+                }
+            }
+
+            return true;
+        }
+
+        synchronized boolean isHedgeWon() {
+            return hedgeWon;
+        }
+
+        synchronized T getResult() {
+            if (error != null) {
+                throw error;
+            }
+
+            return result;
+        }
+
+        synchronized void cancel() {
+            done = true;
+
+            interruptOthers(-1);
+        }
+
+        private void run(int attempt) {
+            synchronized (this) {
+                if (done) {
+                    finished++;
+
+                    return;
+                }
+
+                threads[attempt] = Thread.currentThread();
+            }
+
+            final long start = System.nanoTime();
+
+            T value = null;
+            RuntimeException failure = null;
+
+            try {
+                value = call.get();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            final boolean lost;
+
+            synchronized (this) {
+                threads[attempt] = null;
+                finished++;
+
+                // Interrupt is addressed to this attempt only
+                Thread.interrupted();
+
+                lost = done;
+
+                if (!done && ((failure == null) || (failure instanceof AmazonServiceException) || (finished == started))) {
+                    done = true;
+                    hedgeWon = (attempt > 0);
+                    result = value;
+                    error = failure;
+
+                    interruptOthers(attempt);
+                    notifyAll();
+                }
+            }
+
+            if ((failure == null) || (failure instanceof AmazonServiceException)) {
+                latency.record(System.nanoTime() - start);
+            }
+
+            if (lost && (value != null) && (discard != null)) {
+                discard.accept(value);
+            }
+        }
+
+        private void interruptOthers(int winner) {
+            for (int i = 0; i < threads.length; i++) {
+                if ((i != winner) && (threads[i] != null)) {
+                    threads[i].interrupt();
+                }
+            }
+        }
+    }
+}
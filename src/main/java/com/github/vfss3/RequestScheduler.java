@@ -0,0 +1,243 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.github.vfss3.TrafficClass.FOREGROUND;
+
+/**
+ * Scheduler of requests in front of one S3 client. Number of concurrent requests is limited by size of connection
+ * pool, so requests wait here in queue of their class instead of waiting for connection in first come first served
+ * order of the pool.
+ * <p>
+ * Part of connections is reserved for foreground requests and is never taken by background ones. When both
+ * classes are waiting free connections are given by weighted fair queuing - foreground class gets four connections
+ * for every one of background class. Maintenance requests are scheduled as background ones.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class RequestScheduler {
+    private static final int FOREGROUND_WEIGHT = 4;
+    private static final int BACKGROUND_WEIGHT = 1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int connections;
+    private final int backgroundLimit;
+    private final Lane foreground = new Lane(FOREGROUND_WEIGHT);
+    private final Lane background = new Lane(BACKGROUND_WEIGHT);
+
+    private int running;
+
+    /**
+     * @param connections max number of concurrent requests
+     * @param reserved number of connections only for foreground requests
+     */
+    RequestScheduler(int connections, int reserved) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("Number of connections should be positive [" + connections + "]");
+        }
+
+        if ((reserved < 0) || (reserved >= connections)) {
+            throw new IllegalArgumentException("Wrong number of reserved connections [" + reserved + "]");
+        }
+
+        this.connections = connections;
+        this.backgroundLimit = connections - reserved;
+    }
+
+    /**
+     * Wait for connection.
+     *
+     * @param type class of request
+     * @return permit which should be released after request
+     * @throws AbortedException if the thread was interrupted
+     */
+    Permit acquire(TrafficClass type) {
+        final Lane lane = lane(type);
+        final long start = System.nanoTime();
+
+        lock.lock();
+
+        try {
+            if (lane.waiting.isEmpty() && canRun(lane) && (lane == foreground || foreground.waiting.isEmpty())) {
+                start(lane);
+            } else {
+                final Waiter waiter = new Waiter(lock.newCondition());
+
+                lane.activate((lane == foreground) ? background : foreground);
+                lane.waiting.add(waiter);
+
+                try {
+                    while (!waiter.granted) {
+                        waiter.condition.await();
+                    }
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        // Connection is already given to this request, let somebody else use it
+                        finish(lane);
+                    } else {
+                        lane.waiting.remove(waiter);
+                    }
+
+                    Thread.currentThread().interrupt();
+
+                    throw new AbortedException("Interrupted while waiting for connection", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        lane.requests.increment();
+        lane.delay.add(System.nanoTime() - start);
+
+        return new Permit(lane);
+    }
+
+    /**
+     * Number of requests of the class waiting for connection now.
+     */
+    int getQueued(TrafficClass type) {
+        final Lane lane = lane(type);
+
+        lock.lock();
+
+        try {
+            return lane.waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Average time in milliseconds which requests of the class spent in queue.
+     */
+    double getAverageDelay(TrafficClass type) {
+        final Lane lane = lane(type);
+        final long requests = lane.requests.sum();
+
+        return (requests > 0) ? (lane.delay.sum() / (double) requests / TimeUnit.MILLISECONDS.toNanos(1)) : 0;
+    }
+
+    private Lane lane(TrafficClass type) {
+        return (type == FOREGROUND) ? foreground : background;
+    }
+
+    private boolean canRun(Lane lane) {
+        return (running < connections) && ((lane == foreground) || (lane.running < backgroundLimit));
+    }
+
+    private void start(Lane lane) {
+        running++;
+        lane.running++;
+    }
+
+    private void finish(Lane lane) {
+        running--;
+        lane.running--;
+
+        dispatch();
+    }
+
+    /**
+     * Give free connections to waiting lanes with the lowest pass.
+     */
+    private void dispatch() {
+        while (true) {
+            final boolean foregroundReady = !foreground.waiting.isEmpty() && canRun(foreground);
+            final boolean backgroundReady = !background.waiting.isEmpty() && canRun(background);
+
+            final Lane lane;
+
+            if (foregroundReady && backgroundReady) {
+                lane = (foreground.pass <= background.pass) ? foreground : background;
+            } else if (foregroundReady) {
+                lane = foreground;
+            } else if (backgroundReady) {
+                lane = background;
+            } else {
+                return;
+            }
+
+            final Waiter waiter = lane.waiting.poll();
+
+            lane.pass += lane.stride;
+            waiter.granted = true;
+            waiter.condition.signal();
+
+            start(lane);
+        }
+    }
+
+    /**
+     * Requests of one class.
+     */
+    private static class Lane {
+        private final long stride;
+        private final Queue<Waiter> waiting = new ArrayDeque<>();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder delay = new LongAdder();
+
+        private long pass;
+        private int running;
+
+        Lane(int weight) {
+            this.stride = 1_000_000 / weight;
+        }
+
+        /**
+         * Idle lane doesn't get credit for the time it was idle.
+         */
+        void activate(Lane other) {
+            if (waiting.isEmpty() && !other.waiting.isEmpty()) {
+                pass = Math.max(pass, other.pass);
+            }
+        }
+    }
+
+    private static class Waiter {
+        private final Condition condition;
+
+        private boolean granted;
+
+        Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * Connection given to one request.
+     */
+    class Permit {
+        private final Lane lane;
+
+        private boolean released;
+
+        private Permit(Lane lane) {
+            this.lane = lane;
+        }
+
+        /**
+         * Return connection, repeated calls are ignored.
+         */
+        void release() {
+            lock.lock();
+
+            try {
+                if (!released) {
+                    released = true;
+
+                    finish(lane);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.vfss3;
+
+/**
+ * Kinds of S3 requests with separate rate budgets in {@link S3FileSystem}. Default max rates are request rates which
+ * S3 supports per key prefix.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public enum RequestType {
+    /**
+     * GET and HEAD of objects, read of ACLs.
+     */
+    GET(5500),
+
+    /**
+     * PUT and COPY of objects, uploads and changes of ACLs.
+     */
+    PUT(3500),
+
+    /**
+     * Listings of keys.
+     */
+    LIST(5500),
+
+    /**
+     * Delete of objects and buckets.
+     */
+    DELETE(3500);
+
+    private final double maxRate;
+
+    RequestType(double maxRate) {
+        this.maxRate = maxRate;
+    }
+
+    /**
+     * Max number of requests per second for one key prefix.
+     */
+    public double getMaxRate() {
+        return maxRate;
+    }
+}
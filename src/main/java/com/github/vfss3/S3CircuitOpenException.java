@@ -0,0 +1,37 @@
+package com.github.vfss3;
+
+import org.apache.commons.vfs2.FileSystemException;
+
+/**
+ * Request was not sent because too many recent requests to the same endpoint and bucket failed or were too slow.
+ * Request could be repeated after {@link #getRetryAfter()} milliseconds.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3CircuitOpenException extends FileSystemException {
+    private static final long serialVersionUID = 1L;
+
+    private final String circuit;
+    private final long retryAfter;
+
+    S3CircuitOpenException(String circuit, long retryAfter) {
+        super("Circuit for [" + circuit + "] is open, retry after " + retryAfter + "ms");
+
+        this.circuit = circuit;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Endpoint and bucket of the circuit.
+     */
+    public String getCircuit() {
+        return circuit;
+    }
+
+    /**
+     * Time in milliseconds before the next probe request is allowed.
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
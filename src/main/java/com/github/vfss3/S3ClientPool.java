@@ -0,0 +1,234 @@
+package com.github.vfss3;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reference counted pool of S3 clients. File systems for different buckets on the same endpoint with the same
+ * credentials and client options share one client with its connection pool and one transfer manager with its
+ * threads. Client is shut down when the last file system releases it.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class S3ClientPool {
+    private final Log log = LogFactory.getLog(S3ClientPool.class);
+
+    private final Map<Key, Client> clients = new HashMap<>();
+
+    /**
+     * Take client from the pool or create new one.
+     *
+     * @param key
+     * @param factory creates new transfer manager with client for the key
+     * @return lease which should be released after usage
+     */
+    synchronized Lease acquire(Key key, Supplier<TransferManager> factory) {
+        Client client = clients.get(key);
+
+        if (client == null) {
+            client = new Client(key, factory.get());
+
+            clients.put(key, client);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Created new S3 client for " + key);
+            }
+        }
+
+        client.references++;
+
+        return new Lease(this, client);
+    }
+
+    /**
+     * Lease for client which is not shared with anybody.
+     *
+     * @param transferManager
+     * @return lease which shuts down client on release
+     */
+    static Lease unpooled(TransferManager transferManager) {
+        final Client client = new Client(null, transferManager);
+
+        client.references = 1;
+
+        return new Lease(null, client);
+    }
+
+    /**
+     * Number of clients in the pool.
+     */
+    synchronized int size() {
+        return clients.size();
+    }
+
+    private void release(Client client) {
+        final boolean last;
+
+        synchronized (this) {
+            last = (--client.references == 0);
+
+            if (last && (client.key != null)) {
+                clients.remove(client.key);
+            }
+        }
+
+        if (last) {
+            if (log.isDebugEnabled()) {
+                log.debug("Shutdown S3 client for " + client.key);
+            }
+
+            client.transferManager.shutdownNow(true);
+        }
+    }
+
+    /**
+     * Reference of one file system to shared client with transfer manager.
+     */
+    static class Lease {
+        private final S3ClientPool pool;
+        private final Client client;
+
+        private boolean released;
+
+        private Lease(S3ClientPool pool, Client client) {
+            this.pool = pool;
+            this.client = client;
+        }
+
+        TransferManager getTransferManager() {
+            return client.transferManager;
+        }
+
+        /**
+         * Scheduler of requests to the client, shared by all file systems of the client. Fifth of connections is
+         * reserved for foreground requests.
+         *
+         * @param connections size of connection pool of the client
+         */
+        RequestScheduler getScheduler(int connections) {
+            return client.getScheduler(connections);
+        }
+
+        /**
+         * Release reference of this lease, calls after the first one are ignored so one file system could never drop
+         * reference of another one.
+         */
+        void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+
+                released = true;
+            }
+
+            if (pool != null) {
+                pool.release(client);
+            } else {
+                client.transferManager.shutdownNow(true);
+            }
+        }
+    }
+
+    /**
+     * Client with transfer manager and number of leases which use it.
+     */
+    private static class Client {
+        private final Key key;
+        private final TransferManager transferManager;
+
+        private int references;
+        private RequestScheduler scheduler;
+
+        private Client(Key key, TransferManager transferManager) {
+            this.key = key;
+            this.transferManager = requireNonNull(transferManager);
+        }
+
+        synchronized RequestScheduler getScheduler(int connections) {
+            if (scheduler == null) {
+                scheduler = new RequestScheduler(connections, (connections > 1) ? Math.max(1, connections / 5) : 0);
+            }
+
+            return scheduler;
+        }
+    }
+
+    /**
+     * Everything which makes clients different. Custom credentials providers and client configurations are compared
+     * by identity because they don't have equals.
+     */
+    static class Key {
+        private final String endpoint;
+        private final String region;
+        private final String accessKey;
+        private final String secretKey;
+        private final AWSCredentialsProvider credentialsProvider;
+        private final ClientConfiguration clientConfiguration;
+        private final boolean disableChunkedEncoding;
+        private final boolean pathStyleAccess;
+
+        Key(
+                String endpoint, String region, String accessKey, String secretKey,
+                AWSCredentialsProvider credentialsProvider, ClientConfiguration clientConfiguration,
+                boolean disableChunkedEncoding, boolean pathStyleAccess
+        ) {
+            this.endpoint = requireNonNull(endpoint);
+            this.region = region;
+            this.accessKey = accessKey;
+            this.secretKey = secretKey;
+            this.credentialsProvider = credentialsProvider;
+            this.clientConfiguration = clientConfiguration;
+            this.disableChunkedEncoding = disableChunkedEncoding;
+            this.pathStyleAccess = pathStyleAccess;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return disableChunkedEncoding == key.disableChunkedEncoding &&
+                    pathStyleAccess == key.pathStyleAccess &&
+                    endpoint.equals(key.endpoint) &&
+                    Objects.equals(region, key.region) &&
+                    Objects.equals(accessKey, key.accessKey) &&
+                    Objects.equals(secretKey, key.secretKey) &&
+                    credentialsProvider == key.credentialsProvider &&
+                    clientConfiguration == key.clientConfiguration;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    endpoint, region, accessKey, secretKey,
+                    System.identityHashCode(credentialsProvider), System.identityHashCode(clientConfiguration),
+                    disableChunkedEncoding, pathStyleAccess
+            );
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" +
+                    "endpoint='" + endpoint + '\'' +
+                    ", region='" + region + '\'' +
+                    ", accessKey='" + accessKey + '\'' +
+                    ", secretKey='" + ((secretKey != null) ? "***" : null) + '\'' +
+                    ", credentialsProvider=" + credentialsProvider +
+                    ", clientConfiguration=" + clientConfiguration +
+                    ", disableChunkedEncoding=" + disableChunkedEncoding +
+                    ", pathStyleAccess=" + pathStyleAccess +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.vfss3;
+
+/**
+ * JDK Flight Recorder events of S3 operations. This version is for JDK 8 where nothing is recorded, version for
+ * JDK 11 and newer is packed into META-INF/versions/11 of multi-release jar and defines events
+ * {@code vfs.s3.Request}, {@code vfs.s3.Attach}, {@code vfs.s3.Spool} and {@code vfs.s3.Upload}.
+ * <p>
+ * Usage is the same for both versions, JIT removes everything while events are disabled:
+ * <pre>
+ * final S3Events.Request event = new S3Events.Request();
+ *
+ * event.begin();
+ * ...
+ * event.finish(bucket, key, operation, bytes, status, retries);
+ * </pre>
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+final class S3Events {
+    private S3Events() {
+    }
+
+    /**
+     * Fields of all events.
+     */
+    abstract static class S3Event {
+        void begin() {
+        }
+
+        /**
+         * True if the event is enabled in recording settings, could be used to skip preparation of fields.
+         */
+        boolean isEnabled() {
+            return false;
+        }
+
+        /**
+         * End the event and commit it if it matches recording settings.
+         *
+         * @param bucket name of the bucket
+         * @param key object key or prefix, null for requests to the bucket
+         * @param operation kind of operation
+         * @param bytes transferred bytes
+         * @param status HTTP status of the last response or zero if there was no response
+         * @param retries number of retried attempts
+         */
+        void finish(String bucket, String key, String operation, long bytes, int status, int retries) {
+        }
+    }
+
+    /**
+     * One S3 request with all its retries.
+     */
+    static final class Request extends S3Event {
+    }
+
+    /**
+     * Attach of file object with all its probes.
+     */
+    static final class Attach extends S3Event {
+    }
+
+    /**
+     * Download or write of content into temporary file.
+     */
+    static final class Spool extends S3Event {
+    }
+
+    /**
+     * Upload of written content.
+     */
+    static final class Upload extends S3Event {
+    }
+}
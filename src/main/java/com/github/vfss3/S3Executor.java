@@ -0,0 +1,450 @@
+package com.github.vfss3;
+
+import com.amazonaws.client.builder.ExecutorFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Execution layer for parallel S3 operations. Every {@link TrafficClass} has own threads and bounded queue, every
+ * file system works through own {@link Scope} which limits number of its running tasks.
+ * <p>
+ * Backpressure depends on class - foreground task is executed by the caller thread when queue is full, background
+ * task is rejected with {@link RejectedExecutionException}. Per file system limit blocks submit of foreground task
+ * and rejects background one.
+ * <p>
+ * In virtual threads mode foreground and background tasks and parts of TransferManager uploads are running on new
+ * virtual threads, number of threads is limited by the same rules but without queue.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class S3Executor {
+    private static final int MAINTENANCE_THREADS = 2;
+    private static final int EVENT_THREADS = 2;
+
+    private final Log log = LogFactory.getLog(S3Executor.class);
+
+    private final String name;
+    private final boolean virtualThreads;
+    private final List<ExecutorService> pools = new ArrayList<>();
+    private final Executor foreground;
+    private final Executor background;
+    private final Executor hedging;
+    private final Executor events;
+    private final ScheduledThreadPoolExecutor maintenance;
+
+    /**
+     * @param name prefix for thread names
+     * @param threads number of foreground threads, background class gets quarter of them
+     * @param queueSize size of queue for foreground and background classes
+     * @param virtualThreads use virtual threads for foreground and background classes if JDK supports them
+     */
+    S3Executor(String name, int threads, int queueSize, boolean virtualThreads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads should be positive [" + threads + "]");
+        }
+
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("Queue size should not be negative [" + queueSize + "]");
+        }
+
+        final int backgroundThreads = Math.max(1, threads / 4);
+
+        if (virtualThreads && !VirtualThreads.isSupported()) {
+            log.warn("Virtual threads are not supported by this JDK, use platform threads");
+        }
+
+        this.name = name;
+        this.virtualThreads = virtualThreads && VirtualThreads.isSupported();
+
+        if (this.virtualThreads) {
+            this.foreground = bounded(VirtualThreads.newExecutor(name + "-foreground-"), threads, true);
+            this.background = bounded(VirtualThreads.newExecutor(name + "-background-"), backgroundThreads, false);
+            this.hedging = bounded(VirtualThreads.newExecutor(name + "-hedging-"), threads, false);
+            this.events = bounded(VirtualThreads.newExecutor(name + "-events-"), EVENT_THREADS, false);
+        } else {
+            this.foreground = pool(name + "-foreground-", threads, queueSize, true);
+            this.background = pool(name + "-background-", backgroundThreads, queueSize, false);
+            this.hedging = pool(name + "-hedging-", threads, 0, false);
+            this.events = pool(name + "-events-", EVENT_THREADS, queueSize, false);
+        }
+
+        this.maintenance = new ScheduledThreadPoolExecutor(MAINTENANCE_THREADS, threadFactory(name + "-maintenance-"));
+        this.maintenance.setRemoveOnCancelPolicy(true);
+
+        pools.add(maintenance);
+
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "Started executor [name=" + name + ",threads=" + threads + ",queueSize=" + queueSize +
+                    ",virtualThreads=" + this.virtualThreads + "]"
+            );
+        }
+    }
+
+    /**
+     * Create scope for one file system.
+     *
+     * @param parallelism max number of running foreground and background tasks
+     */
+    Scope scope(int parallelism) {
+        return new Scope(parallelism);
+    }
+
+    /**
+     * Factory of executors for TransferManager - new virtual thread for every part in virtual threads mode, null
+     * for default pool of the SDK otherwise. TransferManager owns created executor and shuts it down.
+     */
+    ExecutorFactory getTransferExecutorFactory() {
+        return virtualThreads ? (() -> VirtualThreads.newExecutor(name + "-transfer-")) : null;
+    }
+
+    /**
+     * Executor for attempts of hedged requests. It has no queue and doesn't belong to any scope, so waiting for
+     * attempts never blocks on limits of the file system. Rejects task when all threads are busy.
+     */
+    Executor getHedgingExecutor() {
+        return hedging;
+    }
+
+    /**
+     * Executor for delivery of file change events. Listeners could be slow, so they have own threads and don't delay
+     * maintenance tasks of file systems. It doesn't belong to any scope and rejects task when it is full.
+     */
+    Executor getEventExecutor() {
+        return events;
+    }
+
+    boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    void shutdown() {
+        pools.forEach(ExecutorService::shutdownNow);
+    }
+
+    private Executor lane(TrafficClass type) {
+        switch (type) {
+            case FOREGROUND:
+                return foreground;
+            case BACKGROUND:
+                return background;
+            default:
+                return maintenance;
+        }
+    }
+
+    private Executor pool(String prefix, int threads, int queueSize, boolean callerRuns) {
+        final RejectedExecutionHandler handler = (task, pool) -> {
+            if (callerRuns && !pool.isShutdown()) {
+                task.run();
+            } else {
+                throw new RejectedExecutionException("Queue [" + prefix + "] is full or closed");
+            }
+        };
+
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads, threads, 60, SECONDS,
+                (queueSize > 0) ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>(),
+                threadFactory(prefix),
+                handler
+        );
+
+        pool.allowCoreThreadTimeOut(true);
+
+        pools.add(pool);
+
+        return pool;
+    }
+
+    private Executor bounded(ExecutorService executor, int limit, boolean callerRuns) {
+        final Semaphore permits = new Semaphore(limit);
+
+        pools.add(executor);
+
+        return task -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor is closed");
+            }
+
+            if (!permits.tryAcquire()) {
+                if (callerRuns) {
+                    task.run();
+
+                    return;
+                }
+
+                throw new RejectedExecutionException("Too many running tasks");
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+
+                throw e;
+            }
+        };
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+
+            thread.setDaemon(true);
+
+            return thread;
+        };
+    }
+
+    /**
+     * Tasks of one file system. Closing of the scope cancels all its tasks but doesn't touch shared threads.
+     */
+    class Scope {
+        private final Semaphore permits;
+        private final Set<Future<?>> tasks = ConcurrentHashMap.newKeySet();
+        private final ExecutorService foregroundView = new View(TrafficClass.FOREGROUND);
+        private final ExecutorService backgroundView = new View(TrafficClass.BACKGROUND);
+        private final ExecutorService maintenanceView = new View(TrafficClass.MAINTENANCE);
+
+        private volatile boolean closed;
+
+        private Scope(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Parallelism should be positive [" + parallelism + "]");
+            }
+
+            this.permits = new Semaphore(parallelism);
+        }
+
+        /**
+         * Executor for tasks of given class. Executor is shared and couldn't be shut down, use {@link #close()}.
+         */
+        ExecutorService executor(TrafficClass type) {
+            switch (type) {
+                case FOREGROUND:
+                    return foregroundView;
+                case BACKGROUND:
+                    return backgroundView;
+                default:
+                    return maintenanceView;
+            }
+        }
+
+        /**
+         * Schedule periodic maintenance task.
+         */
+        ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+            checkNotClosed();
+
+            final ScheduledFuture<?> future = maintenance.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+
+            tasks.add(future);
+
+            if (closed) {
+                future.cancel(true);
+            }
+
+            return future;
+        }
+
+        /**
+         * Number of submitted tasks which are not finished yet.
+         */
+        int getActiveTasks() {
+            return tasks.size();
+        }
+
+        void close() {
+            closed = true;
+
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+
+            tasks.clear();
+        }
+
+        private void checkNotClosed() {
+            if (closed) {
+                throw new RejectedExecutionException("File system is closed");
+            }
+        }
+
+        private class Task<V> extends FutureTask<V> {
+            private final TrafficClass requests;
+            private final String operation;
+
+            private boolean permitted;
+
+            /**
+             * @param callable
+             * @param requests class of requests sent by the task or null for the default one
+             * @param operation file operation of requests sent by the task or null
+             */
+            Task(Callable<V> callable, TrafficClass requests, String operation) {
+                super(callable);
+
+                this.requests = requests;
+                this.operation = operation;
+            }
+
+            @Override
+            public void run() {
+                final boolean tagged = (operation != null) && FileOperationTag.enter(operation);
+
+                try {
+                    if (requests == null) {
+                        super.run();
+                    } else {
+                        try (TrafficClass.Scope ignored = requests.enter()) {
+                            super.run();
+                        }
+                    }
+                } finally {
+                    FileOperationTag.exit(tagged);
+                }
+            }
+
+            @Override
+            protected void done() {
+                tasks.remove(this);
+
+                if (permitted) {
+                    permits.release();
+                }
+            }
+        }
+
+        private class View extends AbstractExecutorService {
+            private final TrafficClass type;
+
+            View(TrafficClass type) {
+                this.type = type;
+            }
+
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+                return new Task<>(callable, requests(), operation());
+            }
+
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+                return new Task<>(Executors.callable(runnable, value), requests(), operation());
+            }
+
+            /**
+             * Foreground task works for the caller and keeps its class.
+             */
+            private TrafficClass requests() {
+                return (type == TrafficClass.FOREGROUND) ? TrafficClass.current() : TrafficClass.BACKGROUND;
+            }
+
+            /**
+             * Foreground task also keeps file operation of the caller for request listeners.
+             */
+            private String operation() {
+                return (type == TrafficClass.FOREGROUND) ? FileOperationTag.current() : null;
+            }
+
+            @Override
+            public void execute(Runnable command) {
+                checkNotClosed();
+
+                final Task<?> task = (command instanceof Task) ?
+                        (Task<?>) command :
+                        new Task<>(Executors.callable(command, null), requests(), operation());
+
+                if (type == TrafficClass.FOREGROUND) {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+
+                        throw new RejectedExecutionException("Interrupted while waiting for free slot", e);
+                    }
+
+                    task.permitted = true;
+                } else if (type == TrafficClass.BACKGROUND) {
+                    if (!permits.tryAcquire()) {
+                        throw new RejectedExecutionException("Too many running tasks for file system");
+                    }
+
+                    task.permitted = true;
+                }
+
+                tasks.add(task);
+
+                try {
+                    lane(type).execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.cancel(false);
+
+                    throw e;
+                }
+
+                if (closed) {
+                    task.cancel(true);
+                }
+            }
+
+            @Override
+            public void shutdown() {
+                throw new UnsupportedOperationException("Shared executor is closed with file system");
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                throw new UnsupportedOperationException("Shared executor is closed with file system");
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return closed;
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return closed && tasks.isEmpty();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit) {
+                return isTerminated();
+            }
+        }
+    }
+}
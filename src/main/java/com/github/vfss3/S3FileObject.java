@@ -1,5 +1,6 @@
 package com.github.vfss3;
 
+import com.amazonaws.AbortedException;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
@@ -14,6 +15,7 @@ import org.apache.commons.vfs2.*;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 import static com.github.vfss3.operations.Acl.Permission.READ;
 import static com.github.vfss3.operations.Acl.Permission.WRITE;
@@ -39,12 +41,17 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
     private final Log log = LogFactory.getLog(getClass());
 
     /**
-     * Amazon S3 object
+     * Amazon S3 object. Changed only under attach lock, non-null value means attached file.
      */
-    private ObjectMetadataHolder objectMetadataHolder;
+    private volatile ObjectMetadataHolder objectMetadataHolder;
 
     private ObjectContentHolder objectContentHolder;
 
+    /**
+     * Time of the last attach or successful revalidation from {@link System#nanoTime()}.
+     */
+    private volatile long attachedAt;
+
     public S3FileObject(S3FileName fileName, S3FileSystem fileSystem) {
         super(fileName, fileSystem);
     }
@@ -62,106 +69,241 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
     }
 
     @Override
-    protected void doAttach() throws FileSystemException {
+    protected Object doProbe() throws FileSystemException {
+        final S3Events.Attach event = new S3Events.Attach();
+
+        event.begin();
+
+        try {
+            return probe();
+        } finally {
+            if (event.isEnabled()) {
+                event.finish(getBucketName(), getName().getS3KeyAs(FILE), "attach", 0, 0, 0);
+            }
+        }
+    }
+
+    @Override
+    protected void doAttach(Object probe) throws FileSystemException {
+        doAttach(((Probe) probe).type, ((Probe) probe).metadata);
+    }
+
+    /**
+     * Find out type of the object with HEAD requests and listing if they are needed.
+     */
+    private Probe probe() throws FileSystemException {
         if (getName().getPath().equals(ROOT_PATH)) {
             if (log.isDebugEnabled()) {
                 log.debug("Attach S3FileObject to the bucket " + getName());
             }
 
-            doAttachVirtualFolder();
-
-            return;
+            return new Probe(FOLDER, ObjectMetadataHolder.virtualFolder());
         }
 
-        try {
-            // Do we have file with name?
-            String candidateKey = getName().getS3KeyAs(FILE);
-
-            doAttach(FILE, new ObjectMetadataHolder(getService().getObjectMetadata(getBucketName(), candidateKey)));
+        final String fileKey = getName().getS3KeyAs(FILE);
+        final String folderKey = getName().getS3KeyAs(FOLDER);
+        final boolean mightBeFile = getAbstractFileSystem().mightExist(fileKey);
+        final boolean mightBeFolder = getAbstractFileSystem().mightExist(folderKey);
 
+        if (!mightBeFile && !mightBeFolder) {
+            // Existence index knows for sure
             if (log.isDebugEnabled()) {
-                log.debug("Attach file to S3 Object " + getName());
+                log.debug("Attach to missed S3 object by existence index " + getName());
             }
 
-            return;
-        } catch (AmazonS3Exception e) {
-            if (e.getStatusCode() == 403) { // Forbidden
-                doAttach(FILE, new ObjectMetadataHolder());
+            return new Probe(null, new ObjectMetadataHolder());
+        }
+
+        if (mightBeFile) {
+            try {
+                // Do we have file with name?
+                final Probe probe = new Probe(
+                        FILE, new ObjectMetadataHolder(getAbstractFileSystem().getObjectMetadata(fileKey))
+                );
 
                 if (log.isDebugEnabled()) {
-                    log.debug("Attach to forbidden S3 object " + getName());
+                    log.debug("Attach file to S3 Object " + getName());
                 }
 
-                return;
-            }
+                return probe;
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() == 403) { // Forbidden
+                    if (log.isDebugEnabled()) {
+                        log.debug("Attach to forbidden S3 object " + getName());
+                    }
 
-            // We are attempting to attach to the root bucket
+                    return new Probe(FILE, new ObjectMetadataHolder());
+                }
+
+                // We are attempting to attach to the root bucket
+            }
         }
 
-        try {
-            // Do we have folder with that name?
-            String candidateKey = getName().getS3KeyAs(FOLDER);
+        if (mightBeFolder) {
+            try {
+                // Do we have folder with that name?
+                final Probe probe = new Probe(
+                        FOLDER, new ObjectMetadataHolder(getAbstractFileSystem().getObjectMetadata(folderKey))
+                );
 
-            doAttach(FOLDER, new ObjectMetadataHolder(getService().getObjectMetadata(getBucketName(), candidateKey)));
+                if (log.isDebugEnabled()) {
+                    log.debug("Attach folder to S3 Object " + getName());
+                }
 
-            if (log.isDebugEnabled()) {
-                log.debug("Attach folder to S3 Object " + getName());
+                return probe;
+            } catch (AmazonServiceException e) {
+                // No, we don't
             }
-
-            return;
-        } catch (AmazonServiceException e) {
-            // No, we don't
         }
 
         try {
             // Do, we have subordinate objects
-            String candidateKey = getName().getS3KeyAs(FOLDER);
+            String candidateKey = folderKey;
 
-            ObjectListing listing = getService().listObjects(
+            ObjectListing listing = mightBeFolder ? getAbstractFileSystem().listObjects(
                     new ListObjectsRequest().
                             withBucketName(getBucketName()).
                             withPrefix(candidateKey).
                             withMaxKeys(1)
-            );
+            ) : null;
 
-            if (!listing.getObjectSummaries().isEmpty()) {
+            if ((listing != null) && !listing.getObjectSummaries().isEmpty()) {
                 // subordinate objects so we need to pretend there is a directory
-                doAttachVirtualFolder();
-
                 if (log.isDebugEnabled()) {
                     log.debug("Attach folder to virtual S3 folder " + getName());
                 }
 
-                return;
+                return new Probe(FOLDER, ObjectMetadataHolder.virtualFolder());
             }
 
         } catch (AmazonServiceException ignored) {
         }
 
         // Create a new
-        if (objectMetadataHolder == null) {
-            doAttach(null, new ObjectMetadataHolder());
-
-            if (log.isDebugEnabled()) {
-                log.debug("Attach to empty S3 object " + getName());
-            }
+        if (log.isDebugEnabled()) {
+            log.debug("Attach to empty S3 object " + getName());
         }
+
+        return new Probe(null, new ObjectMetadataHolder());
     }
 
     protected final void doAttachVirtualFolder() throws FileSystemException {
-        doAttach(FOLDER, new ObjectMetadataHolder().withZeroContentLength().withContentType(""));
+        doAttach(FOLDER, ObjectMetadataHolder.virtualFolder());
+    }
+
+    /**
+     * Attach with data from listing of the parent. Cached file could be already attached but listing is fresher.
+     *
+     * @param type type from listing or null for missed file
+     * @param metadata
+     * @param parent
+     * @throws FileSystemException
+     */
+    void attachFromListing(FileType type, ObjectMetadataHolder metadata, FileObject parent) throws FileSystemException {
+        final Lock lock = getAttachLock();
+
+        lock.lock();
+
+        try {
+            if (isAttached()) {
+                forceRefresh();
+            }
+
+            setParent(parent);
+            doAttach(type, metadata);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Should be called under attach lock. Metadata is published last so readers which see attached file see its type.
+     */
     protected void doAttach(FileType type, ObjectMetadataHolder metadata) throws FileSystemException {
         if (objectMetadataHolder != null) {
             throw new FileSystemException("Try to reattach file " + getName() + " without detach");
         }
 
-        objectMetadataHolder = requireNonNull(metadata);
-
         if (type != null) {
             injectType(type);
         }
+
+        attachedAt = System.nanoTime();
+        objectMetadataHolder = requireNonNull(metadata);
+    }
+
+    /**
+     * With metadata TTLs attached data is served until soft TTL, revalidated in background until hard TTL and dropped
+     * only after that. Without TTLs works as usual refresh.
+     *
+     * @throws FileSystemException
+     */
+    @Override
+    public void refresh() throws FileSystemException {
+        final long hardTtl = getAbstractFileSystem().getMetadataHardTtl();
+
+        if ((hardTtl > 0) && isAttached()) {
+            final long age = System.nanoTime() - attachedAt;
+
+            if (age < hardTtl) {
+                if (age >= getAbstractFileSystem().getMetadataSoftTtl()) {
+                    getAbstractFileSystem().revalidate(this);
+                }
+
+                return;
+            }
+        }
+
+        forceRefresh();
+    }
+
+    /**
+     * Drop attached data regardless of TTLs - for internal changes of the object.
+     *
+     * @throws FileSystemException
+     */
+    void forceRefresh() throws FileSystemException {
+        super.refresh();
+    }
+
+    /**
+     * Fetch metadata again and compare with attached one. Keep attached data if nothing was changed, otherwise drop it
+     * so the next access will see new state.
+     *
+     * @throws FileSystemException
+     */
+    void revalidate() throws FileSystemException {
+        final ObjectMetadataHolder current = objectMetadataHolder;
+
+        if (current == null) {
+            return;
+        }
+
+        final FileType currentType = getType();
+        final Probe probe = (Probe) doProbe();
+
+        final Lock lock = getAttachLock();
+
+        lock.lock();
+
+        try {
+            if (objectMetadataHolder != current) {
+                // Was changed while we checked
+                return;
+            }
+
+            if ((probe.getType() == currentType) && probe.metadata.sameContent(current)) {
+                attachedAt = System.nanoTime();
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Metadata was changed for " + getName() + " - drop attached data");
+                }
+
+                forceRefresh();
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     // avoid calling internally because it only partially detaches and is not thread safe by itself, call detachInternal() instead
@@ -189,9 +331,9 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
                 log.debug("Delete object [bucket=" + bucket + ",name=" + key + "]");
             }
 
-            getService().deleteObject(bucket, key);
+            getAbstractFileSystem().deleteObject(key);
         } else {
-            getService().deleteBucket(bucket);
+            getAbstractFileSystem().deleteBucket();
         }
     }
 
@@ -211,7 +353,9 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
         ObjectMetadata metadata = new ObjectMetadata();
         metadata.setContentLength(0);
 
-        getService().putObject(new PutObjectRequest(getBucketName(), key, input, metadata));
+        getAbstractFileSystem().putObject(new PutObjectRequest(getBucketName(), key, input, metadata));
+
+        getAbstractFileSystem().keyCreated(key);
     }
 
     @Override
@@ -221,10 +365,6 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
 
     @Override
     protected InputStream doGetInputStream() throws Exception {
-        if (objectContentHolder == null) {
-            objectContentHolder = new ObjectContentHolder();
-        }
-
         final String objectPath = getName().getS3Key().orElseThrow(() -> new FileSystemException("Not able to get object path"));
 
         if ((objectMetadataHolder.getContentLength() == 0) || (!objectMetadataHolder.getMD5Hash().isPresent())) {
@@ -233,13 +373,16 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
             }
 
             return (new ByteArrayInputStream(new byte[0]));
-        } else if (!objectContentHolder.sameData(objectMetadataHolder)) {
-            S3Object obj = getService().getObject(getBucketName(), objectPath);
-
-            objectContentHolder.populateData(obj.getObjectContent(), objectMetadataHolder);
         }
 
-        return objectContentHolder.getInputStream();
+        final S3FileSystem fileSystem = getAbstractFileSystem();
+
+        return getContentHolder().getInputStream(
+                objectMetadataHolder,
+                () -> fileSystem.limitDownload(
+                        fileSystem.getObject(objectPath, objectMetadataHolder.getContentLength()).getObjectContent()
+                )
+        );
     }
 
     @Override
@@ -248,11 +391,20 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
             throw new FileSystemException("Append mode is not supported for S3 because of inconsistency");
         }
 
+        return getContentHolder().getOutputStream(this::upload);
+    }
+
+    /**
+     * Content holder is shared by all streams of this file, so it is created only once.
+     */
+    private synchronized ObjectContentHolder getContentHolder() throws IOException {
         if (objectContentHolder == null) {
-            objectContentHolder = new ObjectContentHolder();
+            objectContentHolder = new ObjectContentHolder(
+                    getAbstractFileSystem().metrics(), getBucketName(), getName().getS3KeyAs(FILE)
+            );
         }
 
-        return objectContentHolder.getOutputStream(this);
+        return objectContentHolder;
     }
 
     @Override
@@ -272,7 +424,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
 
         final String path = getName().getS3Key().orElse("");
 
-        ObjectListing listing = getService().listObjects(
+        ObjectListing listing = getAbstractFileSystem().listObjects(
                 new ListObjectsRequest().
                         withBucketName(getBucketName()).
                         withDelimiter(SEPARATOR).
@@ -283,7 +435,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
         final Set<String> commonPrefixes = new TreeSet<>(listing.getCommonPrefixes());
 
         while (listing.isTruncated()) {
-            listing = getService().listNextBatchOfObjects(listing);
+            listing = getAbstractFileSystem().listNextBatchOfObjects(listing);
 
             summaries.addAll(listing.getObjectSummaries());
             commonPrefixes.addAll(listing.getCommonPrefixes());
@@ -300,8 +452,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
                 S3FileObject s3FileObject = (S3FileObject) FileObjectUtils.unwrap(childObject);
 
                 if (s3FileObject != null) {
-                    s3FileObject.doAttachVirtualFolder();
-                    s3FileObject.setParent(this);
+                    s3FileObject.attachFromListing(FOLDER, ObjectMetadataHolder.virtualFolder(), this);
 
                     resolvedChildren.add(childObject);
                 }
@@ -316,8 +467,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
                 S3FileObject s3FileObject = (S3FileObject) FileObjectUtils.unwrap(childObject);
 
                 if (s3FileObject != null) {
-                    s3FileObject.doAttach(FILE, new ObjectMetadataHolder(summary));
-                    s3FileObject.setParent(this);
+                    s3FileObject.attachFromListing(FILE, new ObjectMetadataHolder(summary), this);
 
                     resolvedChildren.add(childObject);
                 }
@@ -347,12 +497,81 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
     public void close() throws FileSystemException {
         super.close();
 
-        if (objectContentHolder != null) {
-            objectContentHolder.close();
-            objectContentHolder = null;
+        synchronized (this) {
+            if (objectContentHolder != null) {
+                objectContentHolder.close();
+                objectContentHolder = null;
+            }
         }
     }
 
+    @Override
+    public boolean exists() throws FileSystemException {
+        return FileOperationTag.call("exists", super::exists);
+    }
+
+    @Override
+    public FileType getType() throws FileSystemException {
+        return FileOperationTag.call("getType", super::getType);
+    }
+
+    @Override
+    public FileObject[] getChildren() throws FileSystemException {
+        return FileOperationTag.call("getChildren", super::getChildren);
+    }
+
+    @Override
+    public FileObject[] findFiles(FileSelector selector) throws FileSystemException {
+        return FileOperationTag.call("findFiles", () -> super.findFiles(selector));
+    }
+
+    @Override
+    public void findFiles(
+            FileSelector selector, boolean depthwise, List<FileObject> selected
+    ) throws FileSystemException {
+        FileOperationTag.run("findFiles", () -> super.findFiles(selector, depthwise, selected));
+    }
+
+    @Override
+    public void createFile() throws FileSystemException {
+        FileOperationTag.run("createFile", super::createFile);
+    }
+
+    @Override
+    public void createFolder() throws FileSystemException {
+        FileOperationTag.run("createFolder", super::createFolder);
+    }
+
+    @Override
+    public boolean delete() throws FileSystemException {
+        return FileOperationTag.call("delete", super::delete);
+    }
+
+    @Override
+    public int delete(FileSelector selector) throws FileSystemException {
+        return FileOperationTag.call("delete", () -> super.delete(selector));
+    }
+
+    @Override
+    public int deleteAll() throws FileSystemException {
+        return FileOperationTag.call("deleteAll", super::deleteAll);
+    }
+
+    @Override
+    public void moveTo(FileObject destFile) throws FileSystemException {
+        FileOperationTag.run("moveTo", () -> super.moveTo(destFile));
+    }
+
+    @Override
+    public InputStream getInputStream() throws FileSystemException {
+        return FileOperationTag.call("getInputStream", super::getInputStream);
+    }
+
+    @Override
+    public OutputStream getOutputStream(boolean bAppend) throws FileSystemException {
+        return FileOperationTag.call("getOutputStream", () -> super.getOutputStream(bAppend));
+    }
+
     /**
      * Get S3 ACL list
      *
@@ -371,13 +590,13 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
                 log.debug("Get acl for object [bucket=" + bucketName + ",key=" + key.get() + "]");
             }
 
-            return getService().getObjectAcl(bucketName, key.get());
+            return getAbstractFileSystem().getObjectAcl(key.get());
         } else {
             if (log.isDebugEnabled()) {
                 log.debug("Get acl for bucket " + bucketName);
             }
 
-            return getService().getBucketAcl(bucketName);
+            return getAbstractFileSystem().getBucketAcl();
         }
     }
 
@@ -396,9 +615,9 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
             }
 
             // Put ACL to S3
-            getService().setObjectAcl(getBucketName(), key.get(), s3Acl);
+            getAbstractFileSystem().setObjectAcl(key.get(), s3Acl);
         } else {
-            getService().setBucketAcl(getBucketName(), s3Acl);
+            getAbstractFileSystem().setBucketAcl(s3Acl);
         }
     }
 
@@ -414,6 +633,10 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
      * @see IAclGetter
      */
     public Acl getAcl() throws FileSystemException {
+        return FileOperationTag.call("getAcl", this::readAcl);
+    }
+
+    private Acl readAcl() throws FileSystemException {
         assertType(FILE, FOLDER);
 
         Acl myAcl = new Acl();
@@ -484,6 +707,10 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
      * @see IAclGetter
      */
     public void setAcl(Acl acl) throws FileSystemException {
+        FileOperationTag.run("setAcl", () -> writeAcl(acl));
+    }
+
+    private void writeAcl(Acl acl) throws FileSystemException {
         assertType(FILE, FOLDER);
 
         // Create empty S3 ACL list
@@ -602,7 +829,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
                 log.debug("Have to fetch real metadata for [" + getName() + "]");
             }
 
-            refresh();
+            forceRefresh();
             getType(); // Force fetch metadata from S3
         }
 
@@ -619,11 +846,13 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
      * @return absolute path to file or nul if nothing were downloaded
      */
     public String getCacheFile() throws FileSystemException {
-        if (objectContentHolder != null) {
-            return objectContentHolder.getFile();
-        } else {
-            return null;
+        final ObjectContentHolder holder;
+
+        synchronized (this) {
+            holder = objectContentHolder;
         }
+
+        return (holder != null) ? holder.getFile() : null;
     }
 
     protected void assertType(FileType ... types) throws FileSystemException {
@@ -676,6 +905,10 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
      */
     @Override
     public void copyFrom(final FileObject file, final FileSelector selector) throws FileSystemException {
+        FileOperationTag.run("copyFrom", () -> copyFiles(file, selector));
+    }
+
+    private void copyFiles(FileObject file, FileSelector selector) throws FileSystemException {
         if (!file.exists()) {
             throw new FileSystemException("vfs.provider/copy-missing-file.error", file);
         }
@@ -708,7 +941,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
 
                 super.copyFrom(file, selector);
 
-                refresh();
+                forceRefresh();
 
                 return;
             }
@@ -727,7 +960,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
             doCopyFrom(source, destination);
         }
 
-        refresh();
+        forceRefresh();
     }
 
     protected boolean allowS3Copy(FileObject fromFile, FileObject toFile) throws FileSystemException {
@@ -801,7 +1034,7 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
 
                 if (s3SrcFile.getType() == FILE) {
                     if (s3SrcFile.objectMetadataHolder.isVirtual()) {
-                        s3SrcFile.refresh();
+                        s3SrcFile.forceRefresh();
                         s3SrcFile.getType(); // Force fetch metadata from S3
                     }
 
@@ -812,7 +1045,9 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
                     s3SrcFile.objectMetadataHolder.withServerSideEncryption(getServerSideEncryption()).sendWith(copy);
                 }
 
-                getService().copyObject(copy);
+                getAbstractFileSystem().copyObject(copy);
+
+                s3DestFile.getAbstractFileSystem().keyCreated(destFileName);
             } else if (fromFile.getType().hasContent() && fromFile.getURL().getProtocol().equals("file") && (toFile instanceof S3FileObject)) {
                 // do direct upload from file to avoid overhead of making a copy of the file
                 S3FileObject s3DestFile = (S3FileObject) toFile;
@@ -860,11 +1095,29 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
      * @throws IOException if the upload failed
      */
     String upload(File file) throws IOException {
+        return FileOperationTag.call("upload", () -> uploadContent(file));
+    }
+
+    private String uploadContent(File file) throws IOException {
         final String key = (getType() == IMAGINARY) ?
                 getName().getS3KeyAs(FILE) :
                 getName().getS3Key().orElseThrow(() -> new FileSystemException("Not able to copy whole bucket"));
 
-        PutObjectRequest request = new PutObjectRequest(getBucketName(), key, file);
+        final S3FileSystem fileSystem = getAbstractFileSystem();
+
+        // Limited upload goes from stream, so parts of multipart upload are sent one by one
+        final InputStream content = fileSystem.isUploadLimited() ?
+                fileSystem.limitUpload(new FileInputStream(file)) :
+                null;
+
+        PutObjectRequest request = (content != null) ?
+                new PutObjectRequest(getBucketName(), key, content, null) :
+                new PutObjectRequest(getBucketName(), key, file);
+
+        if (content != null) {
+            // Stream can't be reset, the client buffers sent data up to this limit for retries of request or part
+            request.getRequestClientOptions().setReadLimit((int) Math.min(file.length(), Integer.MAX_VALUE - 1) + 1);
+        }
 
         new ObjectMetadataHolder().
                 withContentLength(file.length()).
@@ -886,21 +1139,38 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
             );
         }
 
+        final S3Events.Upload event = new S3Events.Upload();
+        int status = 0;
         String md5;
 
+        event.begin();
+
         try {
-            md5 = getTransferManager().upload(request).waitForUploadResult().getETag();
-        } catch (InterruptedException e) {
+            md5 = fileSystem.upload(request).getETag();
+            status = 200;
+        } catch (AbortedException e) {
             throw new InterruptedIOException();
+        } catch (AmazonServiceException e) {
+            status = e.getStatusCode();
+
+            throw new IOException(e);
         } catch (AmazonClientException e) {
             throw new IOException(e);
+        } finally {
+            if (content != null) {
+                content.close();
+            }
+
+            event.finish(getBucketName(), key, "upload", file.length(), status, 0);
         }
 
+        getAbstractFileSystem().keyCreated(key);
+
         ObjectMetadataHolder newMetadata;
 
-        // Assert submitted data and update metadata
+        // Assert submitted data and update metadata, not coalesced because HEAD in flight could start before upload
         try {
-            newMetadata = new ObjectMetadataHolder(getService().getObjectMetadata(getBucketName(), getName().getS3KeyAs(FILE)));
+            newMetadata = new ObjectMetadataHolder(getAbstractFileSystem().fetchObjectMetadata(getName().getS3KeyAs(FILE)));
         } catch (AmazonS3Exception e) {
             throw new IOException(e);
         }
@@ -920,9 +1190,17 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
             );
         }
 
-        objectMetadataHolder = null;
+        final Lock lock = getAttachLock();
 
-        doAttach(FILE, newMetadata);
+        lock.lock();
+
+        try {
+            objectMetadataHolder = null;
+
+            doAttach(FILE, newMetadata);
+        } finally {
+            lock.unlock();
+        }
 
         return md5;
     }
@@ -934,4 +1212,24 @@ public class S3FileObject extends AbstractFileObject<S3FileSystem> {
 
         return (new S3FileSystemOptions(getFileSystem().getFileSystemOptions())).getServerSideEncryption();
     }
+
+    /**
+     * Type and metadata of the object found without attach lock, they are applied to the file under the lock.
+     */
+    private static final class Probe {
+        private final FileType type;
+        private final ObjectMetadataHolder metadata;
+
+        Probe(FileType type, ObjectMetadataHolder metadata) {
+            this.type = type;
+            this.metadata = metadata;
+        }
+
+        /**
+         * Type of the file after attach, missed object is imaginary file.
+         */
+        FileType getType() {
+            return (type != null) ? type : IMAGINARY;
+        }
+    }
 }
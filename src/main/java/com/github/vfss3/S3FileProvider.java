@@ -3,30 +3,78 @@ package com.github.vfss3;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.client.builder.ExecutorFactory;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.github.vfss3.parser.S3FileNameParser;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.*;
 
+import javax.management.ObjectName;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.amazonaws.services.s3.transfer.TransferManagerBuilder.standard;
+import static java.util.Objects.requireNonNull;
 
 /**
  * An S3 file provider. Create an S3 file system out of an S3 file name. Also
  * defines the capabilities of the file system.
+ * <p>
+ * All parallel work of file systems is done by one shared executor with separate queues for each
+ * {@link TrafficClass}, every file system could run up to {@link S3FileSystemOptions#getParallelism()} tasks on it.
+ * Executor is sized by {@link #setThreads(int)} and {@link #setQueueSize(int)} before first file system is created,
+ * defaults could be set with system properties {@value #THREADS_PROPERTY}, {@value #QUEUE_SIZE_PROPERTY} and
+ * {@value #VIRTUAL_THREADS_PROPERTY}.
+ * <p>
+ * Content transfers of all file systems share bandwidth limits from {@link #setDownloadBandwidth(long)} and
+ * {@link #setUploadBandwidth(long)}, defaults are in system properties {@value #DOWNLOAD_BANDWIDTH_PROPERTY} and
+ * {@value #UPLOAD_BANDWIDTH_PROPERTY}.
+ * <p>
+ * Totals of requests and transfers of all file systems are available from {@link #getMetrics()} and through JMX, see
+ * {@link S3MetricsMXBean}.
+ * <p>
+ * Requests of all file systems are passed to {@link S3RequestListener} instances from {@link java.util.ServiceLoader}
+ * and from {@link #addRequestListener(S3RequestListener)}.
  *
  * @author Marat Komarov
  * @author Matthias L. Jugel
  * @author Moritz Siuts
  */
 public class S3FileProvider extends CachingFileProvider {
+    public static final String THREADS_PROPERTY = "vfs.s3.threads";
+    public static final String QUEUE_SIZE_PROPERTY = "vfs.s3.queueSize";
+    public static final String VIRTUAL_THREADS_PROPERTY = "vfs.s3.virtualThreads";
+    public static final String DOWNLOAD_BANDWIDTH_PROPERTY = "vfs.s3.downloadBandwidth";
+    public static final String UPLOAD_BANDWIDTH_PROPERTY = "vfs.s3.uploadBandwidth";
+
     private final Log log = LogFactory.getLog(getClass());
 
+    private final S3ClientPool clients = new S3ClientPool();
+
+    private int threads = Integer.getInteger(
+            THREADS_PROPERTY, Math.max(16, 4 * Runtime.getRuntime().availableProcessors())
+    );
+    private int queueSize = Integer.getInteger(QUEUE_SIZE_PROPERTY, 1024);
+    private boolean virtualThreads = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+
+    private final BandwidthLimiter downloads = new BandwidthLimiter(Long.getLong(DOWNLOAD_BANDWIDTH_PROPERTY, 0), null);
+    private final BandwidthLimiter uploads = new BandwidthLimiter(Long.getLong(UPLOAD_BANDWIDTH_PROPERTY, 0), null);
+
+    private final S3Metrics metrics = new S3Metrics(null);
+    private final List<S3RequestListener> requestListeners = new CopyOnWriteArrayList<>(loadRequestListeners());
+
+    private S3Executor executor;
+    private ObjectName metricsName;
+
     final static Collection<Capability> capabilities = Collections.unmodifiableCollection(Arrays.asList(
         Capability.CREATE,
         Capability.DELETE,
@@ -42,6 +90,151 @@ public class S3FileProvider extends CachingFileProvider {
         setFileNameParser(new S3FileNameParser());
     }
 
+    /**
+     * Number of threads for foreground requests of all file systems, background work gets quarter of this number.
+     */
+    public synchronized int getThreads() {
+        return threads;
+    }
+
+    public synchronized void setThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads should be positive [" + threads + "]");
+        }
+
+        checkNotStarted();
+
+        this.threads = threads;
+    }
+
+    /**
+     * Size of queue for foreground and background tasks. Foreground task is executed by the caller when queue is
+     * full, background task is dropped.
+     */
+    public synchronized int getQueueSize() {
+        return queueSize;
+    }
+
+    public synchronized void setQueueSize(int queueSize) {
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("Queue size should not be negative [" + queueSize + "]");
+        }
+
+        checkNotStarted();
+
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Run foreground and background tasks on virtual threads, works only on JDK 21 and newer.
+     */
+    public synchronized boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public synchronized void setVirtualThreads(boolean virtualThreads) {
+        checkNotStarted();
+
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Max download speed of all file systems in bytes per second, zero for unlimited.
+     */
+    public long getDownloadBandwidth() {
+        return downloads.getRate();
+    }
+
+    /**
+     * Could be changed at any time, new limit is applied to running downloads.
+     */
+    public void setDownloadBandwidth(long bytesPerSecond) {
+        downloads.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Max upload speed of all file systems in bytes per second, zero for unlimited.
+     */
+    public long getUploadBandwidth() {
+        return uploads.getRate();
+    }
+
+    /**
+     * Could be changed at any time, new limit is applied to running uploads which were started with any limit. Uploads
+     * without limits send parts of the file in parallel and stay unlimited till the end.
+     */
+    public void setUploadBandwidth(long bytesPerSecond) {
+        uploads.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Totals of requests and transfers of all file systems.
+     */
+    public S3MetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Add listener of requests of all file systems which will be created after this call. Listeners from
+     * {@link ServiceLoader} are added when the provider is created.
+     */
+    public void addRequestListener(S3RequestListener listener) {
+        requestListeners.add(requireNonNull(listener));
+    }
+
+    /**
+     * Remove listener, file systems which were already created keep it.
+     */
+    public void removeRequestListener(S3RequestListener listener) {
+        requestListeners.remove(listener);
+    }
+
+    /**
+     * Listeners of the provider and then listeners from options of the file system.
+     */
+    private S3RequestListener[] getRequestListeners(S3FileSystemOptions options) {
+        final List<S3RequestListener> result = new ArrayList<>(requestListeners);
+
+        result.addAll(Arrays.asList(options.getRequestListeners()));
+
+        return result.toArray(new S3RequestListener[0]);
+    }
+
+    private List<S3RequestListener> loadRequestListeners() {
+        final List<S3RequestListener> result = new ArrayList<>();
+
+        try {
+            for (S3RequestListener listener : ServiceLoader.load(S3RequestListener.class)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Found request listener " + listener);
+                }
+
+                result.add(listener);
+            }
+        } catch (ServiceConfigurationError e) {
+            log.warn("Not able to load request listeners", e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Shared executor, created with the first file system.
+     */
+    synchronized S3Executor getExecutor() {
+        if (executor == null) {
+            executor = new S3Executor("vfs-s3", threads, queueSize, virtualThreads);
+        }
+
+        return executor;
+    }
+
+    private void checkNotStarted() {
+        if (executor != null) {
+            throw new IllegalStateException("Executor is already started");
+        }
+    }
+
     /**
      * Create a file system with the S3 root provided.
      *
@@ -57,8 +250,40 @@ public class S3FileProvider extends CachingFileProvider {
         final S3FileName root = (S3FileName) fileName;
         final S3FileSystemOptions options = new S3FileSystemOptions(fileSystemOptions);
 
+        if (options.getServerSideEncryption() && !root.getPlatformFeatures().supportsServerSideEncryption()) {
+            log.warn("Try to use Server-Side Encryption with cloud that doesn't support it");
+        }
+
+        final String endpoint = (options.isUseHttps() ? "https://" : "http://") + root.getEndpoint();
+
+        final S3ClientPool.Key key = new S3ClientPool.Key(
+                endpoint,
+                root.getSigningRegion(),
+                root.hasCredentials() ? root.getAccessKey() : null,
+                root.hasCredentials() ? root.getSecretKey() : null,
+                root.hasCredentials() ? null : options.getCustomCredentialsProvider(),
+                options.getCustomClientConfiguration(),
+                options.isDisableChunkedEncoding(),
+                root.hasPathPrefix()
+        );
+
+        final S3ClientPool.Lease lease = clients.acquire(key, () -> createTransferManager(root, options, endpoint));
+
+        try {
+            return (new S3FileSystem(
+                    root, options, lease, getExecutor(), downloads, uploads, metrics, getRequestListeners(options)
+            ));
+        } catch (FileSystemException | RuntimeException e) {
+            lease.release();
+
+            throw e;
+        }
+    }
+
+    private TransferManager createTransferManager(S3FileName root, S3FileSystemOptions options, String endpoint) {
         final AmazonS3ClientBuilder clientBuilder = AmazonS3ClientBuilder.standard().
-                withClientConfiguration(options.getClientConfiguration());
+                withClientConfiguration(options.getClientConfiguration()).
+                withRequestHandlers(AdaptiveRateLimiter.FEEDBACK_HANDLER, RequestAttempts.HANDLER);
 
         if (root.hasCredentials()) {
             clientBuilder.withCredentials(
@@ -76,31 +301,47 @@ public class S3FileProvider extends CachingFileProvider {
             clientBuilder.enablePathStyleAccess();
         }
 
-        if (options.getServerSideEncryption() && !root.getPlatformFeatures().supportsServerSideEncryption()) {
-            log.warn("Try to use Server-Side Encryption with cloud that doesn't support it");
+        if (log.isDebugEnabled()) {
+            log.debug("Endpoint configuration [endpoint=" + endpoint + ",region=" + root.getSigningRegion() + "]");
         }
 
-        StringBuilder endpoint = new StringBuilder();
+        clientBuilder.withEndpointConfiguration(new EndpointConfiguration(endpoint, root.getSigningRegion()));
 
-        if (options.isUseHttps()) {
-            endpoint.append("https://");
-        } else {
-            endpoint.append("http://");
+        final TransferManagerBuilder transferManagerBuilder = standard().withS3Client(clientBuilder.build());
+        final ExecutorFactory executorFactory = getExecutor().getTransferExecutorFactory();
+
+        if (executorFactory != null) {
+            transferManagerBuilder.withExecutorFactory(executorFactory);
         }
 
-        endpoint.append(root.getEndpoint());
+        return transferManagerBuilder.build();
+    }
 
-        if (log.isDebugEnabled()) {
-            log.debug("Endpoint configuration [endpoint=" + endpoint + ",region=" + root.getSigningRegion() + "]");
+    @Override
+    public void init() throws FileSystemException {
+        super.init();
+
+        synchronized (this) {
+            if (metricsName == null) {
+                metricsName = metrics.register("S3FileProvider", null);
+            }
         }
+    }
 
-        clientBuilder.withEndpointConfiguration(new EndpointConfiguration(endpoint.toString(), root.getSigningRegion()));
+    @Override
+    public void close() {
+        super.close();
+
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
 
-        TransferManager transferManager = standard().
-                withS3Client(clientBuilder.build()).
-                build();
+            S3Metrics.unregister(metricsName);
 
-        return (new S3FileSystem(root, options, transferManager));
+            metricsName = null;
+        }
     }
 
     /**
@@ -1,21 +1,65 @@
 package com.github.vfss3;
 
+import com.amazonaws.AbortedException;
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AccessControlList;
 import com.amazonaws.services.s3.model.Bucket;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.CreateBucketRequest;
+import com.amazonaws.services.s3.model.DeleteBucketRequest;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.GetBucketAclRequest;
+import com.amazonaws.services.s3.model.GetObjectAclRequest;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListNextBatchOfObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.services.s3.model.SetBucketAclRequest;
+import com.amazonaws.services.s3.model.SetObjectAclRequest;
 import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.model.UploadResult;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.vfs2.Capability;
 import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FilesCache;
+import org.apache.commons.vfs2.cache.NullFilesCache;
 
+import javax.management.ObjectName;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.amazonaws.services.s3.internal.Constants.*;
+import static com.github.vfss3.RequestType.DELETE;
+import static com.github.vfss3.RequestType.GET;
+import static com.github.vfss3.RequestType.LIST;
+import static com.github.vfss3.RequestType.PUT;
+import static com.github.vfss3.TrafficClass.BACKGROUND;
+import static com.github.vfss3.TrafficClass.FOREGROUND;
+import static com.github.vfss3.TrafficClass.MAINTENANCE;
 import static java.util.Optional.ofNullable;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * An S3 file system.
@@ -25,19 +69,93 @@ import static java.util.Optional.ofNullable;
  * @author Moritz Siuts
  */
 public class S3FileSystem extends AbstractFileSystem {
+    private static final long HEDGED_GET_MAX_SIZE = 1024 * 1024;
+
+    /**
+     * Threads of default TransferManager executor. Parts of multipart uploads are sent by them outside of request
+     * scheduler and each of them could hold connection of the pool.
+     */
+    private static final int TRANSFER_CONNECTIONS = 10;
+
     private final Log log = LogFactory.getLog(getClass());
 
+    private S3ClientPool.Lease client;
     private AmazonS3 service;
     private TransferManager transferManager;
     private final Bucket bucket;
+    private final ExistenceIndex existenceIndex;
+    private final int parallelism;
+    private final S3FilesCache filesCache;
+    private final long metadataSoftTtl;
+    private final long metadataHardTtl;
+    private final Set<FileName> revalidating = ConcurrentHashMap.newKeySet();
+    private final SingleFlight<String> heads = new SingleFlight<>();
+    private final SingleFlight<String> listings = new SingleFlight<>();
+    private final AdaptiveRateLimiter rateLimiter;
+    private final RequestHedging hedging;
+    private final CircuitBreaker circuitBreaker;
+    private final int requestTimeout;
+    private final BandwidthLimiter downloads;
+    private final BandwidthLimiter uploads;
+    private final TrafficClass transferClass;
+    private final RequestScheduler scheduler;
+    private final S3Metrics metrics;
+    private final ObjectName metricsName;
+    private final S3RequestListener[] listeners;
+    private final RequestHedging.Latency headLatency;
+    private final RequestHedging.Latency getLatency;
+
+    private final S3Executor ownExecutor;
+    private final S3Executor.Scope tasks;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     S3FileSystem(
             S3FileName rootName, S3FileSystemOptions options, TransferManager transferManager
+    ) throws FileSystemException {
+        this(
+                rootName, options, S3ClientPool.unpooled(transferManager), null, null, null, null,
+                options.getRequestListeners()
+        );
+    }
+
+    /**
+     * @param rootName
+     * @param options
+     * @param client
+     * @param executor shared executor of the provider, file system creates own one if it is null
+     * @param downloads shared download limit of the provider or null
+     * @param uploads shared upload limit of the provider or null
+     * @param metrics metrics of the provider or null
+     * @param listeners listeners of all requests
+     * @throws FileSystemException
+     */
+    S3FileSystem(
+            S3FileName rootName, S3FileSystemOptions options, S3ClientPool.Lease client, S3Executor executor,
+            BandwidthLimiter downloads, BandwidthLimiter uploads, S3Metrics metrics, S3RequestListener[] listeners
     ) throws FileSystemException {
         super(rootName, null, options.toFileSystemOptions());
 
-        this.transferManager = transferManager;
+        this.client = client;
+        this.transferManager = client.getTransferManager();
         this.service = transferManager.getAmazonS3Client();
+        this.rateLimiter = options.isRateLimiting() ? new AdaptiveRateLimiter(rootName.getBucket()) : null;
+        this.circuitBreaker = options.isCircuitBreaker() ?
+                new CircuitBreaker(
+                        rootName.getEndpoint() + "/" + rootName.getBucket(),
+                        options.getCircuitBreakerFailureRate(),
+                        options.getCircuitBreakerOpenInterval(),
+                        options.getSlowRequestThreshold()
+                ) :
+                null;
+        this.requestTimeout = (int) options.getRequestTimeout();
+        this.downloads = new BandwidthLimiter(options.getDownloadBandwidth(), downloads);
+        this.uploads = new BandwidthLimiter(options.getUploadBandwidth(), uploads);
+        this.transferClass = options.getTransferClass();
+        this.scheduler = options.isRequestScheduling() ?
+                client.getScheduler(scheduledConnections(options.getClientConfiguration().getMaxConnections())) :
+                null;
+        this.metrics = new S3Metrics(metrics);
+        this.listeners = listeners;
 
         if (log.isInfoEnabled()) {
             log.info("Init new S3 FileSystem [root=" + rootName + ",opts=" + options + "]");
@@ -68,6 +186,60 @@ public class S3FileSystem extends AbstractFileSystem {
                 throw new FileSystemException(e);
             }
         }
+
+        this.parallelism = options.getParallelism();
+        this.ownExecutor = (executor == null) ?
+                new S3Executor("vfs-s3-" + rootName.getBucket(), parallelism, 0, false) :
+                null;
+        this.tasks = ((executor != null) ? executor : ownExecutor).scope(parallelism);
+        this.filesCache = new S3FilesCache(options.getFilesCacheSize());
+        this.metadataSoftTtl = MILLISECONDS.toNanos(options.getMetadataSoftTtl());
+        this.metadataHardTtl = MILLISECONDS.toNanos(options.getMetadataHardTtl());
+
+        if (metadataSoftTtl > metadataHardTtl) {
+            throw new FileSystemException(
+                    "Metadata soft TTL [" + options.getMetadataSoftTtl() +
+                    "] should not be greater than hard TTL [" + options.getMetadataHardTtl() + "]"
+            );
+        }
+
+        if (options.isHedging()) {
+            hedging = new RequestHedging(
+                    ((executor != null) ? executor : ownExecutor).getHedgingExecutor(),
+                    options.getHedgingDelay(), options.getHedgingPercentile(), options.getHedgingBudget()
+            );
+            headLatency = hedging.latency();
+            getLatency = hedging.latency();
+        } else {
+            hedging = null;
+            headLatency = null;
+            getLatency = null;
+        }
+
+        if (options.isAsyncEvents()) {
+            setEventDispatcher(new FileEventDispatcher(
+                    ((executor != null) ? executor : ownExecutor).getEventExecutor(),
+                    options.getEventQueueSize(),
+                    this::notifyListeners
+            ));
+        }
+
+        if (options.isExistenceIndex()) {
+            existenceIndex = new ExistenceIndex(
+                    rootName.getBucket(),
+                    options.getExistenceIndexPrefix(),
+                    options.getExistenceIndexExpectedKeys(),
+                    options.getExistenceIndexFalsePositiveRate()
+            );
+
+            tasks.scheduleWithFixedDelay(
+                    this::rebuildExistenceIndex, 0, options.getExistenceIndexRefreshInterval(), SECONDS
+            );
+        } else {
+            existenceIndex = null;
+        }
+
+        this.metricsName = this.metrics.register("S3FileSystem", rootName.getEndpoint() + "/" + rootName.getBucket());
     }
 
     @Override
@@ -75,6 +247,20 @@ public class S3FileSystem extends AbstractFileSystem {
         caps.addAll(S3FileProvider.capabilities);
     }
 
+    /**
+     * Own bounded cache unless file system manager has S3 aware cache or caching is disabled for it.
+     */
+    @Override
+    protected FilesCache getFilesCache() {
+        final FilesCache managerCache = super.getFilesCache();
+
+        if ((managerCache instanceof NullFilesCache) || (managerCache instanceof S3FilesCache)) {
+            return managerCache;
+        }
+
+        return filesCache;
+    }
+
     AmazonS3 getService() {
         return service;
     }
@@ -83,6 +269,668 @@ public class S3FileSystem extends AbstractFileSystem {
         return transferManager;
     }
 
+    /**
+     * HEAD request for the key. Concurrent requests for the same key share one call and its result, so returned
+     * metadata should not be modified.
+     *
+     * @param key
+     * @return object metadata
+     */
+    ObjectMetadata getObjectMetadata(String key) throws S3CircuitOpenException {
+        checkCircuit();
+
+        return heads.execute(key, () -> hedged(headLatency, key, () -> head(key), null));
+    }
+
+    /**
+     * HEAD request for the key which is never coalesced, for checks right after own change of the object.
+     *
+     * @param key
+     * @return object metadata
+     */
+    ObjectMetadata fetchObjectMetadata(String key) throws S3CircuitOpenException {
+        checkCircuit();
+
+        return head(key);
+    }
+
+    private ObjectMetadata head(String key) {
+        return request(GET, key, new GetObjectMetadataRequest(bucket.getName(), key), service::getObjectMetadata);
+    }
+
+    /**
+     * GET request for the key. Never coalesced because content stream could be read only once, hedged only for small
+     * objects because for them response time matters more than transfer time.
+     *
+     * @param key
+     * @param size expected size of the object
+     * @return object with content stream
+     */
+    S3Object getObject(String key, long size) throws S3CircuitOpenException {
+        checkCircuit();
+
+        final Supplier<S3Object> call = () -> request(
+                GET, key, new GetObjectRequest(bucket.getName(), key), service::getObject
+        );
+
+        if (size > HEDGED_GET_MAX_SIZE) {
+            return call.get();
+        }
+
+        return hedged(getLatency, key, call, object -> object.getObjectContent().abort());
+    }
+
+    /**
+     * First page of listing. Concurrent identical requests share one call and its result, so returned listing should
+     * not be modified.
+     *
+     * @param request
+     * @return listing
+     */
+    ObjectListing listObjects(ListObjectsRequest request) throws S3CircuitOpenException {
+        checkCircuit();
+
+        final String key = listingKey(
+                request.getBucketName(), request.getPrefix(), request.getDelimiter(),
+                request.getMarker(), request.getMaxKeys(), request.getEncodingType()
+        );
+
+        return listings.execute(key, () -> request(LIST, request.getPrefix(), request, service::listObjects));
+    }
+
+    /**
+     * Next page of listing, coalesced in the same way as the first one.
+     *
+     * @param previous
+     * @return listing
+     */
+    ObjectListing listNextBatchOfObjects(ObjectListing previous) throws S3CircuitOpenException {
+        checkCircuit();
+
+        final String key = listingKey(
+                previous.getBucketName(), previous.getPrefix(), previous.getDelimiter(),
+                previous.getNextMarker(), previous.getMaxKeys(), previous.getEncodingType()
+        );
+
+        return listings.execute(key, () -> request(
+                LIST, previous.getPrefix(), new ListNextBatchOfObjectsRequest(previous), service::listNextBatchOfObjects
+        ));
+    }
+
+    void putObject(PutObjectRequest request) throws S3CircuitOpenException {
+        checkCircuit();
+
+        request(PUT, request.getKey(), request, service::putObject);
+    }
+
+    void copyObject(CopyObjectRequest request) throws S3CircuitOpenException {
+        checkCircuit();
+
+        request(PUT, request.getDestinationKey(), request, service::copyObject);
+    }
+
+    void deleteObject(String key) throws S3CircuitOpenException {
+        checkCircuit();
+
+        request(DELETE, key, new DeleteObjectRequest(bucket.getName(), key), r -> {
+            service.deleteObject(r);
+
+            return null;
+        });
+    }
+
+    void deleteBucket() throws S3CircuitOpenException {
+        checkCircuit();
+
+        request(DELETE, null, new DeleteBucketRequest(bucket.getName()), r -> {
+            service.deleteBucket(r);
+
+            return null;
+        });
+    }
+
+    AccessControlList getObjectAcl(String key) throws S3CircuitOpenException {
+        checkCircuit();
+
+        return request(GET, key, new GetObjectAclRequest(bucket.getName(), key), service::getObjectAcl);
+    }
+
+    AccessControlList getBucketAcl() throws S3CircuitOpenException {
+        checkCircuit();
+
+        return request(GET, null, new GetBucketAclRequest(bucket.getName()), service::getBucketAcl);
+    }
+
+    void setObjectAcl(String key, AccessControlList acl) throws S3CircuitOpenException {
+        checkCircuit();
+
+        request(PUT, key, new SetObjectAclRequest(bucket.getName(), key, acl), r -> {
+            service.setObjectAcl(r);
+
+            return null;
+        });
+    }
+
+    void setBucketAcl(AccessControlList acl) throws S3CircuitOpenException {
+        checkCircuit();
+
+        request(PUT, null, new SetBucketAclRequest(bucket.getName(), acl), r -> {
+            service.setBucketAcl(r);
+
+            return null;
+        });
+    }
+
+    /**
+     * Upload through transfer manager and wait for result. Only the initial request waits for the budget and for
+     * connection in scheduler, parts of multipart upload are sent by transfer manager itself. Scheduler leaves
+     * connections for them, see {@link #scheduledConnections(int)}.
+     *
+     * @param request
+     * @return result of upload
+     * @throws S3CircuitOpenException if circuit is open
+     * @throws AbortedException if the thread was interrupted
+     */
+    UploadResult upload(PutObjectRequest request) throws S3CircuitOpenException {
+        checkCircuit();
+
+        return request(PUT, request.getKey(), request, r -> {
+            try {
+                return transferManager.upload(r).waitForUploadResult();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new AbortedException(e);
+            }
+        });
+    }
+
+    /**
+     * Content of downloaded object limited by download bandwidth of this file system and the provider.
+     */
+    InputStream limitDownload(InputStream content) {
+        return downloads.wrap(metrics.countDownload(content), trafficClass());
+    }
+
+    /**
+     * Content for upload limited by upload bandwidth of this file system and the provider.
+     */
+    InputStream limitUpload(InputStream content) {
+        return uploads.wrap(content, trafficClass());
+    }
+
+    /**
+     * True if uploads should be sent through {@link #limitUpload(InputStream)}.
+     */
+    boolean isUploadLimited() {
+        return uploads.isLimited();
+    }
+
+    /**
+     * Hedge idempotent request if hedging is enabled. Throttled prefixes are never hedged, duplicates would only
+     * make throttling worse. Attempts run on threads of hedging executor, so they get traffic class and file operation
+     * of the caller.
+     */
+    private <T> T hedged(RequestHedging.Latency latency, String key, Supplier<T> call, Consumer<? super T> discard) {
+        if ((hedging == null) || (getRequestRate(GET, key) < GET.getMaxRate())) {
+            return call.get();
+        }
+
+        final TrafficClass requests = trafficClass();
+        final String operation = FileOperationTag.current();
+
+        return hedging.execute(latency, () -> {
+            final boolean tagged = (operation != null) && FileOperationTag.enter(operation);
+
+            try (TrafficClass.Scope ignored = requests.enter()) {
+                return call.get();
+            } finally {
+                FileOperationTag.exit(tagged);
+            }
+        }, discard);
+    }
+
+    /**
+     * Class of the current thread if it is set or class of the file system.
+     */
+    private TrafficClass trafficClass() {
+        final TrafficClass current = TrafficClass.current();
+
+        return (current != null) ? current : transferClass;
+    }
+
+    /**
+     * Fail fast if circuit breaker doesn't allow requests now.
+     */
+    private void checkCircuit() throws S3CircuitOpenException {
+        if (circuitBreaker != null) {
+            circuitBreaker.acquire();
+        }
+    }
+
+    /**
+     * Send the request through rate limiter and scheduler if they are enabled and report result to circuit breaker.
+     * Requests without content transfer get deadline for all attempts.
+     */
+    private <R extends AmazonWebServiceRequest, T> T request(
+            RequestType type, String key, R request, Function<R, T> call
+    ) {
+        final boolean latencyBound = isLatencyBound(request);
+
+        if (latencyBound && (requestTimeout > 0) && (request.getSdkClientExecutionTimeout() == null)) {
+            request.setSdkClientExecutionTimeout(requestTimeout);
+        }
+
+        final long start = System.nanoTime();
+        final T result;
+
+        try {
+            result = (rateLimiter != null) ?
+                    rateLimiter.execute(type, key, request, () -> scheduled(key, request, call)) :
+                    scheduled(key, request, call);
+        } catch (RuntimeException e) {
+            if (circuitBreaker != null) {
+                circuitBreaker.record(System.nanoTime() - start, latencyBound, e);
+            }
+
+            throw e;
+        }
+
+        if (circuitBreaker != null) {
+            circuitBreaker.record(System.nanoTime() - start, latencyBound, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Wait for connection in queue of the current class. Permit is held until response, for GET until its content
+     * is closed or aborted because connection is busy while content is read.
+     */
+    private <R extends AmazonWebServiceRequest, T> T scheduled(String key, R request, Function<R, T> call) {
+        if (scheduler == null) {
+            return measured(key, request, call);
+        }
+
+        final RequestScheduler.Permit permit = scheduler.acquire(trafficClass());
+        boolean streaming = false;
+
+        try {
+            final T result = measured(key, request, call);
+
+            if (result instanceof S3Object) {
+                releaseOnClose((S3Object) result, permit);
+
+                streaming = true;
+            }
+
+            return result;
+        } finally {
+            if (!streaming) {
+                permit.release();
+            }
+        }
+    }
+
+    private static void releaseOnClose(S3Object object, RequestScheduler.Permit permit) {
+        final S3ObjectInputStream content = object.getObjectContent();
+
+        // Abort of the new stream closes wrapped one, so permit is returned in both cases
+        object.setObjectContent(new S3ObjectInputStream(new FilterInputStream(content) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    permit.release();
+                }
+            }
+        }, content.getHttpRequest()));
+    }
+
+    /**
+     * Number of connections given by scheduler. Parts of multipart uploads take connections of the pool without
+     * scheduler, so part of the pool is left for them and scheduled requests don't wait for connection in the pool.
+     * At least half of the pool is always scheduled.
+     *
+     * @param maxConnections size of connection pool of the client
+     */
+    static int scheduledConnections(int maxConnections) {
+        return maxConnections - Math.min(TRANSFER_CONNECTIONS, maxConnections / 2);
+    }
+
+    /**
+     * Send the request, record it in metrics and in flight recorder event and pass it to request listeners.
+     */
+    private <R extends AmazonWebServiceRequest, T> T measured(String key, R request, Function<R, T> call) {
+        final S3Operation operation = S3Metrics.operation(request);
+        final S3Events.Request event = new S3Events.Request();
+        final RequestAttempts attempts = event.isEnabled() ? RequestAttempts.track(request) : null;
+        final S3RequestInfo info = (listeners.length != 0) ? beforeRequest(key, operation, request) : null;
+        final long start = System.nanoTime();
+        final T result;
+
+        event.begin();
+
+        try {
+            result = call.apply(request);
+        } catch (RuntimeException e) {
+            final long elapsed = System.nanoTime() - start;
+
+            metrics.record(operation, elapsed, true);
+
+            if (attempts != null) {
+                final int status = (e instanceof AmazonServiceException) ?
+                        ((AmazonServiceException) e).getStatusCode() :
+                        attempts.getStatus();
+
+                event.finish(bucket.getName(), key, operation.name(), 0, status, attempts.getRetries());
+            }
+
+            if (info != null) {
+                afterRequest(info, elapsed, 0, e);
+            }
+
+            throw e;
+        }
+
+        final long elapsed = System.nanoTime() - start;
+
+        metrics.record(operation, elapsed, false);
+
+        final long bytes = transferred(request, result);
+
+        if (request instanceof PutObjectRequest) {
+            metrics.uploaded(bytes);
+        }
+
+        if (attempts != null) {
+            event.finish(bucket.getName(), key, operation.name(), bytes, attempts.getStatus(), attempts.getRetries());
+        }
+
+        if (info != null) {
+            afterRequest(info, elapsed, bytes, null);
+        }
+
+        return result;
+    }
+
+    private S3RequestInfo beforeRequest(String key, S3Operation operation, AmazonWebServiceRequest request) {
+        final S3RequestInfo info = new S3RequestInfo(
+                bucket.getName(), key, operation, FileOperationTag.current(), trafficClass(), request, listeners.length
+        );
+
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                info.contexts[i] = listeners[i].beforeRequest(info);
+            } catch (RuntimeException e) {
+                log.warn("Request listener " + listeners[i] + " failed before " + info, e);
+            }
+        }
+
+        return info;
+    }
+
+    private void afterRequest(S3RequestInfo info, long elapsed, long bytes, Exception error) {
+        info.elapsed = elapsed;
+        info.bytes = bytes;
+
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                listeners[i].afterRequest(info, info.contexts[i], error);
+            } catch (RuntimeException e) {
+                log.warn("Request listener " + listeners[i] + " failed after " + info, e);
+            }
+        }
+    }
+
+    /**
+     * Size of uploaded content or of content in GET response.
+     */
+    private static long transferred(AmazonWebServiceRequest request, Object result) {
+        if (request instanceof PutObjectRequest) {
+            final PutObjectRequest put = (PutObjectRequest) request;
+
+            if (put.getFile() != null) {
+                return put.getFile().length();
+            } else if (put.getMetadata() != null) {
+                return put.getMetadata().getContentLength();
+            }
+        } else if (result instanceof S3Object) {
+            return ((S3Object) result).getObjectMetadata().getContentLength();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Time of GET and upload depends on size of the content.
+     */
+    private static boolean isLatencyBound(AmazonWebServiceRequest request) {
+        if (request instanceof GetObjectRequest) {
+            return false;
+        }
+
+        if (request instanceof PutObjectRequest) {
+            final PutObjectRequest put = (PutObjectRequest) request;
+
+            return (put.getFile() == null) && (put.getMetadata() != null) && (put.getMetadata().getContentLength() == 0);
+        }
+
+        return true;
+    }
+
+    private static String listingKey(
+            String bucket, String prefix, String delimiter, String marker, Integer maxKeys, String encoding
+    ) {
+        return bucket + '\n' + prefix + '\n' + delimiter + '\n' + marker + '\n' + maxKeys + '\n' + encoding;
+    }
+
+    /**
+     * Number of HEAD and LIST requests which were not sent because the same request was already in flight.
+     */
+    public long getCoalescedRequests() {
+        return heads.getCoalesced() + listings.getCoalesced();
+    }
+
+    /**
+     * Current allowed rate of requests to the key, it is lower than {@link RequestType#getMaxRate()} only after
+     * throttling of requests by S3.
+     *
+     * @param type type of request
+     * @param key object key, only its first level prefix matters
+     * @return requests per second
+     */
+    public double getRequestRate(RequestType type, String key) {
+        return (rateLimiter != null) ? rateLimiter.getRate(type, key) : type.getMaxRate();
+    }
+
+    /**
+     * Rates of first level prefixes which are limited now. All other prefixes have max rate.
+     *
+     * @param type type of request
+     * @return requests per second by prefix
+     */
+    public SortedMap<String, Double> getRequestRates(RequestType type) {
+        return (rateLimiter != null) ? rateLimiter.getRates(type) : new TreeMap<>();
+    }
+
+    /**
+     * Number of request attempts throttled by S3 with 503 or SlowDown response.
+     */
+    public long getThrottledRequests() {
+        return (rateLimiter != null) ? rateLimiter.getThrottledRequests() : 0;
+    }
+
+    /**
+     * True if requests are rejected with {@link S3CircuitOpenException} now.
+     */
+    public boolean isCircuitOpen() {
+        return (circuitBreaker != null) && (circuitBreaker.getState() == CircuitBreaker.State.OPEN);
+    }
+
+    /**
+     * Number of hedge requests sent because original HEAD or GET request was too slow.
+     */
+    public long getHedgedRequests() {
+        return (hedging != null) ? hedging.getHedgedRequests() : 0;
+    }
+
+    /**
+     * Number of hedge requests which completed before original ones.
+     */
+    public long getHedgeWins() {
+        return (hedging != null) ? hedging.getHedgeWins() : 0;
+    }
+
+    /**
+     * Number of requests of the class waiting for connection now. Queue is shared by all file systems with the same
+     * client.
+     */
+    public int getQueuedRequests(TrafficClass type) {
+        return (scheduler != null) ? scheduler.getQueued(type) : 0;
+    }
+
+    /**
+     * Average time in milliseconds which requests of the class spent waiting for connection. Maintenance requests
+     * are counted as background ones.
+     */
+    public double getAverageQueueDelay(TrafficClass type) {
+        return (scheduler != null) ? scheduler.getAverageDelay(type) : 0;
+    }
+
+    /**
+     * Metrics of requests and transfers of this file system, also available through JMX.
+     */
+    public S3MetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Metrics of requests and transfers of this file system.
+     */
+    S3Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns false only if the key definitely doesn't exist in the bucket. Always true without existence index.
+     *
+     * @param key object key or folder prefix with trailing slash
+     */
+    boolean mightExist(String key) {
+        return (existenceIndex == null) || existenceIndex.mightExist(key);
+    }
+
+    /**
+     * Register key which was created through this file system.
+     *
+     * @param key object key or folder prefix with trailing slash
+     */
+    void keyCreated(String key) {
+        if (existenceIndex != null) {
+            existenceIndex.add(key);
+        }
+    }
+
+    /**
+     * Full listing goes through rate limiter, scheduler and circuit breaker as maintenance traffic, so it doesn't
+     * take connections reserved for foreground requests.
+     */
+    private void rebuildExistenceIndex() {
+        final AmazonS3 client = service;
+
+        if (client == null) {
+            return;
+        }
+
+        try (TrafficClass.Scope ignored = MAINTENANCE.enter()) {
+            checkCircuit();
+
+            existenceIndex.rebuild(
+                    request -> request(LIST, request.getPrefix(), request, client::listObjects),
+                    page -> request(
+                            LIST,
+                            page.getPrefix(),
+                            new ListNextBatchOfObjectsRequest(page),
+                            client::listNextBatchOfObjects
+                    )
+            );
+        } catch (S3CircuitOpenException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Skip rebuild of " + existenceIndex + " - " + e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Not able to rebuild " + existenceIndex, e);
+        }
+    }
+
+    /**
+     * Soft TTL for attached metadata in nanoseconds.
+     */
+    long getMetadataSoftTtl() {
+        return metadataSoftTtl;
+    }
+
+    /**
+     * Hard TTL for attached metadata in nanoseconds, zero for strict refresh.
+     */
+    long getMetadataHardTtl() {
+        return metadataHardTtl;
+    }
+
+    /**
+     * Check metadata of the file in background. Only one check for the same name is running at any time.
+     *
+     * @param file
+     */
+    void revalidate(S3FileObject file) {
+        final FileName name = file.getName();
+
+        if (!revalidating.add(name)) {
+            return;
+        }
+
+        try {
+            tasks.executor(BACKGROUND).execute(() -> {
+                final boolean tagged = FileOperationTag.enter("refresh");
+
+                try {
+                    file.revalidate();
+                } catch (Exception e) {
+                    log.warn("Not able to revalidate metadata for " + name, e);
+                } finally {
+                    FileOperationTag.exit(tagged);
+                    revalidating.remove(name);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            revalidating.remove(name);
+        }
+    }
+
+    /**
+     * Resolve and attach many files at once. Names are grouped by parent folder and every group is satisfied by
+     * one listing where it is cheaper than separate probes, all other names are probed concurrently. After this call
+     * {@link FileObject#exists()}, {@link FileObject#getType()} and content size don't do any requests.
+     *
+     * @param names file names from this file system
+     * @return attached file objects in the same order as names
+     * @throws FileSystemException if any of probes failed
+     */
+    public FileObject[] resolveFiles(Collection<? extends FileName> names) throws FileSystemException {
+        return FileOperationTag.call(
+                "resolveFiles", () -> (new BulkAttach(this, tasks.executor(FOREGROUND))).attach(names)
+        );
+    }
+
+    /**
+     * Tasks of this file system on shared executor.
+     */
+    S3Executor.Scope getTasks() {
+        return tasks;
+    }
+
     @Override
     protected FileObject createFile(FileName fileName) throws Exception {
         S3FileObject s3FileObject = new S3FileObject((S3FileName) fileName, this);
@@ -92,9 +940,25 @@ public class S3FileSystem extends AbstractFileSystem {
 
     @Override
     protected void doCloseCommunicationLink() {
-        if (transferManager != null) {
-            transferManager.shutdownNow(true);
+        if (!closed.compareAndSet(false, true)) {
+            // Already closed by another caller, client reference is released only once
+            return;
+        }
+
+        filesCache.clear(this);
+
+        tasks.close();
+
+        S3Metrics.unregister(metricsName);
+
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+
+        if (client != null) {
+            client.release();
 
+            client = null;
             service = null;
             transferManager = null;
         }
@@ -24,8 +24,47 @@ public class S3FileSystemConfigBuilder extends FileSystemConfigBuilder {
     private static final String CREDENTIALS_PROVIDER     = "credentialsProvider";
     private static final String OBJECT_OWNERSHIP         = "objectOwnership";
     private static final String CANNED_ACL               = "cannedAcl";
+    private static final String EXISTENCE_INDEX          = "existenceIndex";
+    private static final String EXISTENCE_INDEX_PREFIX   = "existenceIndexPrefix";
+    private static final String EXISTENCE_INDEX_KEYS     = "existenceIndexExpectedKeys";
+    private static final String EXISTENCE_INDEX_FPP      = "existenceIndexFalsePositiveRate";
+    private static final String EXISTENCE_INDEX_REFRESH  = "existenceIndexRefreshInterval";
+    private static final String PARALLELISM              = "parallelism";
+    private static final String FILES_CACHE_SIZE         = "filesCacheSize";
+    private static final String METADATA_SOFT_TTL        = "metadataSoftTtl";
+    private static final String METADATA_HARD_TTL        = "metadataHardTtl";
+    private static final String ASYNC_EVENTS             = "asyncEvents";
+    private static final String EVENT_QUEUE_SIZE         = "eventQueueSize";
+    private static final String RATE_LIMITING            = "rateLimiting";
+    private static final String HEDGING                  = "hedging";
+    private static final String HEDGING_DELAY            = "hedgingDelay";
+    private static final String HEDGING_PERCENTILE       = "hedgingPercentile";
+    private static final String HEDGING_BUDGET           = "hedgingBudget";
+    private static final String CIRCUIT_BREAKER          = "circuitBreaker";
+    private static final String CIRCUIT_FAILURE_RATE     = "circuitBreakerFailureRate";
+    private static final String CIRCUIT_OPEN_INTERVAL    = "circuitBreakerOpenInterval";
+    private static final String SLOW_REQUEST_THRESHOLD   = "slowRequestThreshold";
+    private static final String REQUEST_TIMEOUT          = "requestTimeout";
+    private static final String DOWNLOAD_BANDWIDTH       = "downloadBandwidth";
+    private static final String UPLOAD_BANDWIDTH         = "uploadBandwidth";
+    private static final String TRANSFER_CLASS           = "transferClass";
+    private static final String REQUEST_SCHEDULING       = "requestScheduling";
+    private static final String REQUEST_LISTENERS        = "requestListeners";
 
     private static final int DEFAULT_MAX_ERROR_RETRY = 8;
+    private static final long DEFAULT_EXISTENCE_INDEX_KEYS = 1_000_000;
+    private static final double DEFAULT_EXISTENCE_INDEX_FPP = 0.01;
+    private static final long DEFAULT_EXISTENCE_INDEX_REFRESH = 600;
+    private static final int DEFAULT_PARALLELISM = 16;
+    private static final int DEFAULT_FILES_CACHE_SIZE = 10_000;
+    private static final int DEFAULT_EVENT_QUEUE_SIZE = 1024;
+    private static final double DEFAULT_HEDGING_PERCENTILE = 95;
+    private static final double DEFAULT_HEDGING_BUDGET = 0.05;
+    private static final double DEFAULT_CIRCUIT_FAILURE_RATE = 0.5;
+    private static final long DEFAULT_CIRCUIT_OPEN_INTERVAL = 10_000;
+    private static final long DEFAULT_SLOW_REQUEST_THRESHOLD = 10_000;
+
+    private static final S3RequestListener[] NO_LISTENERS = new S3RequestListener[0];
 
     private static final S3FileSystemConfigBuilder BUILDER = new S3FileSystemConfigBuilder();
 
@@ -67,6 +106,14 @@ public class S3FileSystemConfigBuilder extends FileSystemConfigBuilder {
         return getInteger(opts, name, defaultValue);
     }
 
+    long getLongOption(FileSystemOptions opts, String name, long defaultValue) {
+        return getLong(opts, name, defaultValue);
+    }
+
+    double getDoubleOption(FileSystemOptions opts, String name, double defaultValue) {
+        return getDouble(opts, name, defaultValue);
+    }
+
     public boolean getServerSideEncryption(FileSystemOptions opts) {
         return getBooleanOption(opts, SERVER_SIDE_ENCRYPTION, false);
     }
@@ -104,6 +151,13 @@ public class S3FileSystemConfigBuilder extends FileSystemConfigBuilder {
         return clientConfiguration;
     }
 
+    /**
+     * Client configuration which was set for options or null for default one.
+     */
+    ClientConfiguration getCustomClientConfiguration(FileSystemOptions opts) {
+        return (ClientConfiguration) getOption(opts, CLIENT_CONFIGURATION);
+    }
+
     /**
      * Don't use chunked encoding for AWS calls - useful for localstack because it doesn't support it.
      *
@@ -184,6 +238,13 @@ public class S3FileSystemConfigBuilder extends FileSystemConfigBuilder {
         return (provider != null) ? provider : (new DefaultAWSCredentialsProviderChain());
     }
 
+    /**
+     * Credentials provider which was set for options or null for default one.
+     */
+    AWSCredentialsProvider getCustomCredentialsProvider(FileSystemOptions opts) {
+        return (AWSCredentialsProvider) getOption(opts, CREDENTIALS_PROVIDER);
+    }
+
     /**
      * Set credentials provider for a file system
      *
@@ -233,4 +294,538 @@ public class S3FileSystemConfigBuilder extends FileSystemConfigBuilder {
 
         builder.setOption(opts, CANNED_ACL, acl);
     }
+
+    /**
+     * Build probabilistic index of existing keys from one flat listing and use it to skip requests for missing
+     * objects. Useful only for read-mostly buckets because objects created by other clients are invisible until
+     * next rebuild. False by default.
+     */
+    public boolean isExistenceIndex(FileSystemOptions opts) {
+        return getBooleanOption(opts, EXISTENCE_INDEX, false);
+    }
+
+    /**
+     * Build probabilistic index of existing keys from one flat listing and use it to skip requests for missing
+     * objects.
+     *
+     * @param opts
+     * @param existenceIndex
+     */
+    public void setExistenceIndex(FileSystemOptions opts, boolean existenceIndex) {
+        setOption(opts, EXISTENCE_INDEX, existenceIndex);
+    }
+
+    /**
+     * Key prefix covered by existence index - whole bucket by default.
+     */
+    public String getExistenceIndexPrefix(FileSystemOptions opts) {
+        return getStringOption(opts, EXISTENCE_INDEX_PREFIX, "");
+    }
+
+    /**
+     * Key prefix covered by existence index.
+     *
+     * @param opts
+     * @param prefix key prefix without leading slash, like "data/2019/"
+     */
+    public void setExistenceIndexPrefix(FileSystemOptions opts, String prefix) {
+        setOption(opts, EXISTENCE_INDEX_PREFIX, requireNonNull(prefix));
+    }
+
+    /**
+     * Expected number of keys for the first build of existence index. Next rebuilds are sized by real number of keys.
+     */
+    public long getExistenceIndexExpectedKeys(FileSystemOptions opts) {
+        return getLongOption(opts, EXISTENCE_INDEX_KEYS, DEFAULT_EXISTENCE_INDEX_KEYS);
+    }
+
+    /**
+     * Expected number of keys for the first build of existence index.
+     *
+     * @param opts
+     * @param expectedKeys
+     */
+    public void setExistenceIndexExpectedKeys(FileSystemOptions opts, long expectedKeys) {
+        setOption(opts, EXISTENCE_INDEX_KEYS, expectedKeys);
+    }
+
+    /**
+     * False positive rate for existence index - 1% by default, which costs about 1.2 bytes per key.
+     */
+    public double getExistenceIndexFalsePositiveRate(FileSystemOptions opts) {
+        return getDoubleOption(opts, EXISTENCE_INDEX_FPP, DEFAULT_EXISTENCE_INDEX_FPP);
+    }
+
+    /**
+     * False positive rate for existence index. Each ten times lower rate costs about 0.6 bytes per key.
+     *
+     * @param opts
+     * @param falsePositiveRate
+     */
+    public void setExistenceIndexFalsePositiveRate(FileSystemOptions opts, double falsePositiveRate) {
+        setOption(opts, EXISTENCE_INDEX_FPP, falsePositiveRate);
+    }
+
+    /**
+     * Interval in seconds between rebuilds of existence index - 10 minutes by default.
+     */
+    public long getExistenceIndexRefreshInterval(FileSystemOptions opts) {
+        return getLongOption(opts, EXISTENCE_INDEX_REFRESH, DEFAULT_EXISTENCE_INDEX_REFRESH);
+    }
+
+    /**
+     * Interval in seconds between rebuilds of existence index.
+     *
+     * @param opts
+     * @param seconds
+     */
+    public void setExistenceIndexRefreshInterval(FileSystemOptions opts, long seconds) {
+        setOption(opts, EXISTENCE_INDEX_REFRESH, seconds);
+    }
+
+    /**
+     * Maximum number of concurrent requests for bulk operations like {@link S3FileSystem#resolveFiles}. 16 by default.
+     * Keep it below connection pool size from client configuration.
+     */
+    public int getParallelism(FileSystemOptions opts) {
+        return getIntegerOption(opts, PARALLELISM, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Maximum number of concurrent requests for bulk operations.
+     *
+     * @param opts
+     * @param parallelism
+     */
+    public void setParallelism(FileSystemOptions opts, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism should be positive [" + parallelism + "]");
+        }
+
+        setOption(opts, PARALLELISM, parallelism);
+    }
+
+    /**
+     * Max number of file objects which are kept in the cache of file system. Ignored if file system manager has
+     * {@link org.apache.commons.vfs2.cache.NullFilesCache} or {@link S3FilesCache}. 10000 by default.
+     */
+    public int getFilesCacheSize(FileSystemOptions opts) {
+        return getIntegerOption(opts, FILES_CACHE_SIZE, DEFAULT_FILES_CACHE_SIZE);
+    }
+
+    /**
+     * Max number of file objects which are kept in the cache of file system, zero disables caching.
+     *
+     * @param opts
+     * @param size
+     */
+    public void setFilesCacheSize(FileSystemOptions opts, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Cache size should not be negative [" + size + "]");
+        }
+
+        setOption(opts, FILES_CACHE_SIZE, size);
+    }
+
+    /**
+     * Time in milliseconds while attached metadata is served on refresh without any checks. Zero by default.
+     */
+    public long getMetadataSoftTtl(FileSystemOptions opts) {
+        return getLongOption(opts, METADATA_SOFT_TTL, 0);
+    }
+
+    /**
+     * Time in milliseconds while attached metadata is served on refresh without any checks. After that and until
+     * hard TTL metadata is still served but revalidated in background.
+     *
+     * @param opts
+     * @param ttl
+     */
+    public void setMetadataSoftTtl(FileSystemOptions opts, long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("TTL should not be negative [" + ttl + "]");
+        }
+
+        setOption(opts, METADATA_SOFT_TTL, ttl);
+    }
+
+    /**
+     * Time in milliseconds after which refresh drops attached metadata. Zero by default - every refresh drops it.
+     */
+    public long getMetadataHardTtl(FileSystemOptions opts) {
+        return getLongOption(opts, METADATA_HARD_TTL, 0);
+    }
+
+    /**
+     * Time in milliseconds after which refresh drops attached metadata and next access blocks on request to S3.
+     * Should be not less than soft TTL, zero means strict refresh.
+     *
+     * @param opts
+     * @param ttl
+     */
+    public void setMetadataHardTtl(FileSystemOptions opts, long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("TTL should not be negative [" + ttl + "]");
+        }
+
+        setOption(opts, METADATA_HARD_TTL, ttl);
+    }
+
+    /**
+     * Deliver file change events to listeners from background thread instead of the thread which changed the file.
+     * False by default.
+     */
+    public boolean isAsyncEvents(FileSystemOptions opts) {
+        return getBooleanOption(opts, ASYNC_EVENTS, false);
+    }
+
+    /**
+     * Deliver file change events to listeners from background thread. Pending events for the same file are coalesced,
+     * so listener could see only the last of them.
+     *
+     * @param opts
+     * @param asyncEvents
+     */
+    public void setAsyncEvents(FileSystemOptions opts, boolean asyncEvents) {
+        setOption(opts, ASYNC_EVENTS, asyncEvents);
+    }
+
+    /**
+     * Max number of files with pending events for asynchronous delivery. 1024 by default.
+     */
+    public int getEventQueueSize(FileSystemOptions opts) {
+        return getIntegerOption(opts, EVENT_QUEUE_SIZE, DEFAULT_EVENT_QUEUE_SIZE);
+    }
+
+    /**
+     * Max number of files with pending events for asynchronous delivery. When queue is full the event is delivered by
+     * the thread which changed the file.
+     *
+     * @param opts
+     * @param size
+     */
+    public void setEventQueueSize(FileSystemOptions opts, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Queue size should be positive [" + size + "]");
+        }
+
+        setOption(opts, EVENT_QUEUE_SIZE, size);
+    }
+
+    /**
+     * Adaptive client side rate limiting of requests by key prefix after 503 SlowDown responses. True by default,
+     * requests are not delayed until S3 starts throttling.
+     */
+    public boolean isRateLimiting(FileSystemOptions opts) {
+        return getBooleanOption(opts, RATE_LIMITING, true);
+    }
+
+    /**
+     * Adaptive client side rate limiting of requests by key prefix after 503 SlowDown responses.
+     *
+     * @param opts
+     * @param rateLimiting
+     */
+    public void setRateLimiting(FileSystemOptions opts, boolean rateLimiting) {
+        setOption(opts, RATE_LIMITING, rateLimiting);
+    }
+
+    /**
+     * Hedging of HEAD requests on attach and GET requests of small objects - slow request is sent once more and the
+     * first response wins. False by default.
+     */
+    public boolean isHedging(FileSystemOptions opts) {
+        return getBooleanOption(opts, HEDGING, false);
+    }
+
+    /**
+     * Hedging of HEAD requests on attach and GET requests of small objects.
+     *
+     * @param opts
+     * @param hedging
+     */
+    public void setHedging(FileSystemOptions opts, boolean hedging) {
+        setOption(opts, HEDGING, hedging);
+    }
+
+    /**
+     * Time in milliseconds before hedge request. Zero by default which means percentile of recent latencies.
+     */
+    public long getHedgingDelay(FileSystemOptions opts) {
+        return getLongOption(opts, HEDGING_DELAY, 0);
+    }
+
+    /**
+     * Time in milliseconds before hedge request, zero for percentile of recent latencies.
+     *
+     * @param opts
+     * @param delay
+     */
+    public void setHedgingDelay(FileSystemOptions opts, long delay) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Hedging delay should not be negative [" + delay + "]");
+        }
+
+        setOption(opts, HEDGING_DELAY, delay);
+    }
+
+    /**
+     * Percentile of recent latencies used as hedging delay when it is not set. 95 by default.
+     */
+    public double getHedgingPercentile(FileSystemOptions opts) {
+        return getDoubleOption(opts, HEDGING_PERCENTILE, DEFAULT_HEDGING_PERCENTILE);
+    }
+
+    /**
+     * Percentile of recent latencies used as hedging delay when it is not set.
+     *
+     * @param opts
+     * @param percentile
+     */
+    public void setHedgingPercentile(FileSystemOptions opts, double percentile) {
+        if ((percentile <= 0) || (percentile >= 100)) {
+            throw new IllegalArgumentException("Percentile should be between 0 and 100 [" + percentile + "]");
+        }
+
+        setOption(opts, HEDGING_PERCENTILE, percentile);
+    }
+
+    /**
+     * Max share of hedge requests among all hedgeable requests. 0.05 by default.
+     */
+    public double getHedgingBudget(FileSystemOptions opts) {
+        return getDoubleOption(opts, HEDGING_BUDGET, DEFAULT_HEDGING_BUDGET);
+    }
+
+    /**
+     * Max share of hedge requests among all hedgeable requests.
+     *
+     * @param opts
+     * @param budget
+     */
+    public void setHedgingBudget(FileSystemOptions opts, double budget) {
+        if ((budget < 0) || (budget > 1)) {
+            throw new IllegalArgumentException("Budget should be between 0 and 1 [" + budget + "]");
+        }
+
+        setOption(opts, HEDGING_BUDGET, budget);
+    }
+
+    /**
+     * Circuit breaker which rejects requests with {@link S3CircuitOpenException} while most of recent requests to
+     * the endpoint fail or are too slow. True by default.
+     */
+    public boolean isCircuitBreaker(FileSystemOptions opts) {
+        return getBooleanOption(opts, CIRCUIT_BREAKER, true);
+    }
+
+    /**
+     * Circuit breaker which rejects requests while most of recent requests to the endpoint fail or are too slow.
+     *
+     * @param opts
+     * @param circuitBreaker
+     */
+    public void setCircuitBreaker(FileSystemOptions opts, boolean circuitBreaker) {
+        setOption(opts, CIRCUIT_BREAKER, circuitBreaker);
+    }
+
+    /**
+     * Share of failed and slow requests in last 10 seconds which opens the circuit. 0.5 by default.
+     */
+    public double getCircuitBreakerFailureRate(FileSystemOptions opts) {
+        return getDoubleOption(opts, CIRCUIT_FAILURE_RATE, DEFAULT_CIRCUIT_FAILURE_RATE);
+    }
+
+    /**
+     * Share of failed and slow requests in last 10 seconds which opens the circuit.
+     *
+     * @param opts
+     * @param failureRate
+     */
+    public void setCircuitBreakerFailureRate(FileSystemOptions opts, double failureRate) {
+        if ((failureRate <= 0) || (failureRate > 1)) {
+            throw new IllegalArgumentException("Failure rate should be between 0 and 1 [" + failureRate + "]");
+        }
+
+        setOption(opts, CIRCUIT_FAILURE_RATE, failureRate);
+    }
+
+    /**
+     * Time in milliseconds while circuit is open before probe request. 10 seconds by default.
+     */
+    public long getCircuitBreakerOpenInterval(FileSystemOptions opts) {
+        return getLongOption(opts, CIRCUIT_OPEN_INTERVAL, DEFAULT_CIRCUIT_OPEN_INTERVAL);
+    }
+
+    /**
+     * Time in milliseconds while circuit is open before probe request.
+     *
+     * @param opts
+     * @param interval
+     */
+    public void setCircuitBreakerOpenInterval(FileSystemOptions opts, long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Open interval should be positive [" + interval + "]");
+        }
+
+        setOption(opts, CIRCUIT_OPEN_INTERVAL, interval);
+    }
+
+    /**
+     * Time in milliseconds after which request without content transfer counts as failure for circuit breaker.
+     * 10 seconds by default.
+     */
+    public long getSlowRequestThreshold(FileSystemOptions opts) {
+        return getLongOption(opts, SLOW_REQUEST_THRESHOLD, DEFAULT_SLOW_REQUEST_THRESHOLD);
+    }
+
+    /**
+     * Time in milliseconds after which request without content transfer counts as failure, zero to ignore latency.
+     *
+     * @param opts
+     * @param threshold
+     */
+    public void setSlowRequestThreshold(FileSystemOptions opts, long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold should not be negative [" + threshold + "]");
+        }
+
+        setOption(opts, SLOW_REQUEST_THRESHOLD, threshold);
+    }
+
+    /**
+     * Deadline in milliseconds for request without content transfer including all its retries. Zero by default
+     * which means only timeouts from client configuration.
+     */
+    public long getRequestTimeout(FileSystemOptions opts) {
+        return getLongOption(opts, REQUEST_TIMEOUT, 0);
+    }
+
+    /**
+     * Deadline in milliseconds for request without content transfer including all its retries, zero for timeouts
+     * from client configuration.
+     *
+     * @param opts
+     * @param timeout
+     */
+    public void setRequestTimeout(FileSystemOptions opts, long timeout) {
+        if ((timeout < 0) || (timeout > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Wrong request timeout [" + timeout + "]");
+        }
+
+        setOption(opts, REQUEST_TIMEOUT, timeout);
+    }
+
+    /**
+     * Max download speed of the file system in bytes per second. Zero by default which means only limit of the
+     * provider.
+     */
+    public long getDownloadBandwidth(FileSystemOptions opts) {
+        return getLongOption(opts, DOWNLOAD_BANDWIDTH, 0);
+    }
+
+    /**
+     * Max download speed of the file system in bytes per second, zero for no own limit.
+     *
+     * @param opts
+     * @param bytesPerSecond
+     */
+    public void setDownloadBandwidth(FileSystemOptions opts, long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bandwidth should not be negative [" + bytesPerSecond + "]");
+        }
+
+        setOption(opts, DOWNLOAD_BANDWIDTH, bytesPerSecond);
+    }
+
+    /**
+     * Max upload speed of the file system in bytes per second. Zero by default which means only limit of the
+     * provider.
+     */
+    public long getUploadBandwidth(FileSystemOptions opts) {
+        return getLongOption(opts, UPLOAD_BANDWIDTH, 0);
+    }
+
+    /**
+     * Max upload speed of the file system in bytes per second, zero for no own limit.
+     *
+     * @param opts
+     * @param bytesPerSecond
+     */
+    public void setUploadBandwidth(FileSystemOptions opts, long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bandwidth should not be negative [" + bytesPerSecond + "]");
+        }
+
+        setOption(opts, UPLOAD_BANDWIDTH, bytesPerSecond);
+    }
+
+    /**
+     * Priority of requests and content transfers of the file system. {@link TrafficClass#FOREGROUND} by default,
+     * background transfers get about quarter of limited bandwidth and background requests get about fifth of
+     * connections while there are foreground ones.
+     */
+    public TrafficClass getTransferClass(FileSystemOptions opts) {
+        final TrafficClass type = (TrafficClass) getOption(opts, TRANSFER_CLASS);
+
+        return (type != null) ? type : TrafficClass.FOREGROUND;
+    }
+
+    /**
+     * Priority of requests and content transfers of the file system, use {@link TrafficClass#BACKGROUND} for bulk
+     * copies. Requests of one thread could get another class with {@link TrafficClass#enter()}.
+     *
+     * @param opts
+     * @param type
+     */
+    public void setTransferClass(FileSystemOptions opts, TrafficClass type) {
+        if (type == TrafficClass.MAINTENANCE) {
+            throw new IllegalArgumentException("Transfer class should be foreground or background");
+        }
+
+        setOption(opts, TRANSFER_CLASS, requireNonNull(type));
+    }
+
+    /**
+     * Scheduling of requests by priority classes in front of the shared client. True by default, requests wait for
+     * connection in queue of their class and part of connections is reserved for foreground requests.
+     */
+    public boolean isRequestScheduling(FileSystemOptions opts) {
+        return getBooleanOption(opts, REQUEST_SCHEDULING, true);
+    }
+
+    /**
+     * Scheduling of requests by priority classes in front of the shared client. GET keeps its connection until its
+     * content is closed. Parts of multipart uploads are sent by transfer manager outside of the scheduler, so up to
+     * ten connections of the pool but not more than half of it are left for them.
+     *
+     * @param opts
+     * @param requestScheduling
+     */
+    public void setRequestScheduling(FileSystemOptions opts, boolean requestScheduling) {
+        setOption(opts, REQUEST_SCHEDULING, requestScheduling);
+    }
+
+    /**
+     * Listeners of all requests of the file system, in addition to listeners of the provider. Empty by default.
+     */
+    public S3RequestListener[] getRequestListeners(FileSystemOptions opts) {
+        final S3RequestListener[] listeners = (S3RequestListener[]) getOption(opts, REQUEST_LISTENERS);
+
+        return (listeners != null) ? listeners.clone() : NO_LISTENERS;
+    }
+
+    /**
+     * Listeners of all requests of the file system, they are called in the given order.
+     *
+     * @param opts
+     * @param listeners
+     */
+    public void setRequestListeners(FileSystemOptions opts, S3RequestListener... listeners) {
+        for (S3RequestListener listener : listeners) {
+            requireNonNull(listener, "Request listener should not be null");
+        }
+
+        setOption(opts, REQUEST_LISTENERS, listeners.clone());
+    }
 }
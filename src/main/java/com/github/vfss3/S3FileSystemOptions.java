@@ -176,6 +176,384 @@ public class S3FileSystemOptions implements Cloneable {
         S3FileSystemConfigBuilder.getInstance().setCannedAcl(options, acl);
     }
 
+    /**
+     * Build probabilistic index of existing keys and skip requests for missing objects.
+     */
+    public boolean isExistenceIndex() {
+        return S3FileSystemConfigBuilder.getInstance().isExistenceIndex(options);
+    }
+
+    /**
+     * Build probabilistic index of existing keys and skip requests for missing objects.
+     */
+    public void setExistenceIndex(boolean existenceIndex) {
+        S3FileSystemConfigBuilder.getInstance().setExistenceIndex(options, existenceIndex);
+    }
+
+    /**
+     * Key prefix covered by existence index.
+     */
+    public String getExistenceIndexPrefix() {
+        return S3FileSystemConfigBuilder.getInstance().getExistenceIndexPrefix(options);
+    }
+
+    /**
+     * Key prefix covered by existence index.
+     */
+    public void setExistenceIndexPrefix(String prefix) {
+        S3FileSystemConfigBuilder.getInstance().setExistenceIndexPrefix(options, prefix);
+    }
+
+    /**
+     * Expected number of keys for the first build of existence index.
+     */
+    public long getExistenceIndexExpectedKeys() {
+        return S3FileSystemConfigBuilder.getInstance().getExistenceIndexExpectedKeys(options);
+    }
+
+    /**
+     * Expected number of keys for the first build of existence index.
+     */
+    public void setExistenceIndexExpectedKeys(long expectedKeys) {
+        S3FileSystemConfigBuilder.getInstance().setExistenceIndexExpectedKeys(options, expectedKeys);
+    }
+
+    /**
+     * False positive rate for existence index.
+     */
+    public double getExistenceIndexFalsePositiveRate() {
+        return S3FileSystemConfigBuilder.getInstance().getExistenceIndexFalsePositiveRate(options);
+    }
+
+    /**
+     * False positive rate for existence index.
+     */
+    public void setExistenceIndexFalsePositiveRate(double falsePositiveRate) {
+        S3FileSystemConfigBuilder.getInstance().setExistenceIndexFalsePositiveRate(options, falsePositiveRate);
+    }
+
+    /**
+     * Interval in seconds between rebuilds of existence index.
+     */
+    public long getExistenceIndexRefreshInterval() {
+        return S3FileSystemConfigBuilder.getInstance().getExistenceIndexRefreshInterval(options);
+    }
+
+    /**
+     * Interval in seconds between rebuilds of existence index.
+     */
+    public void setExistenceIndexRefreshInterval(long seconds) {
+        S3FileSystemConfigBuilder.getInstance().setExistenceIndexRefreshInterval(options, seconds);
+    }
+
+    /**
+     * Maximum number of concurrent requests for bulk operations.
+     */
+    public int getParallelism() {
+        return S3FileSystemConfigBuilder.getInstance().getParallelism(options);
+    }
+
+    /**
+     * Maximum number of concurrent requests for bulk operations.
+     */
+    public void setParallelism(int parallelism) {
+        S3FileSystemConfigBuilder.getInstance().setParallelism(options, parallelism);
+    }
+
+    /**
+     * Max number of file objects which are kept in the cache of file system.
+     */
+    public int getFilesCacheSize() {
+        return S3FileSystemConfigBuilder.getInstance().getFilesCacheSize(options);
+    }
+
+    /**
+     * Max number of file objects which are kept in the cache of file system, zero disables caching.
+     */
+    public void setFilesCacheSize(int size) {
+        S3FileSystemConfigBuilder.getInstance().setFilesCacheSize(options, size);
+    }
+
+    /**
+     * Time in milliseconds while attached metadata is served on refresh without any checks.
+     */
+    public long getMetadataSoftTtl() {
+        return S3FileSystemConfigBuilder.getInstance().getMetadataSoftTtl(options);
+    }
+
+    /**
+     * Time in milliseconds while attached metadata is served on refresh without any checks.
+     */
+    public void setMetadataSoftTtl(long ttl) {
+        S3FileSystemConfigBuilder.getInstance().setMetadataSoftTtl(options, ttl);
+    }
+
+    /**
+     * Time in milliseconds after which refresh drops attached metadata.
+     */
+    public long getMetadataHardTtl() {
+        return S3FileSystemConfigBuilder.getInstance().getMetadataHardTtl(options);
+    }
+
+    /**
+     * Time in milliseconds after which refresh drops attached metadata, zero means strict refresh.
+     */
+    public void setMetadataHardTtl(long ttl) {
+        S3FileSystemConfigBuilder.getInstance().setMetadataHardTtl(options, ttl);
+    }
+
+    /**
+     * Deliver file change events to listeners from background thread.
+     */
+    public boolean isAsyncEvents() {
+        return S3FileSystemConfigBuilder.getInstance().isAsyncEvents(options);
+    }
+
+    /**
+     * Deliver file change events to listeners from background thread, pending events for the same file are coalesced.
+     */
+    public void setAsyncEvents(boolean asyncEvents) {
+        S3FileSystemConfigBuilder.getInstance().setAsyncEvents(options, asyncEvents);
+    }
+
+    /**
+     * Max number of files with pending events for asynchronous delivery.
+     */
+    public int getEventQueueSize() {
+        return S3FileSystemConfigBuilder.getInstance().getEventQueueSize(options);
+    }
+
+    /**
+     * Max number of files with pending events for asynchronous delivery.
+     */
+    public void setEventQueueSize(int size) {
+        S3FileSystemConfigBuilder.getInstance().setEventQueueSize(options, size);
+    }
+
+    /**
+     * Adaptive client side rate limiting of requests by key prefix after 503 SlowDown responses.
+     */
+    public boolean isRateLimiting() {
+        return S3FileSystemConfigBuilder.getInstance().isRateLimiting(options);
+    }
+
+    /**
+     * Adaptive client side rate limiting of requests by key prefix after 503 SlowDown responses.
+     */
+    public void setRateLimiting(boolean rateLimiting) {
+        S3FileSystemConfigBuilder.getInstance().setRateLimiting(options, rateLimiting);
+    }
+
+    /**
+     * Hedging of HEAD requests on attach and GET requests of small objects.
+     */
+    public boolean isHedging() {
+        return S3FileSystemConfigBuilder.getInstance().isHedging(options);
+    }
+
+    /**
+     * Hedging of HEAD requests on attach and GET requests of small objects.
+     */
+    public void setHedging(boolean hedging) {
+        S3FileSystemConfigBuilder.getInstance().setHedging(options, hedging);
+    }
+
+    /**
+     * Time in milliseconds before hedge request, zero for percentile of recent latencies.
+     */
+    public long getHedgingDelay() {
+        return S3FileSystemConfigBuilder.getInstance().getHedgingDelay(options);
+    }
+
+    /**
+     * Time in milliseconds before hedge request, zero for percentile of recent latencies.
+     */
+    public void setHedgingDelay(long delay) {
+        S3FileSystemConfigBuilder.getInstance().setHedgingDelay(options, delay);
+    }
+
+    /**
+     * Percentile of recent latencies used as hedging delay when it is not set.
+     */
+    public double getHedgingPercentile() {
+        return S3FileSystemConfigBuilder.getInstance().getHedgingPercentile(options);
+    }
+
+    /**
+     * Percentile of recent latencies used as hedging delay when it is not set.
+     */
+    public void setHedgingPercentile(double percentile) {
+        S3FileSystemConfigBuilder.getInstance().setHedgingPercentile(options, percentile);
+    }
+
+    /**
+     * Max share of hedge requests among all hedgeable requests.
+     */
+    public double getHedgingBudget() {
+        return S3FileSystemConfigBuilder.getInstance().getHedgingBudget(options);
+    }
+
+    /**
+     * Max share of hedge requests among all hedgeable requests.
+     */
+    public void setHedgingBudget(double budget) {
+        S3FileSystemConfigBuilder.getInstance().setHedgingBudget(options, budget);
+    }
+
+    /**
+     * Circuit breaker which rejects requests while most of recent requests to the endpoint fail or are too slow.
+     */
+    public boolean isCircuitBreaker() {
+        return S3FileSystemConfigBuilder.getInstance().isCircuitBreaker(options);
+    }
+
+    /**
+     * Circuit breaker which rejects requests while most of recent requests to the endpoint fail or are too slow.
+     */
+    public void setCircuitBreaker(boolean circuitBreaker) {
+        S3FileSystemConfigBuilder.getInstance().setCircuitBreaker(options, circuitBreaker);
+    }
+
+    /**
+     * Share of failed and slow requests in last 10 seconds which opens the circuit.
+     */
+    public double getCircuitBreakerFailureRate() {
+        return S3FileSystemConfigBuilder.getInstance().getCircuitBreakerFailureRate(options);
+    }
+
+    /**
+     * Share of failed and slow requests in last 10 seconds which opens the circuit.
+     */
+    public void setCircuitBreakerFailureRate(double failureRate) {
+        S3FileSystemConfigBuilder.getInstance().setCircuitBreakerFailureRate(options, failureRate);
+    }
+
+    /**
+     * Time in milliseconds while circuit is open before probe request.
+     */
+    public long getCircuitBreakerOpenInterval() {
+        return S3FileSystemConfigBuilder.getInstance().getCircuitBreakerOpenInterval(options);
+    }
+
+    /**
+     * Time in milliseconds while circuit is open before probe request.
+     */
+    public void setCircuitBreakerOpenInterval(long interval) {
+        S3FileSystemConfigBuilder.getInstance().setCircuitBreakerOpenInterval(options, interval);
+    }
+
+    /**
+     * Time in milliseconds after which request without content transfer counts as failure.
+     */
+    public long getSlowRequestThreshold() {
+        return S3FileSystemConfigBuilder.getInstance().getSlowRequestThreshold(options);
+    }
+
+    /**
+     * Time in milliseconds after which request without content transfer counts as failure.
+     */
+    public void setSlowRequestThreshold(long threshold) {
+        S3FileSystemConfigBuilder.getInstance().setSlowRequestThreshold(options, threshold);
+    }
+
+    /**
+     * Deadline in milliseconds for request without content transfer including all its retries.
+     */
+    public long getRequestTimeout() {
+        return S3FileSystemConfigBuilder.getInstance().getRequestTimeout(options);
+    }
+
+    /**
+     * Deadline in milliseconds for request without content transfer including all its retries.
+     */
+    public void setRequestTimeout(long timeout) {
+        S3FileSystemConfigBuilder.getInstance().setRequestTimeout(options, timeout);
+    }
+
+    /**
+     * Max download speed of the file system in bytes per second, zero for no own limit.
+     */
+    public long getDownloadBandwidth() {
+        return S3FileSystemConfigBuilder.getInstance().getDownloadBandwidth(options);
+    }
+
+    /**
+     * Max download speed of the file system in bytes per second, zero for no own limit.
+     */
+    public void setDownloadBandwidth(long bytesPerSecond) {
+        S3FileSystemConfigBuilder.getInstance().setDownloadBandwidth(options, bytesPerSecond);
+    }
+
+    /**
+     * Max upload speed of the file system in bytes per second, zero for no own limit.
+     */
+    public long getUploadBandwidth() {
+        return S3FileSystemConfigBuilder.getInstance().getUploadBandwidth(options);
+    }
+
+    /**
+     * Max upload speed of the file system in bytes per second, zero for no own limit.
+     */
+    public void setUploadBandwidth(long bytesPerSecond) {
+        S3FileSystemConfigBuilder.getInstance().setUploadBandwidth(options, bytesPerSecond);
+    }
+
+    /**
+     * Priority of requests and content transfers of the file system.
+     */
+    public TrafficClass getTransferClass() {
+        return S3FileSystemConfigBuilder.getInstance().getTransferClass(options);
+    }
+
+    /**
+     * Priority of requests and content transfers of the file system.
+     */
+    public void setTransferClass(TrafficClass type) {
+        S3FileSystemConfigBuilder.getInstance().setTransferClass(options, type);
+    }
+
+    /**
+     * Scheduling of requests by priority classes in front of the shared client.
+     */
+    public boolean isRequestScheduling() {
+        return S3FileSystemConfigBuilder.getInstance().isRequestScheduling(options);
+    }
+
+    /**
+     * Scheduling of requests by priority classes in front of the shared client.
+     */
+    public void setRequestScheduling(boolean requestScheduling) {
+        S3FileSystemConfigBuilder.getInstance().setRequestScheduling(options, requestScheduling);
+    }
+
+    /**
+     * Listeners of all requests of the file system.
+     */
+    public S3RequestListener[] getRequestListeners() {
+        return S3FileSystemConfigBuilder.getInstance().getRequestListeners(options);
+    }
+
+    /**
+     * Listeners of all requests of the file system, in addition to listeners of the provider.
+     */
+    public void setRequestListeners(S3RequestListener... listeners) {
+        S3FileSystemConfigBuilder.getInstance().setRequestListeners(options, listeners);
+    }
+
+    /**
+     * Client configuration which was set or null for default one.
+     */
+    ClientConfiguration getCustomClientConfiguration() {
+        return S3FileSystemConfigBuilder.getInstance().getCustomClientConfiguration(options);
+    }
+
+    /**
+     * Credentials provider which was set or null for default one.
+     */
+    AWSCredentialsProvider getCustomCredentialsProvider() {
+        return S3FileSystemConfigBuilder.getInstance().getCustomCredentialsProvider(options);
+    }
+
     /**
      * Returns clone of options object for some legacy things.
      *
@@ -0,0 +1,174 @@
+package com.github.vfss3;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.cache.AbstractFilesCache;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded files cache with soft values. Every file system has own set of lock stripes, every stripe is small LRU map
+ * so lookups for different names almost never wait for each other. Least recently used files are evicted when stripe
+ * is full, soft values let GC take files under memory pressure.
+ * <p>
+ * Could be used as files cache for whole {@link org.apache.commons.vfs2.FileSystemManager}, otherwise every
+ * {@link S3FileSystem} creates own instance with size from {@link S3FileSystemOptions#getFilesCacheSize()}.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3FilesCache extends AbstractFilesCache {
+    private static final int STRIPES = 16;
+
+    private final ConcurrentMap<FileSystem, Stripe[]> caches = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * @param maxSize max number of cached files per file system, zero disables caching
+     */
+    public S3FilesCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size should not be negative [" + maxSize + "]");
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void putFile(FileObject file) {
+        if (maxSize > 0) {
+            stripe(file.getFileSystem(), file.getName()).put(file.getName(), file, false);
+        }
+    }
+
+    @Override
+    public boolean putFileIfAbsent(FileObject file) {
+        return (maxSize > 0) && stripe(file.getFileSystem(), file.getName()).put(file.getName(), file, true);
+    }
+
+    @Override
+    public FileObject getFile(FileSystem fileSystem, FileName name) {
+        final Stripe[] stripes = caches.get(fileSystem);
+
+        return (stripes != null) ? stripes[index(name)].get(name) : null;
+    }
+
+    @Override
+    public void removeFile(FileSystem fileSystem, FileName name) {
+        final Stripe[] stripes = caches.get(fileSystem);
+
+        if (stripes != null) {
+            stripes[index(name)].remove(name);
+        }
+    }
+
+    @Override
+    public void clear(FileSystem fileSystem) {
+        caches.remove(fileSystem);
+    }
+
+    @Override
+    public void close() {
+        caches.clear();
+    }
+
+    private Stripe stripe(FileSystem fileSystem, FileName name) {
+        return caches.computeIfAbsent(fileSystem, fs -> {
+            final Stripe[] stripes = new Stripe[STRIPES];
+            final int stripeSize = Math.max(1, (maxSize + STRIPES - 1) / STRIPES);
+
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe(stripeSize);
+            }
+
+            return stripes;
+        })[index(name)];
+    }
+
+    private static int index(FileName name) {
+        final int hash = name.hashCode();
+
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Soft reference which remembers own key for cleanup.
+     */
+    private static class Entry extends SoftReference<FileObject> {
+        private final FileName name;
+
+        Entry(FileName name, FileObject file, ReferenceQueue<FileObject> queue) {
+            super(file, queue);
+
+            this.name = name;
+        }
+    }
+
+    private static class Stripe {
+        private final ReferenceQueue<FileObject> queue = new ReferenceQueue<>();
+        private final LinkedHashMap<FileName, Entry> files;
+
+        Stripe(final int maxSize) {
+            this.files = new LinkedHashMap<FileName, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<FileName, Entry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized FileObject get(FileName name) {
+            final Entry entry = files.get(name);
+
+            if (entry == null) {
+                return null;
+            }
+
+            final FileObject file = entry.get();
+
+            if (file == null) {
+                files.remove(name);
+            }
+
+            return file;
+        }
+
+        synchronized boolean put(FileName name, FileObject file, boolean ifAbsent) {
+            expunge();
+
+            if (ifAbsent) {
+                final Entry existing = files.get(name);
+
+                if ((existing != null) && (existing.get() != null)) {
+                    return false;
+                }
+            }
+
+            files.put(name, new Entry(name, file, queue));
+
+            return true;
+        }
+
+        synchronized void remove(FileName name) {
+            files.remove(name);
+        }
+
+        /**
+         * Drop entries which were cleared by GC.
+         */
+        private void expunge() {
+            Entry entry;
+
+            while ((entry = (Entry) queue.poll()) != null) {
+                if (files.get(entry.name) == entry) {
+                    files.remove(entry.name);
+                }
+            }
+        }
+    }
+}
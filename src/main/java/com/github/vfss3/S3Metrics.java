@@ -0,0 +1,299 @@
+package com.github.vfss3;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.DeleteBucketRequest;
+import com.amazonaws.services.s3.model.DeleteObjectRequest;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListNextBatchOfObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free counters of one file system or of the whole provider. Metrics of file system have parent metrics of the
+ * provider, every update goes into both. Nothing is calculated until somebody reads them through JMX.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class S3Metrics implements S3MetricsMXBean {
+    private static final String DOMAIN = "com.github.vfss3";
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private static final Log log = LogFactory.getLog(S3Metrics.class);
+
+    private final S3Metrics parent;
+    private final Map<S3Operation, Stats> operations = new EnumMap<>(S3Operation.class);
+    private final LongAdder downloaded = new LongAdder();
+    private final LongAdder uploaded = new LongAdder();
+    private final LongAdder spoolBytes = new LongAdder();
+    private final LongAdder spoolFiles = new LongAdder();
+    private final LongAdder openInput = new LongAdder();
+    private final LongAdder openOutput = new LongAdder();
+
+    /**
+     * @param parent metrics of the provider or null
+     */
+    S3Metrics(S3Metrics parent) {
+        this.parent = parent;
+
+        for (S3Operation operation : S3Operation.values()) {
+            operations.put(operation, new Stats());
+        }
+    }
+
+    /**
+     * Kind of the request by its class, all requests without content which are not listed are ACL ones.
+     */
+    static S3Operation operation(AmazonWebServiceRequest request) {
+        if (request instanceof GetObjectMetadataRequest) {
+            return S3Operation.HEAD;
+        } else if (request instanceof GetObjectRequest) {
+            return S3Operation.GET;
+        } else if ((request instanceof ListObjectsRequest) || (request instanceof ListNextBatchOfObjectsRequest)) {
+            return S3Operation.LIST;
+        } else if (request instanceof PutObjectRequest) {
+            return S3Operation.PUT;
+        } else if (request instanceof CopyObjectRequest) {
+            return S3Operation.COPY;
+        } else if ((request instanceof DeleteObjectRequest) || (request instanceof DeleteBucketRequest)) {
+            return S3Operation.DELETE;
+        } else {
+            return S3Operation.ACL;
+        }
+    }
+
+    /**
+     * Completed request with all its retries.
+     *
+     * @param operation kind of request
+     * @param nanos time of the request
+     * @param failed true if request completed with error
+     */
+    void record(S3Operation operation, long nanos, boolean failed) {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            final Stats stats = metrics.operations.get(operation);
+
+            stats.latencies.record(nanos);
+
+            if (failed) {
+                stats.errors.increment();
+            }
+        }
+    }
+
+    void uploaded(long bytes) {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.uploaded.add(bytes);
+        }
+    }
+
+    /**
+     * Content stream of GET response which counts received bytes.
+     */
+    InputStream countDownload(InputStream content) {
+        return new FilterInputStream(content) {
+            @Override
+            public int read() throws IOException {
+                final int result = super.read();
+
+                if (result >= 0) {
+                    downloaded(1);
+                }
+
+                return result;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                final int result = super.read(buffer, offset, length);
+
+                if (result > 0) {
+                    downloaded(result);
+                }
+
+                return result;
+            }
+        };
+    }
+
+    void spoolFileCreated() {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.spoolFiles.increment();
+        }
+    }
+
+    /**
+     * @param bytes size of deleted file
+     */
+    void spoolFileDeleted(long bytes) {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.spoolFiles.decrement();
+            metrics.spoolBytes.add(-bytes);
+        }
+    }
+
+    void spooled(long bytes) {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.spoolBytes.add(bytes);
+        }
+    }
+
+    /**
+     * @param delta one for opened stream and minus one for closed
+     */
+    void inputStreams(int delta) {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.openInput.add(delta);
+        }
+    }
+
+    /**
+     * @param delta one for opened stream and minus one for closed
+     */
+    void outputStreams(int delta) {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.openOutput.add(delta);
+        }
+    }
+
+    /**
+     * Register in platform MBean server. Failure is logged, metrics keep working without JMX.
+     *
+     * @param type type of component
+     * @param name human readable name or null
+     * @return registered name or null
+     */
+    ObjectName register(String type, String name) {
+        try {
+            final ObjectName objectName = new ObjectName(
+                    DOMAIN + ":type=" + type +
+                    ((name != null) ? ",name=" + ObjectName.quote(name) : "") +
+                    ",id=" + IDS.incrementAndGet()
+            );
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(this, S3MetricsMXBean.class, true), objectName
+            );
+
+            return objectName;
+        } catch (JMException | RuntimeException e) {
+            log.warn("Not able to register metrics of [" + name + "] in JMX", e);
+
+            return null;
+        }
+    }
+
+    /**
+     * @param objectName name from {@link #register(String, String)} or null
+     */
+    static void unregister(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException | RuntimeException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not able to unregister " + objectName, e);
+            }
+        }
+    }
+
+    @Override
+    public S3OperationMetrics getHead() {
+        return snapshot(S3Operation.HEAD);
+    }
+
+    @Override
+    public S3OperationMetrics getGet() {
+        return snapshot(S3Operation.GET);
+    }
+
+    @Override
+    public S3OperationMetrics getList() {
+        return snapshot(S3Operation.LIST);
+    }
+
+    @Override
+    public S3OperationMetrics getPut() {
+        return snapshot(S3Operation.PUT);
+    }
+
+    @Override
+    public S3OperationMetrics getCopy() {
+        return snapshot(S3Operation.COPY);
+    }
+
+    @Override
+    public S3OperationMetrics getDelete() {
+        return snapshot(S3Operation.DELETE);
+    }
+
+    @Override
+    public S3OperationMetrics getAcl() {
+        return snapshot(S3Operation.ACL);
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return downloaded.sum();
+    }
+
+    @Override
+    public long getBytesUploaded() {
+        return uploaded.sum();
+    }
+
+    @Override
+    public long getSpoolBytes() {
+        return spoolBytes.sum();
+    }
+
+    @Override
+    public long getSpoolFiles() {
+        return spoolFiles.sum();
+    }
+
+    @Override
+    public long getOpenInputStreams() {
+        return openInput.sum();
+    }
+
+    @Override
+    public long getOpenOutputStreams() {
+        return openOutput.sum();
+    }
+
+    S3OperationMetrics snapshot(S3Operation operation) {
+        final Stats stats = operations.get(operation);
+
+        return new S3OperationMetrics(stats.latencies.getCount(), stats.errors.sum(), stats.latencies);
+    }
+
+    private void downloaded(long bytes) {
+        for (S3Metrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.downloaded.add(bytes);
+        }
+    }
+
+    private static class Stats {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+    }
+}
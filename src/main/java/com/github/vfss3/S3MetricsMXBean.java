@@ -0,0 +1,75 @@
+package com.github.vfss3;
+
+/**
+ * Metrics of S3 requests and content transfers. Every {@link S3FileSystem} is registered in platform MBean server as
+ * {@code com.github.vfss3:type=S3FileSystem} with endpoint and bucket in the name, totals of all file systems of one
+ * provider are registered as {@code com.github.vfss3:type=S3FileProvider}. Counters are cumulative since creation.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public interface S3MetricsMXBean {
+    /**
+     * HEAD requests of objects.
+     */
+    S3OperationMetrics getHead();
+
+    /**
+     * GET requests of object content.
+     */
+    S3OperationMetrics getGet();
+
+    /**
+     * Pages of listings.
+     */
+    S3OperationMetrics getList();
+
+    /**
+     * PUT requests and uploads, multipart upload is one operation.
+     */
+    S3OperationMetrics getPut();
+
+    /**
+     * Server side copies.
+     */
+    S3OperationMetrics getCopy();
+
+    /**
+     * Deletes of objects and buckets.
+     */
+    S3OperationMetrics getDelete();
+
+    /**
+     * Reads and changes of ACLs.
+     */
+    S3OperationMetrics getAcl();
+
+    /**
+     * Bytes of object content received from S3.
+     */
+    long getBytesDownloaded();
+
+    /**
+     * Bytes of content sent to S3.
+     */
+    long getBytesUploaded();
+
+    /**
+     * Bytes in temporary files with downloaded and written content.
+     */
+    long getSpoolBytes();
+
+    /**
+     * Number of temporary files with downloaded and written content.
+     */
+    long getSpoolFiles();
+
+    /**
+     * Number of content input streams which are not closed yet.
+     */
+    long getOpenInputStreams();
+
+    /**
+     * Number of content output streams which are not closed yet.
+     */
+    long getOpenOutputStreams();
+}
@@ -0,0 +1,44 @@
+package com.github.vfss3;
+
+/**
+ * Kinds of S3 requests for metrics and request listeners. Every kind is one request regardless of retries, upload
+ * through transfer manager is one PUT even if it is sent in parts.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public enum S3Operation {
+    /**
+     * Object metadata.
+     */
+    HEAD,
+
+    /**
+     * Object with content.
+     */
+    GET,
+
+    /**
+     * Page of listing.
+     */
+    LIST,
+
+    /**
+     * Upload of object or empty folder marker.
+     */
+    PUT,
+
+    /**
+     * Server side copy.
+     */
+    COPY,
+
+    /**
+     * Delete of object or bucket.
+     */
+    DELETE,
+
+    /**
+     * Read or change of access control list.
+     */
+    ACL
+}
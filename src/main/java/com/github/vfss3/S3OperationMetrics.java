@@ -0,0 +1,74 @@
+package com.github.vfss3;
+
+/**
+ * Snapshot of counters and latencies of one kind of S3 requests. Latencies are in milliseconds and include all
+ * retries of the request.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public final class S3OperationMetrics {
+    private final long requests;
+    private final long errors;
+    private final double meanLatency;
+    private final double medianLatency;
+    private final double p95Latency;
+    private final double p99Latency;
+    private final double maxLatency;
+
+    S3OperationMetrics(long requests, long errors, LatencyHistogram latencies) {
+        this.requests = requests;
+        this.errors = errors;
+        this.meanLatency = latencies.getMean();
+        this.medianLatency = latencies.getPercentile(50);
+        this.p95Latency = latencies.getPercentile(95);
+        this.p99Latency = latencies.getPercentile(99);
+        this.maxLatency = latencies.getMax();
+    }
+
+    /**
+     * Number of completed requests including failed ones.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Number of requests completed with error.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getMeanLatency() {
+        return meanLatency;
+    }
+
+    public double getMedianLatency() {
+        return medianLatency;
+    }
+
+    public double getP95Latency() {
+        return p95Latency;
+    }
+
+    public double getP99Latency() {
+        return p99Latency;
+    }
+
+    public double getMaxLatency() {
+        return maxLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "S3OperationMetrics{" +
+                "requests=" + requests +
+                ", errors=" + errors +
+                ", meanLatency=" + meanLatency +
+                ", medianLatency=" + medianLatency +
+                ", p95Latency=" + p95Latency +
+                ", p99Latency=" + p99Latency +
+                ", maxLatency=" + maxLatency +
+                '}';
+    }
+}
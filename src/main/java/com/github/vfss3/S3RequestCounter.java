@@ -0,0 +1,211 @@
+package com.github.vfss3;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request listener which counts requests by file operation and kind of request and estimates their cost. Failed
+ * requests are counted too, S3 charges most of them. Default prices are in dollars for thousand requests to
+ * S3 Standard in us-east-1, transfer of content is not included.
+ * <pre>
+ * S3RequestCounter counter = new S3RequestCounter();
+ *
+ * options.setRequestListeners(counter);
+ *
+ * ...
+ *
+ * counter.getRequests("copyFrom", S3Operation.LIST);
+ * counter.getEstimatedCost("copyFrom");
+ * </pre>
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3RequestCounter implements S3RequestListener {
+    private static final S3Operation[] OPERATIONS = S3Operation.values();
+    private static final String NO_OPERATION = "";
+
+    private final Map<String, LongAdder[]> counts = new ConcurrentHashMap<>();
+    private final Map<S3Operation, Double> prices = new EnumMap<>(S3Operation.class);
+
+    public S3RequestCounter() {
+        prices.put(S3Operation.HEAD, 0.0004);
+        prices.put(S3Operation.GET, 0.0004);
+        prices.put(S3Operation.LIST, 0.005);
+        prices.put(S3Operation.PUT, 0.005);
+        prices.put(S3Operation.COPY, 0.005);
+        prices.put(S3Operation.DELETE, 0.0);
+        prices.put(S3Operation.ACL, 0.005);
+    }
+
+    @Override
+    public void afterRequest(S3RequestInfo request, Object context, Exception error) {
+        counters(request.getFileOperation())[request.getOperation().ordinal()].increment();
+    }
+
+    /**
+     * Price for thousand requests of the kind.
+     */
+    public synchronized double getPrice(S3Operation operation) {
+        return prices.get(operation);
+    }
+
+    /**
+     * Price for thousand requests of the kind, should be set before requests are counted.
+     *
+     * @param operation kind of requests
+     * @param price price for thousand requests
+     */
+    public synchronized void setPrice(S3Operation operation, double price) {
+        if (price < 0) {
+            throw new IllegalArgumentException("Price should not be negative [" + price + "]");
+        }
+
+        prices.put(operation, price);
+    }
+
+    /**
+     * Number of all requests.
+     */
+    public long getRequests() {
+        long result = 0;
+
+        for (LongAdder[] adders : counts.values()) {
+            result += sum(adders, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of requests of the kind.
+     */
+    public long getRequests(S3Operation operation) {
+        long result = 0;
+
+        for (LongAdder[] adders : counts.values()) {
+            result += adders[operation.ordinal()].sum();
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of requests caused by the file operation.
+     *
+     * @param fileOperation name of file object method or null for requests of background work
+     */
+    public long getRequests(String fileOperation) {
+        return sum(counts.get(key(fileOperation)), null);
+    }
+
+    /**
+     * Number of requests of the kind caused by the file operation.
+     *
+     * @param fileOperation name of file object method or null for requests of background work
+     * @param operation kind of requests
+     */
+    public long getRequests(String fileOperation, S3Operation operation) {
+        return sum(counts.get(key(fileOperation)), operation);
+    }
+
+    /**
+     * Estimated cost of all requests.
+     */
+    public double getEstimatedCost() {
+        double result = 0;
+
+        for (LongAdder[] adders : counts.values()) {
+            result += cost(adders);
+        }
+
+        return result;
+    }
+
+    /**
+     * Estimated cost of requests caused by the file operation.
+     *
+     * @param fileOperation name of file object method or null for requests of background work
+     */
+    public double getEstimatedCost(String fileOperation) {
+        return cost(counts.get(key(fileOperation)));
+    }
+
+    /**
+     * Forget all counted requests.
+     */
+    public void reset() {
+        counts.clear();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder("S3RequestCounter{");
+
+        counts.forEach((fileOperation, adders) -> {
+            result.append(fileOperation.isEmpty() ? "background" : fileOperation).append("=[");
+
+            for (S3Operation operation : OPERATIONS) {
+                final long count = adders[operation.ordinal()].sum();
+
+                if (count > 0) {
+                    result.append(operation).append('=').append(count).append(',');
+                }
+            }
+
+            result.setLength(result.length() - 1);
+            result.append("],");
+        });
+
+        if (!counts.isEmpty()) {
+            result.setLength(result.length() - 1);
+        }
+
+        return result.append('}').toString();
+    }
+
+    private LongAdder[] counters(String fileOperation) {
+        return counts.computeIfAbsent(key(fileOperation), ignored -> {
+            final LongAdder[] adders = new LongAdder[OPERATIONS.length];
+
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+
+            return adders;
+        });
+    }
+
+    private synchronized double cost(LongAdder[] adders) {
+        double result = 0;
+
+        if (adders != null) {
+            for (S3Operation operation : OPERATIONS) {
+                result += adders[operation.ordinal()].sum() * prices.get(operation) / 1000;
+            }
+        }
+
+        return result;
+    }
+
+    private static long sum(LongAdder[] adders, S3Operation operation) {
+        if (adders == null) {
+            return 0;
+        } else if (operation != null) {
+            return adders[operation.ordinal()].sum();
+        }
+
+        long result = 0;
+
+        for (LongAdder adder : adders) {
+            result += adder.sum();
+        }
+
+        return result;
+    }
+
+    private static String key(String fileOperation) {
+        return (fileOperation != null) ? fileOperation : NO_OPERATION;
+    }
+}
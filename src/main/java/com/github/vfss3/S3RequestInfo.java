@@ -0,0 +1,101 @@
+package com.github.vfss3;
+
+import com.amazonaws.AmazonWebServiceRequest;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * One S3 request for {@link S3RequestListener}. The same instance is passed to all listeners before and after the
+ * request.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public final class S3RequestInfo {
+    private final String bucket;
+    private final String key;
+    private final S3Operation operation;
+    private final String fileOperation;
+    private final TrafficClass trafficClass;
+    private final AmazonWebServiceRequest request;
+
+    final Object[] contexts;
+
+    long elapsed;
+    long bytes;
+
+    S3RequestInfo(
+            String bucket, String key, S3Operation operation, String fileOperation, TrafficClass trafficClass,
+            AmazonWebServiceRequest request, int listeners
+    ) {
+        this.bucket = bucket;
+        this.key = key;
+        this.operation = operation;
+        this.fileOperation = fileOperation;
+        this.trafficClass = trafficClass;
+        this.request = request;
+        this.contexts = new Object[listeners];
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Object key or listing prefix, null for requests to the bucket.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public S3Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Name of the outermost file object method which caused the request like {@code getChildren}, {@code copyFrom}
+     * or {@code delete}, uploads of written content are {@code getOutputStream}. Null for requests of background
+     * work like existence index rebuild.
+     */
+    public String getFileOperation() {
+        return fileOperation;
+    }
+
+    /**
+     * Priority class of the request.
+     */
+    public TrafficClass getTrafficClass() {
+        return trafficClass;
+    }
+
+    /**
+     * Request of AWS SDK, custom headers could be added to it before the request.
+     */
+    public AmazonWebServiceRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * Time of the request with all its retries in milliseconds, known only after the request.
+     */
+    public double getElapsedMillis() {
+        return (double) elapsed / MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Size of uploaded content or content of GET response, known only after the request.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "S3RequestInfo{" +
+                "bucket='" + bucket + '\'' +
+                ", key='" + key + '\'' +
+                ", operation=" + operation +
+                ", fileOperation='" + fileOperation + '\'' +
+                ", trafficClass=" + trafficClass +
+                '}';
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.vfss3;
+
+/**
+ * Callbacks around every S3 request of a file system, for tracing and accounting of requests. Listeners are
+ * registered for one file system with {@link S3FileSystemOptions#setRequestListeners(S3RequestListener...)}, for
+ * all file systems with {@link S3FileProvider#addRequestListener(S3RequestListener)} or through
+ * {@link java.util.ServiceLoader} with {@code META-INF/services/com.github.vfss3.S3RequestListener} file.
+ * <p>
+ * Callbacks are executed by the thread which sends the request, so they should be fast and thread safe. Trace
+ * context could be passed to S3 as custom header of {@link S3RequestInfo#getRequest()} in
+ * {@link #beforeRequest(S3RequestInfo)}. Exceptions thrown by listeners are logged and don't break requests.
+ * <pre>
+ * public class TracingListener implements S3RequestListener {
+ *     public Object beforeRequest(S3RequestInfo request) {
+ *         Span span = tracer.spanBuilder(request.getOperation() + " " + request.getKey()).startSpan();
+ *
+ *         request.getRequest().putCustomRequestHeader("traceparent", traceParent(span));
+ *
+ *         return span;
+ *     }
+ *
+ *     public void afterRequest(S3RequestInfo request, Object context, Exception error) {
+ *         ((Span) context).end();
+ *     }
+ * }
+ * </pre>
+ * There is no overhead for requests of file systems without listeners.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public interface S3RequestListener {
+    /**
+     * Called right before the request is sent, after it waited for rate limit and connection.
+     *
+     * @param request the request
+     * @return context of this listener for {@link #afterRequest(S3RequestInfo, Object, Exception)} or null
+     */
+    default Object beforeRequest(S3RequestInfo request) {
+        return null;
+    }
+
+    /**
+     * Called after response with all retries of the request. Content of GET response could be still not read.
+     *
+     * @param request the request
+     * @param context result of {@link #beforeRequest(S3RequestInfo)} of this listener
+     * @param error failure of the request or null if it was successful
+     */
+    default void afterRequest(S3RequestInfo request, Object context, Exception error) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesce concurrent identical calls - first caller does the call, all others which come while it is in flight
+ * wait for it and get the same result or the same exception. Results are shared so they should not be modified.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class SingleFlight<K> {
+    private final ConcurrentMap<K, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Execute call or join the same one in flight.
+     *
+     * @param key identity of the call
+     * @param call
+     * @return result of the call
+     */
+    @SuppressWarnings("unchecked")
+    <V> V execute(K key, Supplier<V> call) {
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        final CompletableFuture<Object> existing = calls.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            coalesced.increment();
+
+            return (V) join(existing);
+        }
+
+        try {
+            final V result = call.get();
+
+            mine.complete(result);
+
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+
+            throw e;
+        } finally {
+            calls.remove(key, mine);
+        }
+    }
+
+    /**
+     * Number of calls which were served by other in flight calls.
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private static Object join(CompletableFuture<Object> call) {
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new AbortedException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.vfss3;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of reentrant locks shared by keys with the same hash bits. Keys never allocate own locks, so it works
+ * for any number of keys with constant memory, and different keys contend only on collision of stripes.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class StripedLock {
+    private final Lock[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripes number of locks, rounded up to power of two
+     */
+    StripedLock(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of stripes should be positive [" + stripes + "]");
+        }
+
+        final int size = (stripes == 1) ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+
+        this.stripes = new Lock[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    Lock get(Object key) {
+        final int hash = key.hashCode();
+
+        // Spread higher bits like HashMap does, names often differ only in the tail
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    int size() {
+        return stripes.length;
+    }
+}
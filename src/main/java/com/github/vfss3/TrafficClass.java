@@ -0,0 +1,77 @@
+package com.github.vfss3;
+
+/**
+ * Classes of work for the shared execution layer of {@link S3FileProvider}. Every class has own threads and own
+ * bounded queue so background work never delays requests somebody is waiting for.
+ * <p>
+ * The same classes are priorities of requests and content transfers. By default it is class of the file system
+ * from {@link S3FileSystemOptions#setTransferClass(TrafficClass)}, it could be changed for requests of the current
+ * thread with {@link #enter()}:
+ * <pre>
+ * try (TrafficClass.Scope ignored = TrafficClass.BACKGROUND.enter()) {
+ *     target.copyFrom(source, Selectors.SELECT_ALL);
+ * }
+ * </pre>
+ * Tasks of background and maintenance classes always send background requests.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public enum TrafficClass {
+    /**
+     * Requests with caller waiting for result - probes, listings, copies and deletes. When queue is full the task
+     * is executed by the caller thread.
+     */
+    FOREGROUND,
+
+    /**
+     * Optional work like prefetch and metadata revalidation. When queue is full the task is rejected.
+     */
+    BACKGROUND,
+
+    /**
+     * Periodic tasks like rebuild of existence index.
+     */
+    MAINTENANCE;
+
+    private static final ThreadLocal<TrafficClass> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Send requests of the current thread with this class until returned scope is closed.
+     *
+     * @return scope which restores previous class on close
+     */
+    public Scope enter() {
+        final Scope scope = new Scope(CURRENT.get());
+
+        CURRENT.set(this);
+
+        return scope;
+    }
+
+    /**
+     * Class of the current thread or null if it is not set.
+     */
+    static TrafficClass current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Class of requests from the current thread.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final TrafficClass previous;
+
+        private Scope(TrafficClass previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.vfss3;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads. This version is for JDK 8 - 20 where they don't exist, version for JDK 21 and newer is
+ * packed into META-INF/versions/21 of multi-release jar.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Executor which starts new virtual thread for every task.
+     *
+     * @param prefix prefix for names of threads
+     */
+    static ExecutorService newExecutor(String prefix) {
+        throw new UnsupportedOperationException("Virtual threads require JDK 21 or newer");
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.vfss3;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events of S3 operations, version for JDK 11 and newer. Events are disabled by default and
+ * should be enabled in recording settings, for example in own copy of default.jfc:
+ * <pre>
+ * &lt;event name="vfs.s3.Request"&gt;
+ *   &lt;setting name="enabled"&gt;true&lt;/setting&gt;
+ *   &lt;setting name="threshold"&gt;10 ms&lt;/setting&gt;
+ * &lt;/event&gt;
+ * </pre>
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+final class S3Events {
+    private S3Events() {
+    }
+
+    /**
+     * Fields of all events.
+     */
+    @Category({"VFS", "S3"})
+    @StackTrace(false)
+    abstract static class S3Event extends Event {
+        @Label("Bucket")
+        String bucket;
+
+        @Label("Key")
+        String key;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Status")
+        @Description("HTTP status of the last response or zero if there was no response")
+        int status;
+
+        @Label("Retries")
+        int retries;
+
+        void finish(String bucket, String key, String operation, long bytes, int status, int retries) {
+            if (shouldCommit()) {
+                this.bucket = bucket;
+                this.key = key;
+                this.operation = operation;
+                this.bytes = bytes;
+                this.status = status;
+                this.retries = retries;
+
+                commit();
+            }
+        }
+    }
+
+    @Name("vfs.s3.Request")
+    @Label("S3 Request")
+    @Description("One S3 request with all its retries")
+    @Enabled(false)
+    static final class Request extends S3Event {
+    }
+
+    @Name("vfs.s3.Attach")
+    @Label("S3 Attach")
+    @Description("Attach of file object with all its probes")
+    @Enabled(false)
+    static final class Attach extends S3Event {
+    }
+
+    @Name("vfs.s3.Spool")
+    @Label("S3 Spool")
+    @Description("Download or write of content into temporary file")
+    @Enabled(false)
+    static final class Spool extends S3Event {
+    }
+
+    @Name("vfs.s3.Upload")
+    @Label("S3 Upload")
+    @Description("Upload of written content")
+    @Enabled(false)
+    static final class Upload extends S3Event {
+    }
+}
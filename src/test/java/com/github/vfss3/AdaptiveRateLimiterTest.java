@@ -0,0 +1,167 @@
+package com.github.vfss3;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.vfss3.RequestType.GET;
+import static com.github.vfss3.RequestType.PUT;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.apache.commons.vfs2.FileType.FILE;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class AdaptiveRateLimiterTest {
+    @Test
+    public void checkPrefix() {
+        assertEquals(AdaptiveRateLimiter.prefix("logs/2024/file"), "logs/");
+        assertEquals(AdaptiveRateLimiter.prefix("logs/"), "logs/");
+        assertEquals(AdaptiveRateLimiter.prefix("file"), "");
+        assertEquals(AdaptiveRateLimiter.prefix(null), "");
+    }
+
+    @Test
+    public void checkThrottlingHalvesRateOfPrefix() {
+        final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test");
+
+        assertTrue(limiter.getRates(GET).isEmpty());
+
+        throttle(limiter, "hot/file");
+
+        assertEquals(limiter.getRate(GET, "hot/other"), GET.getMaxRate() / 2.0);
+        assertEquals(limiter.getRate(GET, "cold/file"), (double) GET.getMaxRate(), "Other prefix is not limited");
+        assertEquals(limiter.getRate(PUT, "hot/file"), (double) PUT.getMaxRate(), "Other type is not limited");
+        assertEquals(limiter.getRates(GET).keySet().iterator().next(), "hot/");
+
+        // Burst of concurrent throttled responses is one congestion signal
+        throttle(limiter, "hot/file");
+
+        assertEquals(limiter.getRate(GET, "hot/file"), GET.getMaxRate() / 2.0);
+        assertEquals(limiter.getThrottledRequests(), 2);
+    }
+
+    @Test
+    public void checkRateIsRecovered() {
+        final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test", 0.01);
+
+        throttle(limiter, "hot/file");
+
+        double previous = limiter.getRate(GET, "hot/file");
+
+        for (int i = 0; (i < 1000) && !limiter.getRates(GET).isEmpty(); i++) {
+            limiter.execute(GET, "hot/file", null, () -> null);
+
+            final double rate = limiter.getRate(GET, "hot/file");
+
+            assertTrue(rate >= previous, "Rate grows after success");
+
+            previous = rate;
+        }
+
+        assertTrue(limiter.getRates(GET).isEmpty(), "Recovered budget is dropped");
+        assertEquals(limiter.getRate(GET, "hot/file"), (double) GET.getMaxRate());
+    }
+
+    @Test
+    public void checkRequestsArePaced() throws InterruptedException {
+        final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter("test");
+
+        throttle(limiter, "hot/file");
+        Thread.sleep(250);
+        throttle(limiter, "hot/file");
+
+        final double rate = limiter.getRate(GET, "hot/file");
+        final int requests = 100;
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < requests; i++) {
+            limiter.execute(GET, "hot/file", null, () -> null);
+        }
+
+        final long elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsed >= (long) ((requests - 1) * 1000 / rate) - 1, "Requests took only " + elapsed + "ms");
+    }
+
+    @Test
+    public void checkFileSystemReactsToSlowDown() throws Exception {
+        final SlowDownService service = new SlowDownService();
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/throttled/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                new S3FileSystemOptions(),
+                TransferManagerBuilder.standard().withS3Client(service).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        // Throttled HEAD of the file, other probes succeed
+        fileSystem.resolveFile("/hot/first").getType();
+
+        assertEquals(fileSystem.getThrottledRequests(), 1);
+        final double rate = fileSystem.getRequestRate(GET, "hot/second");
+
+        assertTrue(rate < GET.getMaxRate() * 0.51, "Rate of the prefix is decreased to " + rate);
+        assertEquals(fileSystem.getRequestRate(GET, "cold/file"), (double) GET.getMaxRate());
+        assertEquals(fileSystem.getRequestRates(GET).keySet().iterator().next(), "hot/");
+
+        assertEquals(fileSystem.resolveFile("/hot/second").getType(), FILE);
+        assertTrue(fileSystem.getRequestRate(GET, "hot/second") > rate, "Rate grows after success");
+    }
+
+    private static void throttle(AdaptiveRateLimiter limiter, String key) {
+        try {
+            limiter.execute(GET, key, null, () -> {
+                throw slowDown();
+            });
+
+            fail("Exception is rethrown");
+        } catch (AmazonServiceException e) {
+            assertEquals(e.getStatusCode(), 503);
+        }
+    }
+
+    private static AmazonS3Exception slowDown() {
+        final AmazonS3Exception e = new AmazonS3Exception("Please reduce your request rate");
+
+        e.setStatusCode(503);
+        e.setErrorCode("SlowDown");
+
+        return e;
+    }
+
+    /**
+     * The first HEAD request is throttled, all others succeed.
+     */
+    private static class SlowDownService extends AbstractAmazonS3 {
+        private final AtomicInteger heads = new AtomicInteger();
+
+        @Override
+        public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+            if (heads.getAndIncrement() == 0) {
+                throw slowDown();
+            }
+
+            final ObjectMetadata metadata = new ObjectMetadata();
+
+            metadata.setContentLength(10);
+            metadata.setHeader("ETag", "d41d8cd98f00b204e9800998ecf8427e");
+
+            return metadata;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.vfss3;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import static com.github.vfss3.TrafficClass.BACKGROUND;
+import static com.github.vfss3.TrafficClass.FOREGROUND;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class BandwidthLimiterTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void checkUnlimited() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter(0, new BandwidthLimiter(0, null));
+        final InputStream input = new ByteArrayInputStream(new byte[10]);
+
+        assertFalse(limiter.isLimited());
+        assertSame(new BandwidthLimiter(0, null).wrap(input, FOREGROUND), input);
+        assertTrue(elapsed(() -> limiter.acquire(Long.MAX_VALUE / 2, FOREGROUND)) < 100);
+    }
+
+    @Test
+    public void checkLimitOfRunningDownload() throws Exception {
+        final BandwidthLimiter parent = new BandwidthLimiter(0, null);
+        final BandwidthLimiter limiter = new BandwidthLimiter(0, parent);
+        final byte[] buffer = new byte[64 * 1024];
+
+        final InputStream input = limiter.wrap(new ByteArrayInputStream(new byte[2 * MB]), FOREGROUND);
+
+        // Stream was opened without limits
+        parent.setRate(MB);
+
+        assertTrue(elapsed(() -> {
+            while (input.read(buffer) >= 0) {
+                // Read all
+            }
+        }) >= 800);
+    }
+
+    @Test
+    public void checkBurstAndRate() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter(MB, null);
+
+        assertTrue(elapsed(() -> limiter.acquire(MB, FOREGROUND)) < 200, "One second of traffic is not delayed");
+        assertTrue(elapsed(() -> limiter.acquire(MB / 2, FOREGROUND)) >= 400);
+    }
+
+    @Test
+    public void checkParentLimit() throws Exception {
+        final BandwidthLimiter parent = new BandwidthLimiter(MB, null);
+        final BandwidthLimiter limiter = new BandwidthLimiter(0, parent);
+        final byte[] buffer = new byte[64 * 1024];
+
+        assertTrue(limiter.isLimited());
+
+        final InputStream input = limiter.wrap(new ByteArrayInputStream(new byte[2 * MB]), FOREGROUND);
+
+        assertTrue(elapsed(() -> {
+            while (input.read(buffer) >= 0) {
+                // Read all
+            }
+        }) >= 800);
+    }
+
+    @Test
+    public void checkBackgroundYieldsToForeground() throws Exception {
+        final BandwidthLimiter shared = new BandwidthLimiter(MB, null);
+
+        shared.acquire(MB, FOREGROUND);
+
+        assertTrue(elapsed(() -> shared.acquire(MB / 4, BACKGROUND)) >= 800, "Background pays more");
+
+        final BandwidthLimiter alone = new BandwidthLimiter(MB, null);
+
+        alone.acquire(MB, BACKGROUND);
+
+        assertTrue(elapsed(() -> alone.acquire(MB / 4, BACKGROUND)) < 700, "Background takes free bandwidth");
+    }
+
+    @Test
+    public void checkInterrupt() throws Exception {
+        final BandwidthLimiter limiter = new BandwidthLimiter(1, null);
+
+        Thread.currentThread().interrupt();
+
+        try {
+            limiter.acquire(MB, FOREGROUND);
+
+            fail("Waiting should be interrupted");
+        } catch (InterruptedIOException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    private static long elapsed(Action action) throws Exception {
+        final long start = System.nanoTime();
+
+        action.run();
+
+        return NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+}
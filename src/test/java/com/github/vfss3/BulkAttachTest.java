@@ -0,0 +1,137 @@
+package com.github.vfss3;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.vfs2.FileType.FILE;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class BulkAttachTest {
+    private static final String BUCKET = "bulk-attach";
+
+    private static final String[] PATHS = {
+            "/dir/file-1", "/dir/file-2", "/dir/file-3", "/dir/file-4", "/dir/missing", "/dir/sub", "/other/file"
+    };
+
+    private LocalS3 s3;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        s3 = new LocalS3();
+
+        s3.putObject(BUCKET, "dir/file-1", "1".getBytes(UTF_8));
+        s3.putObject(BUCKET, "dir/file-2", "22".getBytes(UTF_8));
+        s3.putObject(BUCKET, "dir/file-3", "333".getBytes(UTF_8));
+        s3.putObject(BUCKET, "dir/file-4", "4444".getBytes(UTF_8));
+        s3.putObject(BUCKET, "dir/sub/file", "data".getBytes(UTF_8));
+        s3.putObject(BUCKET, "other/file", "other".getBytes(UTF_8));
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        s3.close();
+    }
+
+    @Test
+    public void checkListingInsteadOfProbes() throws Exception {
+        final S3FileSystem fileSystem = fileSystem();
+
+        try {
+            final List<FileName> names = new ArrayList<>();
+
+            for (String path : PATHS) {
+                names.add(fileSystem.resolveFile(path).getName());
+            }
+
+            s3.resetRequestCounts();
+
+            final FileObject[] files = fileSystem.resolveFiles(names);
+
+            assertEquals(files.length, PATHS.length);
+
+            // One listing of /dir for six names and one probe for the single name in /other
+            assertEquals(s3.getRequestCount(S3Operation.LIST), 1);
+            assertEquals(s3.getRequestCount(S3Operation.HEAD), 1);
+            assertEquals(s3.getRequestCount(), 2);
+
+            for (int i = 0; i < PATHS.length; i++) {
+                assertEquals(files[i].getName(), names.get(i));
+                assertTrue(((S3FileObject) FileObjectUtils.unwrap(files[i])).isAttached(), PATHS[i]);
+            }
+
+            s3.resetRequestCounts();
+
+            for (FileObject file : files) {
+                if (file.getType() == FILE) {
+                    file.getContent().getSize();
+                }
+            }
+
+            assertEquals(s3.getRequestCount(), 0, "Attached files don't need requests");
+        } finally {
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void checkSameAsResolveFile() throws Exception {
+        final S3FileSystem bulk = fileSystem();
+        final S3FileSystem single = fileSystem();
+
+        try {
+            final List<FileName> names = new ArrayList<>();
+
+            for (String path : PATHS) {
+                names.add(bulk.resolveFile(path).getName());
+            }
+
+            final FileObject[] files = bulk.resolveFiles(names);
+
+            for (int i = 0; i < PATHS.length; i++) {
+                final FileObject expected = single.resolveFile(PATHS[i]);
+
+                assertEquals(files[i].getType(), expected.getType(), PATHS[i]);
+                assertEquals(files[i].exists(), expected.exists(), PATHS[i]);
+
+                if (expected.getType() == FILE) {
+                    assertEquals(files[i].getContent().getSize(), expected.getContent().getSize(), PATHS[i]);
+                }
+            }
+        } finally {
+            bulk.close();
+            single.close();
+        }
+    }
+
+    private S3FileSystem fileSystem() throws FileSystemException {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+        final FileObject base = VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/" + BUCKET + "/", options.toFileSystemOptions()
+        );
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getFileSystem().getRootName(),
+                options,
+                TransferManagerBuilder.standard().withS3Client(s3.client(new ClientConfiguration())).build()
+        );
+
+        fileSystem.setContext(((S3FileSystem) base.getFileSystem()).getContext());
+        fileSystem.init();
+
+        return fileSystem;
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.vfss3.CircuitBreaker.State.CLOSED;
+import static com.github.vfss3.CircuitBreaker.State.HALF_OPEN;
+import static com.github.vfss3.CircuitBreaker.State.OPEN;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class CircuitBreakerTest {
+    private static final AmazonClientException CONNECTION_ERROR = new AmazonClientException("Connection refused");
+
+    @Test
+    public void checkCircuitOpensOnFailures() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 0.5, 10_000, 0);
+
+        for (int i = 0; i < 19; i++) {
+            breaker.record(1, true, CONNECTION_ERROR);
+        }
+
+        assertEquals(breaker.getState(), CLOSED, "Not enough requests for decision");
+
+        breaker.record(1, true, CONNECTION_ERROR);
+
+        assertEquals(breaker.getState(), OPEN);
+
+        try {
+            breaker.acquire();
+
+            fail("Open circuit rejects requests");
+        } catch (S3CircuitOpenException e) {
+            assertEquals(e.getCircuit(), "test");
+            assertTrue(e.getRetryAfter() > 0);
+        }
+    }
+
+    @Test
+    public void checkResponsesAreNotFailures() throws S3CircuitOpenException {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 0.5, 10_000, 0);
+
+        for (int i = 0; i < 100; i++) {
+            breaker.record(1, true, error(404, null));
+            breaker.record(1, true, error(503, "SlowDown"));
+            breaker.record(1, true, new AbortedException());
+        }
+
+        assertEquals(breaker.getState(), CLOSED);
+
+        breaker.acquire();
+
+        final CircuitBreaker failing = new CircuitBreaker("test", 0.5, 10_000, 0);
+
+        for (int i = 0; i < 20; i++) {
+            failing.record(1, true, error(500, "InternalError"));
+        }
+
+        assertEquals(failing.getState(), OPEN, "Server errors are failures");
+    }
+
+    @Test
+    public void checkSlowRequestsAreFailures() {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 0.5, 10_000, 100);
+
+        for (int i = 0; i < 20; i++) {
+            breaker.record(SECONDS.toNanos(1), false, null);
+        }
+
+        assertEquals(breaker.getState(), CLOSED, "Transfer time depends on size");
+
+        for (int i = 0; i < 20; i++) {
+            breaker.record(SECONDS.toNanos(1), true, null);
+        }
+
+        assertEquals(breaker.getState(), OPEN);
+    }
+
+    @Test
+    public void checkProbeClosesCircuit() throws Exception {
+        final CircuitBreaker breaker = openBreaker(50);
+
+        Thread.sleep(100);
+
+        breaker.acquire();
+
+        assertEquals(breaker.getState(), HALF_OPEN);
+
+        try {
+            breaker.acquire();
+
+            fail("Only one probe is allowed");
+        } catch (S3CircuitOpenException e) {
+            // Expected
+        }
+
+        breaker.record(1, true, null);
+
+        assertEquals(breaker.getState(), CLOSED);
+
+        breaker.acquire();
+    }
+
+    @Test
+    public void checkFailedProbeOpensCircuit() throws Exception {
+        final CircuitBreaker breaker = openBreaker(50);
+
+        Thread.sleep(100);
+
+        breaker.acquire();
+        breaker.record(1, true, CONNECTION_ERROR);
+
+        assertEquals(breaker.getState(), OPEN);
+    }
+
+    @Test
+    public void checkFileSystemFailsFast() throws Exception {
+        final AtomicInteger heads = new AtomicInteger();
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/broken/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                new S3FileSystemOptions(),
+                TransferManagerBuilder.standard().withS3Client(new AbstractAmazonS3() {
+                    @Override
+                    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+                        heads.incrementAndGet();
+
+                        throw new AmazonClientException("Connection refused");
+                    }
+                }).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        for (int i = 0; !fileSystem.isCircuitOpen(); i++) {
+            assertTrue(i < 20, "Circuit should be open after 20 failures");
+
+            try {
+                fileSystem.resolveFile("/file-" + i).getType();
+
+                fail("Request should fail");
+            } catch (FileSystemException e) {
+                assertTrue(hasCause(e, AmazonClientException.class), "Unexpected error " + e);
+            }
+        }
+
+        final int sent = heads.get();
+
+        try {
+            fileSystem.resolveFile("/file").getType();
+
+            fail("Request should fail");
+        } catch (FileSystemException e) {
+            assertTrue(hasCause(e, S3CircuitOpenException.class), "Unexpected error " + e);
+        }
+
+        assertEquals(heads.get(), sent, "Request is not sent");
+    }
+
+    private static CircuitBreaker openBreaker(long openInterval) {
+        final CircuitBreaker breaker = new CircuitBreaker("test", 0.5, openInterval, 0);
+
+        for (int i = 0; i < 20; i++) {
+            breaker.record(1, true, CONNECTION_ERROR);
+        }
+
+        assertEquals(breaker.getState(), OPEN);
+
+        return breaker;
+    }
+
+    private static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static AmazonS3Exception error(int status, String code) {
+        final AmazonS3Exception e = new AmazonS3Exception("Error " + status);
+
+        e.setStatusCode(status);
+        e.setErrorCode(code);
+
+        return e;
+    }
+}
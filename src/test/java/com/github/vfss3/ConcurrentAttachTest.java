@@ -0,0 +1,230 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.vfs2.FileType.FILE;
+import static org.apache.commons.vfs2.FileType.IMAGINARY;
+import static org.testng.Assert.*;
+
+/**
+ * Stress test for attach, detach and refresh of shared file objects without real S3.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class ConcurrentAttachTest {
+    private static final int THREADS = 10;
+    private static final int SHARED_FILES = 4;
+
+    private final HeadService service = new HeadService();
+    private final List<S3FileObject> shared = new ArrayList<>();
+
+    private S3FileSystem fileSystem;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/attach/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                new S3FileSystemOptions(),
+                TransferManagerBuilder.standard().withS3Client(service).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        for (int i = 0; i < SHARED_FILES; i++) {
+            shared.add((S3FileObject) fileSystem.resolveFile("/shared/file-" + i));
+        }
+    }
+
+    @Test
+    public void attachSameFileOnce() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            for (int round = 0; round < 50; round++) {
+                final String key = "round/file-" + round;
+                final S3FileObject file = (S3FileObject) fileSystem.resolveFile("/" + key);
+                final CyclicBarrier start = new CyclicBarrier(THREADS);
+                final List<Future<?>> results = new ArrayList<>();
+
+                for (int i = 0; i < THREADS; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+
+                        assertEquals(file.getType(), FILE);
+
+                        return null;
+                    }));
+                }
+
+                for (Future<?> result : results) {
+                    result.get(30, SECONDS);
+                }
+
+                assertEquals(service.heads(key), 1, "One probe for concurrent attach of [" + key + "]");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void probeWithoutAttachLock() throws Exception {
+        final S3FileObject file = (S3FileObject) fileSystem.resolveFile("/slow/file");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            final Future<?> attach = executor.submit(() -> file.getType());
+
+            assertTrue(service.slowStarted.await(30, SECONDS));
+
+            // Stripe is free while HEAD is in flight
+            final Future<Boolean> locked = executor.submit(() -> {
+                if (file.getAttachLock().tryLock()) {
+                    file.getAttachLock().unlock();
+
+                    return true;
+                }
+
+                return false;
+            });
+
+            assertTrue(locked.get(30, SECONDS));
+
+            // Detach while probing makes the probe stale, so it is repeated
+            file.refresh();
+
+            service.slowRelease.countDown();
+
+            attach.get(30, SECONDS);
+
+            assertEquals(file.getType(), FILE);
+            assertEquals(service.heads("slow/file"), 2);
+        } finally {
+            service.slowRelease.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(invocationCount = 2000, threadPoolSize = THREADS)
+    public void attachDetachRefresh() throws FileSystemException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final S3FileObject file = shared.get(random.nextInt(SHARED_FILES));
+
+        switch (random.nextInt(5)) {
+            case 0:
+                file.refresh();
+                break;
+            case 1:
+                file.forceRefresh();
+                break;
+            case 2:
+                file.attachFromListing(FILE, new ObjectMetadataHolder(HeadService.metadata()), file.getParent());
+                break;
+            case 3:
+                file.revalidate();
+                break;
+            default:
+                assertNotNull(file.getParent());
+        }
+
+        assertEquals(file.getType(), FILE);
+        assertTrue(file.exists());
+    }
+
+    @Test(invocationCount = 500, threadPoolSize = THREADS)
+    public void missingFile() throws FileSystemException {
+        final S3FileObject file = (S3FileObject) fileSystem.resolveFile("/missing");
+
+        if (ThreadLocalRandom.current().nextBoolean()) {
+            file.refresh();
+        }
+
+        assertEquals(file.getType(), IMAGINARY);
+    }
+
+    /**
+     * Every key except "missing" exists, HEAD takes some time so concurrent calls really overlap.
+     */
+    private static class HeadService extends AbstractAmazonS3 {
+        private final Map<String, AtomicInteger> heads = new ConcurrentHashMap<>();
+        private final CountDownLatch slowStarted = new CountDownLatch(1);
+        private final CountDownLatch slowRelease = new CountDownLatch(1);
+
+        @Override
+        public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+            final String key = request.getKey();
+
+            heads.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+
+            try {
+                if (key.startsWith("slow")) {
+                    slowStarted.countDown();
+                    slowRelease.await();
+                }
+
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (key.startsWith("missing")) {
+                AmazonS3Exception e = new AmazonS3Exception("Not found");
+
+                e.setStatusCode(404);
+
+                throw e;
+            }
+
+            return metadata();
+        }
+
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request) {
+            return new ObjectListing();
+        }
+
+        int heads(String key) {
+            final AtomicInteger counter = heads.get(key);
+
+            return (counter != null) ? counter.get() : 0;
+        }
+
+        static ObjectMetadata metadata() {
+            ObjectMetadata metadata = new ObjectMetadata();
+
+            metadata.setContentLength(10);
+            metadata.setHeader("ETag", "d41d8cd98f00b204e9800998ecf8427e");
+
+            return metadata;
+        }
+    }
+}
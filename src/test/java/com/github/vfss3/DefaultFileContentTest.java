@@ -0,0 +1,154 @@
+package com.github.vfss3;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.vfs2.FileSystemException;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class DefaultFileContentTest {
+    private static final byte[] CONTENT = "content".getBytes(UTF_8);
+
+    @Test
+    public void checkStreamClosedByAnotherThread() throws Exception {
+        final MemoryFileObject file = new MemoryFileObject(CONTENT);
+        final DefaultFileContent content = new DefaultFileContent(file, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            final InputStream in = executor.submit(() -> content.getInputStream()).get(30, SECONDS);
+
+            assertFalse(content.isOpen(), "Stream of another thread isn't open for this thread");
+            assertTrue(content.isOpenGlobal(), "Stream of another thread is visible");
+
+            executor.submit(() -> {
+                in.close();
+
+                return null;
+            }).get(30, SECONDS);
+
+            assertFalse(content.isOpen());
+            assertFalse(content.isOpenGlobal());
+            assertEquals(file.getAllStreamsClosed(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkCloseClosesOwnStreams() throws Exception {
+        final MemoryFileObject file = new MemoryFileObject(CONTENT);
+        final DefaultFileContent content = new DefaultFileContent(file, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<InputStream> others = new ArrayList<>();
+
+        try {
+            final List<Future<InputStream>> streams = new ArrayList<>();
+
+            for (int i = 0; i < 4; i++) {
+                streams.add(executor.submit(() -> content.getInputStream()));
+            }
+
+            for (Future<InputStream> stream : streams) {
+                others.add(stream.get(30, SECONDS));
+            }
+
+            final InputStream in = content.getInputStream();
+            final OutputStream out = content.getOutputStream();
+
+            assertTrue(content.isOpen());
+
+            content.close();
+
+            assertFalse(content.isOpen(), "Own streams are closed");
+            assertTrue(content.isOpenGlobal(), "Streams of other threads are kept");
+            assertEquals(file.getAllStreamsClosed(), 0);
+
+            // Stream of another thread is still readable
+            assertEquals(IOUtils.toByteArray(others.get(0)), CONTENT);
+
+            for (InputStream other : others) {
+                other.close();
+            }
+
+            assertFalse(content.isOpenGlobal());
+            assertEquals(file.getAllStreamsClosed(), 1);
+
+            // Repeated close of closed stream doesn't break counters
+            out.close();
+            in.close();
+
+            try (InputStream again = content.getInputStream()) {
+                assertEquals(IOUtils.toByteArray(again), CONTENT);
+                assertTrue(content.isOpen());
+            }
+
+            assertFalse(content.isOpen());
+            assertEquals(file.getAllStreamsClosed(), 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkSingleOutputStreamPerThread() throws Exception {
+        final DefaultFileContent content = new DefaultFileContent(new MemoryFileObject(CONTENT), null);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (OutputStream out = content.getOutputStream()) {
+            assertThrows(FileSystemException.class, content::getOutputStream);
+
+            executor.submit(() -> {
+                content.getOutputStream().close();
+
+                return null;
+            }).get(30, SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertFalse(content.isOpen());
+    }
+
+    @Test
+    public void checkConcurrentOpenClose() throws Exception {
+        final MemoryFileObject file = new MemoryFileObject(CONTENT);
+        final DefaultFileContent content = new DefaultFileContent(file, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> results = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 10_000; j++) {
+                        content.getInputStream().close();
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results) {
+                result.get(60, SECONDS);
+            }
+
+            assertFalse(content.isOpen());
+            assertTrue(file.getAllStreamsClosed() > 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class ExistenceIndexTest {
+    @Test
+    public void checkFalsePositiveRate() {
+        final int keys = 100_000;
+        final BloomFilter filter = new BloomFilter(keys, 0.01);
+
+        for (int i = 0; i < keys; i++) {
+            filter.put("folder/key-" + i);
+        }
+
+        for (int i = 0; i < keys; i++) {
+            assertTrue(filter.mightContain("folder/key-" + i), "No false negatives");
+        }
+
+        int falsePositives = 0;
+
+        for (int i = keys; i < keys * 2; i++) {
+            if (filter.mightContain("folder/key-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < keys * 0.02, "False positive rate too high - " + falsePositives);
+
+        // About 1.2 bytes per key for 1%
+        assertTrue(filter.getBitSize() / 8 < keys * 1.3);
+    }
+
+    @Test
+    public void checkIndexWithParents() {
+        ExistenceIndex index = new ExistenceIndex("bucket", "data/", 10, 0.001);
+
+        assertTrue(index.mightExist("data/missed"), "Not ready index should not answer");
+
+        ListingService service = new ListingService(
+                "data/a/b/file1",
+                "data/a/b/file2",
+                "data/a/c/",
+                "data/d"
+        );
+
+        index.rebuild(service::listObjects, service::listNextBatchOfObjects);
+
+        assertTrue(index.isReady());
+
+        assertTrue(index.mightExist("data/"));
+        assertTrue(index.mightExist("data/a/"));
+        assertTrue(index.mightExist("data/a/b/"));
+        assertTrue(index.mightExist("data/a/b/file1"));
+        assertTrue(index.mightExist("data/a/b/file2"));
+        assertTrue(index.mightExist("data/a/c/"));
+        assertTrue(index.mightExist("data/d"));
+
+        assertFalse(index.mightExist("data/a/b/file3"));
+        assertFalse(index.mightExist("data/a/c"));
+        assertFalse(index.mightExist("data/e/"));
+
+        assertTrue(index.mightExist("other/file"), "Keys outside of prefix are not covered");
+
+        index.add("data/e/f/new-file");
+
+        assertTrue(index.mightExist("data/e/"));
+        assertTrue(index.mightExist("data/e/f/"));
+        assertTrue(index.mightExist("data/e/f/new-file"));
+    }
+
+    private static class ListingService extends AbstractAmazonS3 {
+        private final List<String> keys;
+
+        ListingService(String ... keys) {
+            this.keys = Arrays.asList(keys);
+        }
+
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request) {
+            ObjectListing listing = new ObjectListing();
+
+            for (String key : keys) {
+                if (key.startsWith(request.getPrefix())) {
+                    S3ObjectSummary summary = new S3ObjectSummary();
+
+                    summary.setKey(key);
+
+                    listing.getObjectSummaries().add(summary);
+                }
+            }
+
+            return listing;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileChangeEvent;
+import org.apache.commons.vfs2.FileListener;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class FileEventsTest {
+    private CountDownLatch release;
+    private S3FileSystem fileSystem;
+
+    @BeforeMethod
+    public void createLatch() {
+        release = new CountDownLatch(1);
+        fileSystem = null;
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void closeFileSystem() {
+        release.countDown();
+
+        if (fileSystem != null) {
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void checkSynchronousDelivery() throws Exception {
+        fileSystem = fileSystem(new S3FileSystemOptions());
+
+        final FileObject file = fileSystem.resolveFile("/file");
+        final RecordingListener listener = new RecordingListener(null);
+
+        fileSystem.addListener(file, listener);
+        fileSystem.fireFileChanged(file);
+
+        assertEquals(listener.events, singletonList("changed"));
+        assertEquals(listener.threads, singletonList(Thread.currentThread()));
+
+        fileSystem.removeListener(file, listener);
+        fileSystem.fireFileChanged(file);
+
+        assertEquals(listener.events.size(), 1, "Removed listener is not called");
+    }
+
+    @Test
+    public void checkSlowListenerDoesNotBlockWriter() throws Exception {
+        fileSystem = fileSystem(asyncOptions(16));
+
+        final FileObject file = fileSystem.resolveFile("/file");
+        final RecordingListener listener = new RecordingListener(release);
+
+        fileSystem.addListener(file, listener);
+        fileSystem.fireFileChanged(file);
+
+        waitFor(() -> listener.events.size() == 1);
+
+        for (int i = 0; i < 1000; i++) {
+            fileSystem.fireFileChanged(file);
+        }
+
+        // All events were fired while the first one is still in listener
+        assertEquals(listener.events.size(), 1);
+
+        release.countDown();
+
+        waitFor(() -> listener.events.size() == 2);
+
+        Thread.sleep(50);
+
+        assertEquals(listener.events.size(), 2, "Events are coalesced while listener is busy");
+        assertNotEquals(listener.threads.get(0), Thread.currentThread());
+    }
+
+    @Test
+    public void checkCreateWithChangeIsCoalescedToCreate() throws Exception {
+        fileSystem = fileSystem(asyncOptions(16));
+
+        final FileObject blocker = fileSystem.resolveFile("/blocker");
+        final FileObject file = fileSystem.resolveFile("/file");
+        final RecordingListener blockerListener = new RecordingListener(release);
+        final RecordingListener listener = new RecordingListener(null);
+
+        fileSystem.addListener(blocker, blockerListener);
+        fileSystem.addListener(file, listener);
+
+        fileSystem.fireFileChanged(blocker);
+        fileSystem.fireFileCreated(file);
+        fileSystem.fireFileChanged(file);
+        fileSystem.fireFileChanged(file);
+
+        release.countDown();
+
+        waitFor(() -> listener.events.size() == 1);
+
+        fileSystem.fireFileDeleted(file);
+
+        waitFor(() -> listener.events.size() == 2);
+
+        assertEquals(listener.events.get(0), "created");
+        assertEquals(listener.events.get(1), "deleted");
+    }
+
+    @Test
+    public void checkFullQueueIsDeliveredByCaller() throws Exception {
+        fileSystem = fileSystem(asyncOptions(1));
+
+        final FileObject blocker = fileSystem.resolveFile("/blocker");
+        final FileObject queued = fileSystem.resolveFile("/queued");
+        final FileObject overflow = fileSystem.resolveFile("/overflow");
+        final RecordingListener blockerListener = new RecordingListener(release);
+        final RecordingListener queuedListener = new RecordingListener(null);
+        final RecordingListener overflowListener = new RecordingListener(null);
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+
+        fileSystem.addListener(blocker, blockerListener);
+        fileSystem.addListener(queued, queuedListener);
+        fileSystem.addListener(overflow, overflowListener);
+
+        try {
+            fileSystem.fireFileChanged(blocker);
+
+            waitFor(() -> blockerListener.events.size() == 1);
+
+            fileSystem.fireFileChanged(queued);
+
+            final Future<Thread> fired = caller.submit(() -> {
+                fileSystem.fireFileChanged(overflow);
+
+                return Thread.currentThread();
+            });
+
+            Thread.sleep(100);
+
+            // Caller waits for the running listener, listeners are never called concurrently
+            assertFalse(fired.isDone());
+            assertTrue(overflowListener.events.isEmpty());
+
+            release.countDown();
+
+            assertEquals(overflowListener.threads, singletonList(fired.get(30, SECONDS)));
+
+            waitFor(() -> queuedListener.events.size() == 1);
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    private static S3FileSystemOptions asyncOptions(int queueSize) {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setAsyncEvents(true);
+        options.setEventQueueSize(queueSize);
+
+        return options;
+    }
+
+    private static S3FileSystem fileSystem(S3FileSystemOptions options) throws Exception {
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/events/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                options,
+                TransferManagerBuilder.standard().withS3Client(new AbstractAmazonS3() {
+                    @Override
+                    public void shutdown() {
+                    }
+                }).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        return fileSystem;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; (i < 500) && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(condition.getAsBoolean(), "Condition was not met in time");
+    }
+
+    /**
+     * Records events and threads, optionally waits for latch in every call.
+     */
+    private static class RecordingListener implements FileListener {
+        private final List<Object> events = new CopyOnWriteArrayList<>();
+        private final List<Object> threads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch latch;
+
+        RecordingListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void fileCreated(FileChangeEvent event) throws Exception {
+            record("created");
+        }
+
+        @Override
+        public void fileDeleted(FileChangeEvent event) throws Exception {
+            record("deleted");
+        }
+
+        @Override
+        public void fileChanged(FileChangeEvent event) throws Exception {
+            record("changed");
+        }
+
+        private void record(String event) throws InterruptedException {
+            events.add(event);
+            threads.add(Thread.currentThread());
+
+            if (latch != null) {
+                assertTrue(latch.await(30, SECONDS));
+            }
+        }
+    }
+}
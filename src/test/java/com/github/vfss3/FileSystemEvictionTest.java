@@ -0,0 +1,132 @@
+package com.github.vfss3;
+
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class FileSystemEvictionTest {
+    private DefaultFileSystemManager manager;
+    private S3FileProvider provider;
+
+    @BeforeMethod
+    public void setUp() throws FileSystemException {
+        provider = new S3FileProvider();
+        manager = new DefaultFileSystemManager();
+
+        manager.addProvider(S3FileName.SCHEME, provider);
+        manager.init();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        manager.close();
+    }
+
+    @Test
+    public void checkMaxFileSystems() throws FileSystemException {
+        provider.setMaxFileSystems(2);
+
+        final S3FileSystem first = fileSystem("eviction-1");
+        final S3FileSystem second = fileSystem("eviction-2");
+
+        first.streamOpened();
+
+        final S3FileSystem third = fileSystem("eviction-3");
+
+        assertNotNull(first.getService(), "File system with open stream is kept");
+        assertNull(second.getService(), "Least recently used file system is closed");
+        assertNotNull(third.getService());
+
+        assertSame(fileSystem("eviction-1"), first);
+        assertNotSame(fileSystem("eviction-2"), second);
+    }
+
+    @Test
+    public void checkIdleTimeout() throws Exception {
+        provider.setIdleTimeout(50);
+
+        final S3FileSystem idle = fileSystem("eviction-idle");
+
+        provider.freeUnusedResources();
+
+        assertNotNull(idle.getService());
+
+        Thread.sleep(100);
+
+        final S3FileSystem active = fileSystem("eviction-active");
+
+        provider.freeUnusedResources();
+
+        assertNull(idle.getService());
+        assertNotNull(active.getService());
+    }
+
+    @Test
+    public void checkConcurrentEviction() throws Exception {
+        provider.setIdleTimeout(1);
+
+        for (int i = 0; i < 20; i++) {
+            // Both file systems share one pooled client
+            final S3FileSystem idle = fileSystem("eviction-idle-" + i);
+            final S3FileSystem active = fileSystem("eviction-active-" + i);
+
+            active.streamOpened();
+
+            Thread.sleep(5);
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread[] threads = new Thread[4];
+
+            for (int j = 0; j < threads.length; j++) {
+                threads[j] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    provider.freeUnusedResources();
+                });
+
+                threads[j].start();
+            }
+
+            start.countDown();
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertNull(idle.getService());
+            assertNotNull(active.getService());
+
+            // Client is still referenced by the active file system, so the new one gets it from the pool
+            final S3FileSystem next = fileSystem("eviction-next-" + i);
+
+            assertSame(next.getService(), active.getService(), "Client is released once by evicted file system");
+
+            active.streamClosed();
+
+            manager.closeFileSystem(active);
+            manager.closeFileSystem(next);
+        }
+    }
+
+    private S3FileSystem fileSystem(String bucket) throws FileSystemException {
+        final FileSystemOptions options = new S3FileSystemOptions().toFileSystemOptions();
+
+        return (S3FileSystem) manager.resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/" + bucket + "/file", options
+        ).getFileSystem();
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.vfss3;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.VFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Throughput of file system lookup in {@link CachingFileProvider} against previous implementation with
+ * {@link TreeMap} under global read-write lock. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=com.github.vfss3.FileSystemLookupBenchmark
+ * </pre>
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileSystemLookupBenchmark {
+    private static final int FILE_SYSTEMS = 16;
+
+    private final LegacyRegistry legacy = new LegacyRegistry();
+
+    private S3FileProvider provider;
+    private FileName rootName;
+    private FileSystemOptions ownOptions;
+    private String uri;
+
+    @Setup
+    public void setUp() throws FileSystemException {
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/benchmark-0/", options()
+        ).getFileSystem();
+
+        provider = new S3FileProvider();
+        provider.setContext(base.getContext());
+
+        for (int i = 0; i < FILE_SYSTEMS; i++) {
+            FileSystem fs = provider.findFile(
+                    null, "s3://access:secret@s3.eu-central-1.amazonaws.com/benchmark-" + i + "/file", options()
+            ).getFileSystem();
+
+            legacy.put(fs.getRootName(), fs);
+        }
+
+        uri = "s3://access:secret@s3.eu-central-1.amazonaws.com/benchmark-" + (FILE_SYSTEMS / 2) + "/folder/file";
+        final FileSystem fs = provider.findFile(null, uri, options()).getFileSystem();
+
+        rootName = fs.getRootName();
+        ownOptions = fs.getFileSystemOptions();
+    }
+
+    @Benchmark
+    public FileSystem lookup() {
+        return provider.findFileSystem(rootName, options());
+    }
+
+    /**
+     * Lookup with options of the file system itself, like resolve relative to its file.
+     */
+    @Benchmark
+    public FileSystem lookupOwnOptions() {
+        return provider.findFileSystem(rootName, ownOptions);
+    }
+
+    @Benchmark
+    public FileSystem legacyLookup() {
+        return legacy.get(rootName, options());
+    }
+
+    @Benchmark
+    public Object resolve() throws FileSystemException {
+        return provider.findFile(null, uri, options());
+    }
+
+    private static FileSystemOptions options() {
+        return new S3FileSystemOptions().toFileSystemOptions();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            new Runner(
+                    new OptionsBuilder().
+                            include(FileSystemLookupBenchmark.class.getSimpleName()).
+                            threads(threads).
+                            build()
+            ).run();
+        }
+    }
+
+    /**
+     * Previous registry implementation.
+     */
+    private static class LegacyRegistry {
+        private final ReadWriteLock globalLock = new ReentrantReadWriteLock();
+        private final Lock readLock = globalLock.readLock();
+        private final Lock writeLock = globalLock.writeLock();
+
+        private final Map<FileSystemKey, FileSystem> fileSystems = new TreeMap<>();
+
+        FileSystem get(Comparable<?> rootName, FileSystemOptions options) {
+            readLock.lock();
+
+            try {
+                return fileSystems.get(new FileSystemKey(rootName, options));
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        void put(Comparable<?> rootName, FileSystem fs) {
+            writeLock.lock();
+
+            try {
+                fileSystems.put(new FileSystemKey(rootName, fs.getFileSystemOptions()), fs);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.github.vfss3;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
+
+/**
+ * In-process S3 stand-in for tests. Serves path style HEAD, GET, PUT, server side copy, DELETE and listing of
+ * objects kept in memory and counts requests by their kind. Clients should not use chunked encoding of uploads.
+ * Settings of the underlying http server ({@code sun.net.httpserver.*}) come from surefire configuration in pom.xml.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class LocalS3 implements AutoCloseable {
+    private static final DateTimeFormatter ISO_8601 = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+    private static final int MAX_KEYS = 1000;
+
+    private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final Map<S3Operation, LongAdder> counts = new EnumMap<>(S3Operation.class);
+    private final ExecutorService executor;
+    private final HttpServer server;
+
+    private volatile long latency;
+
+    LocalS3() throws IOException {
+        for (S3Operation operation : S3Operation.values()) {
+            counts.put(operation, new LongAdder());
+        }
+
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "local-s3");
+
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 10_000);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    void putObject(String bucket, String key, byte[] content) {
+        objects.put(bucket + "/" + key, new StoredObject(content, new HashMap<>()));
+    }
+
+    /**
+     * Content of the object or null if there is no such object.
+     */
+    byte[] getObject(String bucket, String key) {
+        final StoredObject object = objects.get(bucket + "/" + key);
+
+        return (object != null) ? object.content : null;
+    }
+
+    /**
+     * Keys of all objects in the bucket.
+     */
+    SortedSet<String> getKeys(String bucket) {
+        final SortedSet<String> result = new TreeSet<>();
+
+        for (String path : objects.subMap(bucket + "/", bucket + "0").keySet()) {
+            result.add(path.substring(bucket.length() + 1));
+        }
+
+        return result;
+    }
+
+    /**
+     * Delay of every response, emulates network round trip.
+     */
+    void setLatency(long millis) {
+        this.latency = millis;
+    }
+
+    long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Number of received requests of the kind, retries are counted as separate requests.
+     */
+    long getRequestCount(S3Operation operation) {
+        return counts.get(operation).sum();
+    }
+
+    /**
+     * Start counting of requests from zero.
+     */
+    void resetRequestCounts() {
+        requests.reset();
+        counts.values().forEach(LongAdder::reset);
+    }
+
+    String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Client for this stand-in with path style access.
+     */
+    AmazonS3 client(ClientConfiguration configuration) {
+        return AmazonS3ClientBuilder.standard().
+                withClientConfiguration(configuration).
+                withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret"))).
+                withEndpointConfiguration(new EndpointConfiguration(getEndpoint(), "us-east-1")).
+                enablePathStyleAccess().
+                disableChunkedEncoding().
+                build();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+
+        try {
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath().substring(1);
+            final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            final int slash = path.indexOf('/');
+            final String bucket = (slash < 0) ? path : path.substring(0, slash);
+            final String key = (slash < 0) ? "" : path.substring(slash + 1);
+
+            if (query.containsKey("acl")) {
+                count(S3Operation.ACL);
+                sendError(exchange, 501, "NotImplemented");
+            } else if (key.isEmpty()) {
+                if (method.equals("GET")) {
+                    count(S3Operation.LIST);
+                    list(exchange, bucket, query);
+                } else {
+                    sendError(exchange, 405, "MethodNotAllowed");
+                }
+            } else if (method.equals("HEAD") || method.equals("GET")) {
+                count(method.equals("HEAD") ? S3Operation.HEAD : S3Operation.GET);
+                get(exchange, bucket + "/" + key);
+            } else if (method.equals("PUT") && exchange.getRequestHeaders().containsKey("x-amz-copy-source")) {
+                count(S3Operation.COPY);
+                copy(exchange, bucket + "/" + key);
+            } else if (method.equals("PUT")) {
+                count(S3Operation.PUT);
+                put(exchange, bucket + "/" + key);
+            } else if (method.equals("DELETE")) {
+                count(S3Operation.DELETE);
+                objects.remove(bucket + "/" + key);
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                sendError(exchange, 405, "MethodNotAllowed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void get(HttpExchange exchange, String path) throws IOException {
+        final StoredObject object = objects.get(path);
+
+        if (object == null) {
+            sendError(exchange, 404, "NoSuchKey");
+
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().add("ETag", "\"" + object.etag + "\"");
+        exchange.getResponseHeaders().add("Last-Modified", RFC_1123_DATE_TIME.format(object.modified));
+        object.headers.forEach(exchange.getResponseHeaders()::add);
+
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().add("Content-Length", Integer.toString(object.content.length));
+            exchange.sendResponseHeaders(200, -1);
+        } else {
+            exchange.sendResponseHeaders(200, (object.content.length > 0) ? object.content.length : -1);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(object.content);
+            }
+        }
+    }
+
+    private void put(HttpExchange exchange, String path) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        try (InputStream in = exchange.getRequestBody()) {
+            final byte[] buffer = new byte[8192];
+
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                content.write(buffer, 0, read);
+            }
+        }
+
+        final StoredObject object = new StoredObject(content.toByteArray(), metadata(exchange.getRequestHeaders()));
+
+        objects.put(path, object);
+
+        exchange.getResponseHeaders().add("ETag", "\"" + object.etag + "\"");
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void copy(HttpExchange exchange, String path) throws IOException {
+        String source = decode(exchange.getRequestHeaders().getFirst("x-amz-copy-source"));
+
+        if (source.startsWith("/")) {
+            source = source.substring(1);
+        }
+
+        final StoredObject original = objects.get(source);
+
+        if (original == null) {
+            sendError(exchange, 404, "NoSuchKey");
+
+            return;
+        }
+
+        final StoredObject copy = new StoredObject(
+                original.content,
+                "REPLACE".equals(exchange.getRequestHeaders().getFirst("x-amz-metadata-directive")) ?
+                        metadata(exchange.getRequestHeaders()) :
+                        original.headers
+        );
+
+        objects.put(path, copy);
+
+        sendXml(exchange, "<CopyObjectResult>" +
+                "<LastModified>" + ISO_8601.format(copy.modified) + "</LastModified>" +
+                "<ETag>&quot;" + copy.etag + "&quot;</ETag>" +
+                "</CopyObjectResult>"
+        );
+    }
+
+    private void list(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException {
+        final String prefix = query.getOrDefault("prefix", "");
+        final String delimiter = query.get("delimiter");
+        final String marker = query.getOrDefault("marker", "");
+        final int maxKeys = Math.min(MAX_KEYS, Integer.parseInt(query.getOrDefault("max-keys", "1000")));
+        final boolean encode = "url".equals(query.get("encoding-type"));
+
+        final StringBuilder contents = new StringBuilder();
+        final SortedSet<String> prefixes = new TreeSet<>();
+        String last = null;
+        int returned = 0;
+        boolean truncated = false;
+
+        for (Map.Entry<String, StoredObject> entry : objects.tailMap(bucket + "/" + prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(bucket + "/" + prefix)) {
+                break;
+            }
+
+            final String key = entry.getKey().substring(bucket.length() + 1);
+
+            final boolean seenPrefix = (delimiter != null) && marker.endsWith(delimiter) && key.startsWith(marker);
+
+            // Keys of common prefix from the previous page are skipped too
+            if ((key.compareTo(marker) <= 0) || seenPrefix) {
+                continue;
+            }
+
+            final int next = (delimiter != null) ? key.indexOf(delimiter, prefix.length()) : -1;
+            final String commonPrefix = (next >= 0) ? key.substring(0, next + delimiter.length()) : null;
+
+            if ((commonPrefix != null) && prefixes.contains(commonPrefix)) {
+                continue;
+            }
+
+            if (returned == maxKeys) {
+                truncated = true;
+
+                break;
+            }
+
+            returned++;
+
+            if (commonPrefix != null) {
+                prefixes.add(commonPrefix);
+                last = commonPrefix;
+            } else {
+                final StoredObject object = entry.getValue();
+
+                contents.append("<Contents>").
+                        append("<Key>").append(xml(key, encode)).append("</Key>").
+                        append("<LastModified>").append(ISO_8601.format(object.modified)).append("</LastModified>").
+                        append("<ETag>&quot;").append(object.etag).append("&quot;</ETag>").
+                        append("<Size>").append(object.content.length).append("</Size>").
+                        append("<StorageClass>STANDARD</StorageClass>").
+                        append("</Contents>");
+
+                last = key;
+            }
+        }
+
+        final StringBuilder result = new StringBuilder("<ListBucketResult>").
+                append("<Name>").append(bucket).append("</Name>").
+                append("<Prefix>").append(xml(prefix, encode)).append("</Prefix>").
+                append("<Marker>").append(xml(marker, encode)).append("</Marker>").
+                append("<MaxKeys>").append(maxKeys).append("</MaxKeys>");
+
+        if (delimiter != null) {
+            result.append("<Delimiter>").append(xml(delimiter, encode)).append("</Delimiter>");
+        }
+
+        if (encode) {
+            result.append("<EncodingType>url</EncodingType>");
+        }
+
+        result.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+
+        if (truncated && (last != null)) {
+            result.append("<NextMarker>").append(xml(last, encode)).append("</NextMarker>");
+        }
+
+        result.append(contents);
+
+        for (String commonPrefix : prefixes) {
+            result.append("<CommonPrefixes><Prefix>").
+                    append(xml(commonPrefix, encode)).
+                    append("</Prefix></CommonPrefixes>");
+        }
+
+        sendXml(exchange, result.append("</ListBucketResult>").toString());
+    }
+
+    private void count(S3Operation operation) {
+        counts.get(operation).increment();
+    }
+
+    /**
+     * Content type and user metadata from request headers.
+     */
+    private static Map<String, String> metadata(Headers headers) {
+        final Map<String, String> result = new HashMap<>();
+
+        headers.forEach((name, values) -> {
+            final String lower = name.toLowerCase();
+
+            if (lower.equals("content-type") || lower.startsWith("x-amz-meta-")) {
+                result.put(lower, values.get(0));
+            }
+        });
+
+        return result;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        final Map<String, String> result = new HashMap<>();
+
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                final int equals = parameter.indexOf('=');
+
+                if (equals < 0) {
+                    result.put(decode(parameter), "");
+                } else {
+                    result.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String xml(String value, boolean encode) {
+        try {
+            final String result = encode ? URLEncoder.encode(value, "UTF-8") : value;
+
+            return result.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sendXml(HttpExchange exchange, String xml) throws IOException {
+        final byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(200, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code) throws IOException {
+        final byte[] body = (
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code + "</Code><Message>" + code +
+                "</Message></Error>"
+        ).getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.sendResponseHeaders(status, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static String md5(byte[] content) {
+        try {
+            final StringBuilder result = new StringBuilder(32);
+
+            for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+                result.append(String.format("%02x", b));
+            }
+
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class StoredObject {
+        private final byte[] content;
+        private final String etag;
+        private final Map<String, String> headers;
+        private final ZonedDateTime modified = ZonedDateTime.now(ZoneOffset.UTC);
+
+        StoredObject(byte[] content, Map<String, String> headers) {
+            this.content = content;
+            this.etag = md5(content);
+            this.headers = headers;
+        }
+    }
+}
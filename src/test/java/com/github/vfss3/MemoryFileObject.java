@@ -0,0 +1,74 @@
+package com.github.vfss3;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.VFS;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * File object with in-memory content for tests of stream handling, doesn't make any requests.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+class MemoryFileObject extends AbstractFileObject<S3FileSystem> {
+    private final AtomicInteger allStreamsClosed = new AtomicInteger();
+    private final byte[] content;
+
+    MemoryFileObject(byte[] content) throws FileSystemException {
+        this((S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/memory/"
+        ).getFileSystem(), content);
+    }
+
+    private MemoryFileObject(S3FileSystem fileSystem, byte[] content) {
+        super((S3FileName) fileSystem.getRootName(), fileSystem);
+
+        this.content = content;
+    }
+
+    /**
+     * How many times all streams of this file were closed.
+     */
+    int getAllStreamsClosed() {
+        return allStreamsClosed.get();
+    }
+
+    @Override
+    public OutputStream getOutputStream(boolean bAppend) {
+        return NullOutputStream.NULL_OUTPUT_STREAM;
+    }
+
+    @Override
+    protected void endOutput() {
+    }
+
+    @Override
+    protected void notifyAllStreamsClosed() {
+        allStreamsClosed.incrementAndGet();
+    }
+
+    @Override
+    protected long doGetContentSize() {
+        return content.length;
+    }
+
+    @Override
+    protected InputStream doGetInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    protected FileType doGetType() {
+        return FileType.FILE;
+    }
+
+    @Override
+    protected String[] doListChildren() {
+        return new String[0];
+    }
+}
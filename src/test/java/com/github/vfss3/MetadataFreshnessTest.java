@@ -0,0 +1,185 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.apache.commons.vfs2.FileType.FILE;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class MetadataFreshnessTest {
+    @Test
+    public void checkStrictRefresh() throws Exception {
+        final HeadService service = new HeadService();
+        final S3FileObject file = resolve(service, new S3FileSystemOptions());
+
+        assertEquals(file.getType(), FILE);
+
+        file.refresh();
+
+        assertFalse(file.isAttached());
+        assertEquals(file.getType(), FILE);
+        assertEquals(service.heads.get(), 2);
+    }
+
+    @Test
+    public void checkStaleWhileRevalidate() throws Exception {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setMetadataSoftTtl(100);
+        options.setMetadataHardTtl(60_000);
+
+        final HeadService service = new HeadService();
+        final S3FileObject file = resolve(service, options);
+
+        assertEquals(file.getType(), FILE);
+
+        // Within soft TTL
+        file.refresh();
+
+        assertTrue(file.isAttached());
+        assertEquals(service.heads.get(), 1);
+
+        // Between soft and hard TTL without changes
+        Thread.sleep(150);
+
+        file.refresh();
+
+        assertTrue(file.isAttached());
+        waitFor(() -> service.heads.get() == 2);
+        assertTrue(file.isAttached());
+
+        // Between soft and hard TTL with changes
+        service.eTag = "0123456789abcdef0123456789abcdef";
+
+        Thread.sleep(150);
+
+        file.refresh();
+
+        waitFor(() -> !file.isAttached());
+
+        assertEquals(file.getType(), FILE);
+        assertEquals(service.heads.get(), 4, "Next access fetches new metadata");
+    }
+
+    @Test
+    public void checkHardTtl() throws Exception {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setMetadataSoftTtl(0);
+        options.setMetadataHardTtl(50);
+
+        final HeadService service = new HeadService();
+        final S3FileObject file = resolve(service, options);
+
+        assertEquals(file.getType(), FILE);
+
+        Thread.sleep(100);
+
+        file.refresh();
+
+        assertFalse(file.isAttached());
+    }
+
+    @Test
+    public void checkRefreshOnResolve() throws Exception {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setMetadataSoftTtl(60_000);
+        options.setMetadataHardTtl(60_000);
+
+        final HeadService cachedService = new HeadService();
+        final S3FileObject cached = resolve(cachedService, options);
+
+        assertEquals(cached.getType(), FILE);
+        assertSame(cached.getFileSystem().resolveFile(cached.getName()), cached);
+        assertTrue(cached.isAttached(), "Fresh metadata is kept on resolve");
+        assertEquals(cachedService.heads.get(), 1);
+
+        final HeadService service = new HeadService();
+        final S3FileObject file = resolve(service, new S3FileSystemOptions());
+
+        assertEquals(file.getType(), FILE);
+
+        file.getFileSystem().resolveFile(file.getName());
+
+        assertFalse(file.isAttached(), "Without TTLs resolve refreshes the file");
+        assertEquals(file.getType(), FILE);
+        assertEquals(service.heads.get(), 2);
+    }
+
+    @Test(expectedExceptions = FileSystemException.class)
+    public void checkWrongTtls() throws Exception {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setMetadataSoftTtl(100);
+        options.setMetadataHardTtl(50);
+
+        resolve(new HeadService(), options);
+    }
+
+    private static S3FileObject resolve(HeadService service, S3FileSystemOptions options) throws Exception {
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/freshness/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                options,
+                TransferManagerBuilder.standard().withS3Client(service).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        return (S3FileObject) fileSystem.resolveFile("/data/file.txt");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; (i < 500) && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(condition.getAsBoolean(), "Condition was not met in time");
+    }
+
+    private static class HeadService extends AbstractAmazonS3 {
+        private final AtomicInteger heads = new AtomicInteger();
+
+        private volatile String eTag = "d41d8cd98f00b204e9800998ecf8427e";
+
+        @Override
+        public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+            final String key = request.getKey();
+
+            heads.incrementAndGet();
+
+            if (!key.equals("data/file.txt")) {
+                AmazonS3Exception e = new AmazonS3Exception("Not found");
+
+                e.setStatusCode(404);
+
+                throw e;
+            }
+
+            ObjectMetadata metadata = new ObjectMetadata();
+
+            metadata.setContentLength(10);
+            metadata.setHeader("ETag", eTag);
+
+            return metadata;
+        }
+    }
+}
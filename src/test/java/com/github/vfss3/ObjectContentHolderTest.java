@@ -0,0 +1,310 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class ObjectContentHolderTest {
+    private static final int READERS = 16;
+    private static final int ROUNDS = 20;
+
+    private static final ObjectContentHolder.ContentSource NO_DOWNLOAD = () -> {
+        throw new AssertionError("Content should not be downloaded");
+    };
+
+    @Test
+    public void checkConcurrentReaders() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(READERS);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final byte[] content = content(256 * 1024 + round);
+                final ObjectMetadataHolder metadata = metadata(content);
+                final AtomicInteger downloads = new AtomicInteger();
+                final CyclicBarrier start = new CyclicBarrier(READERS);
+                final List<Future<byte[]>> results = new ArrayList<>();
+
+                try (ObjectContentHolder holder = new ObjectContentHolder()) {
+                    for (int i = 0; i < READERS; i++) {
+                        results.add(executor.submit(() -> {
+                            start.await();
+
+                            try (InputStream in = holder.getInputStream(metadata, () -> {
+                                downloads.incrementAndGet();
+
+                                return new SlowInputStream(new ByteArrayInputStream(content));
+                            })) {
+                                return IOUtils.toByteArray(in);
+                            }
+                        }));
+                    }
+
+                    for (Future<byte[]> result : results) {
+                        assertEquals(result.get(30, SECONDS), content);
+                    }
+
+                    assertEquals(downloads.get(), 1, "Only one download for all readers");
+                    assertEquals(holder.getOpenForRead(), 0);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkPrefixIsReadDuringDownload() throws Exception {
+        final byte[] content = content(200_000);
+        final ObjectMetadataHolder metadata = metadata(content);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (ObjectContentHolder holder = new ObjectContentHolder()) {
+            // First half of content is available, second one after latch
+            final Future<InputStream> first = executor.submit(() -> holder.getInputStream(metadata, () -> {
+                started.countDown();
+
+                return new SequenceInputStream(
+                        new ByteArrayInputStream(content, 0, 100_000),
+                        new FilterInputStream(new ByteArrayInputStream(content, 100_000, 100_000)) {
+                            @Override
+                            public int read(byte[] b, int off, int len) throws IOException {
+                                try {
+                                    release.await();
+                                } catch (InterruptedException e) {
+                                    throw new IOException(e);
+                                }
+    
+                                return super.read(b, off, len);
+                            }
+                        }
+                );
+            }));
+
+            assertTrue(started.await(30, SECONDS));
+
+            try (InputStream second = holder.getInputStream(metadata, () -> {
+                throw new AssertionError("Second reader should not download");
+            })) {
+                final byte[] prefix = new byte[100_000];
+
+                IOUtils.readFully(second, prefix);
+
+                assertFalse(first.isDone(), "First reader is still downloading");
+
+                release.countDown();
+
+                final byte[] rest = IOUtils.toByteArray(second);
+
+                assertEquals(rest.length, 100_000);
+                assertEquals(rest[rest.length - 1], content[content.length - 1]);
+            }
+
+            try (InputStream in = first.get(30, SECONDS)) {
+                assertEquals(IOUtils.toByteArray(in), content);
+            }
+
+            assertEquals(holder.getOpenForRead(), 0);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkFailedDownload() throws Exception {
+        final byte[] content = content(100_000);
+        final ObjectMetadataHolder metadata = metadata(content);
+        final AtomicInteger downloads = new AtomicInteger();
+
+        try (ObjectContentHolder holder = new ObjectContentHolder()) {
+            assertThrows(IOException.class, () -> holder.getInputStream(metadata, () -> {
+                downloads.incrementAndGet();
+
+                return new ByteArrayInputStream(content, 0, 1000); // Connection was lost
+            }));
+
+            assertEquals(holder.getOpenForRead(), 0);
+
+            try (InputStream in = holder.getInputStream(metadata, () -> {
+                downloads.incrementAndGet();
+
+                return new ByteArrayInputStream(content);
+            })) {
+                assertEquals(IOUtils.toByteArray(in), content);
+            }
+
+            assertEquals(downloads.get(), 2, "Failed download should be repeated");
+        }
+    }
+
+    @Test
+    public void checkWriterDoesNotBlockReaders() throws Exception {
+        final byte[] original = content(100_000);
+        final byte[] updated = content(50_000);
+
+        try (ObjectContentHolder holder = new ObjectContentHolder()) {
+            final InputStream reader = holder.getInputStream(metadata(original), () -> new ByteArrayInputStream(original));
+            final Path originalFile = Paths.get(holder.getFile());
+
+            try (OutputStream writer = holder.getOutputStream(file -> md5Hex(Files.readAllBytes(file.toPath())))) {
+                writer.write(updated);
+
+                // Current version is still served while write is in progress
+                try (InputStream in = holder.getInputStream(metadata(original), NO_DOWNLOAD)) {
+                    assertEquals(IOUtils.toByteArray(in), original);
+                }
+            }
+
+            // Uploaded version is current without download
+            try (InputStream in = holder.getInputStream(metadata(updated), NO_DOWNLOAD)) {
+                assertEquals(IOUtils.toByteArray(in), updated);
+            }
+
+            assertTrue(Files.exists(originalFile), "Old version is kept for open reader");
+            assertEquals(IOUtils.toByteArray(reader), original);
+
+            reader.close();
+
+            assertFalse(Files.exists(originalFile), "Old version is deleted after last reader");
+            assertEquals(holder.getOpenForRead(), 0);
+            assertEquals(holder.getOpenForWrite(), 0);
+        }
+    }
+
+    @Test
+    public void checkFailedUpload() throws Exception {
+        final byte[] original = content(10_000);
+
+        try (ObjectContentHolder holder = new ObjectContentHolder()) {
+            holder.getInputStream(metadata(original), () -> new ByteArrayInputStream(original)).close();
+
+            final String originalFile = holder.getFile();
+            final OutputStream writer = holder.getOutputStream(file -> {
+                throw new IOException("Upload failed");
+            });
+
+            writer.write(content(1000));
+
+            assertThrows(IOException.class, writer::close);
+
+            assertEquals(holder.getFile(), originalFile, "Failed upload doesn't replace content");
+            assertEquals(holder.getOpenForWrite(), 0);
+        }
+    }
+
+    @Test
+    public void checkConcurrentReadersAndWriters() throws Exception {
+        final AtomicReference<byte[]> remote = new AtomicReference<>(content(10_000));
+        final ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        final List<Future<?>> results = new ArrayList<>();
+
+        try (ObjectContentHolder holder = new ObjectContentHolder()) {
+            for (int i = 0; i < READERS; i++) {
+                final int thread = i;
+
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        if ((thread % 4 == 0) && (j % 10 == 0)) {
+                            try (OutputStream out = holder.getOutputStream(file -> {
+                                final byte[] uploaded = Files.readAllBytes(file.toPath());
+
+                                remote.set(uploaded);
+
+                                return md5Hex(uploaded);
+                            })) {
+                                out.write(content(thread * 1000 + j));
+                            }
+                        } else {
+                            final byte[] expected = remote.get();
+
+                            try (InputStream in = holder.getInputStream(
+                                    metadata(expected), () -> new SlowInputStream(new ByteArrayInputStream(expected))
+                            )) {
+                                assertEquals(IOUtils.toByteArray(in), expected);
+                            }
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Future<?> result : results) {
+                result.get(60, SECONDS);
+            }
+
+            assertEquals(holder.getOpenForRead(), 0);
+            assertEquals(holder.getOpenForWrite(), 0);
+
+            final String file = holder.getFile();
+
+            holder.close();
+
+            assertFalse(Files.exists(Paths.get(file)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] content(int size) {
+        final byte[] result = new byte[size];
+
+        new Random(size).nextBytes(result);
+
+        return result;
+    }
+
+    private static ObjectMetadataHolder metadata(byte[] content) {
+        final ObjectMetadata metadata = new ObjectMetadata();
+
+        metadata.setContentLength(content.length);
+        metadata.setHeader("ETag", md5Hex(content));
+
+        return new ObjectMetadataHolder(metadata);
+    }
+
+    /**
+     * Returns data by small pieces so readers really overlap with download.
+     */
+    private static class SlowInputStream extends FilterInputStream {
+        SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Thread.yield();
+
+            return super.read(b, off, Math.min(len, 4096));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Collections.singletonMap;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class ObjectMetadataHolderTest {
+    private static final int CHILDREN = 1_000_000;
+
+    @Test
+    public void checkSummary() {
+        ObjectMetadataHolder holder = new ObjectMetadataHolder(summary(1, "D41D8CD98F00B204E9800998ECF8427E"));
+
+        assertTrue(holder.isVirtual());
+        assertEquals(holder.getContentLength(), 1);
+        assertEquals(holder.getLastModified(), 1000L);
+        assertEquals(holder.getMD5Hash().orElse(null), "d41d8cd98f00b204e9800998ecf8427e");
+
+        assertEquals(
+                new ObjectMetadataHolder(summary(2, "d41d8cd98f00b204e9800998ecf8427e-2")).getMD5Hash().orElse(null),
+                "d41d8cd98f00b204e9800998ecf8427e-2",
+                "Multipart ETag is kept as is"
+        );
+    }
+
+    @Test
+    public void checkSendWith() {
+        ObjectMetadata source = new ObjectMetadata();
+
+        source.setContentLength(10);
+        source.setContentType("text/plain");
+        source.setHeader("ETag", "0123456789abcdef0123456789abcdef");
+        source.setHeader("X-Host", "tracing");
+        source.setUserMetadata(singletonMap("key", "value"));
+
+        ObjectMetadataHolder holder = new ObjectMetadataHolder(source).
+                withContentLength(20).
+                withServerSideEncryption(true);
+
+        assertFalse(holder.isVirtual());
+        assertEquals(holder.getMD5Hash().orElse(null), "0123456789abcdef0123456789abcdef");
+
+        PutObjectRequest request = new PutObjectRequest("bucket", "key", "");
+
+        holder.sendWith(request);
+
+        ObjectMetadata result = request.getMetadata();
+
+        assertEquals(result.getContentLength(), 20);
+        assertEquals(result.getContentType(), "text/plain");
+        assertEquals(result.getSSEAlgorithm(), ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        assertEquals(result.getUserMetaDataOf("key"), "value");
+        assertNull(result.getRawMetadataValue("X-Host"));
+
+        assertEquals(source.getContentLength(), 10, "Source is not modified");
+        assertNull(source.getSSEAlgorithm(), "Source is not modified");
+    }
+
+    @Test(groups = "benchmark")
+    public void compareMemoryForListing() {
+        final List<S3ObjectSummary> summaries = new ArrayList<>(CHILDREN);
+
+        for (int i = 0; i < CHILDREN; i++) {
+            summaries.add(summary(i, String.format("%032x", i * 31L)));
+        }
+
+        long legacy = retainedBytes(summaries, summary -> {
+            ObjectMetadata metadata = new ObjectMetadata();
+
+            metadata.setContentLength(summary.getSize());
+            metadata.setLastModified(summary.getLastModified());
+            metadata.setHeader("ETag", summary.getETag());
+
+            return metadata;
+        });
+
+        long compact = retainedBytes(summaries, ObjectMetadataHolder::new);
+
+        System.out.printf(
+                "Metadata for %d children: ObjectMetadata %d MB (%d bytes each), compact %d MB (%d bytes each)%n",
+                CHILDREN, legacy >> 20, legacy / CHILDREN, compact >> 20, compact / CHILDREN
+        );
+
+        assertTrue(compact * 2 < legacy, "Compact holder should take less than half of SDK metadata");
+    }
+
+    private static long retainedBytes(List<S3ObjectSummary> summaries, Function<S3ObjectSummary, Object> factory) {
+        final Object[] holders = new Object[summaries.size()];
+        final long before = usedMemory();
+
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = factory.apply(summaries.get(i));
+        }
+
+        final long after = usedMemory();
+
+        assertNotNull(holders[holders.length - 1]);
+
+        return after - before;
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static S3ObjectSummary summary(long size, String eTag) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+
+        summary.setSize(size);
+        summary.setLastModified(new Date(1000L));
+        summary.setETag(eTag);
+
+        return summary;
+    }
+}
@@ -0,0 +1,268 @@
+package com.github.vfss3;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.Selectors;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.vfs2.FileType.FILE;
+import static org.apache.commons.vfs2.FileType.FOLDER;
+import static org.apache.commons.vfs2.FileType.IMAGINARY;
+import static org.testng.Assert.*;
+
+/**
+ * Number of S3 requests for public file operations, measured on in-process S3 stand-in. Every extra request is a
+ * regression of latency and cost, so budgets are exact - when some operation gets cheaper its budget should be
+ * lowered in the same change.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class RequestBudgetTest {
+    private static final AtomicInteger BUCKETS = new AtomicInteger();
+    private static final int FILES = 5;
+
+    private LocalS3 s3;
+    private String bucket;
+    private S3FileSystem fileSystem;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        s3 = new LocalS3();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        s3.close();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void closeFileSystem() {
+        if (fileSystem != null) {
+            fileSystem.close();
+            fileSystem = null;
+        }
+    }
+
+    @Test
+    public void existsOfFile() throws Exception {
+        createFileSystem("dir/file");
+
+        final FileObject file = fileSystem.resolveFile("/dir/file");
+
+        assertTrue(file.exists());
+        assertRequests("resolveFile and exists of file", 1, 0, 0, 0, 0, 0);
+
+        // Attached file doesn't need requests until refresh
+        assertEquals(file.getType(), FILE);
+        assertEquals(file.getContent().getSize(), 4);
+        assertRequests("getType and getSize of attached file", 0, 0, 0, 0, 0, 0);
+
+        // Resolve refreshes cached file, without metadata TTL it is probed again
+        assertTrue(fileSystem.resolveFile("/dir/file").exists());
+        assertRequests("resolveFile and exists of attached file", 1, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void existsOfFileWithMetadataTtl() throws Exception {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setMetadataSoftTtl(60_000);
+        options.setMetadataHardTtl(60_000);
+
+        createFileSystem(options, "dir/file");
+
+        assertTrue(fileSystem.resolveFile("/dir/file").exists());
+        assertRequests("resolveFile and exists of file", 1, 0, 0, 0, 0, 0);
+
+        // Cached file keeps attached metadata on resolve while it is fresh
+        assertTrue(fileSystem.resolveFile("/dir/file").exists());
+        assertRequests("resolveFile and exists of attached file", 0, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void existsOfMissingFile() throws Exception {
+        createFileSystem("dir/file");
+
+        assertFalse(fileSystem.resolveFile("/dir/missing").exists());
+        assertRequests("resolveFile and exists of missing file", 2, 0, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void existsOfFolder() throws Exception {
+        createFileSystem("dir/file");
+
+        assertEquals(fileSystem.resolveFile("/dir").getType(), FOLDER);
+        assertRequests("resolveFile and getType of folder", 2, 0, 1, 0, 0, 0);
+    }
+
+    @Test
+    public void getChildren() throws Exception {
+        createFileSystem(files("dir/"));
+
+        final FileObject[] children = fileSystem.resolveFile("/dir").getChildren();
+
+        assertEquals(children.length, FILES);
+        assertRequests("getChildren", 2, 0, 2, 0, 0, 0);
+
+        for (FileObject child : children) {
+            assertEquals(child.getType(), FILE);
+            assertTrue(child.getContent().getSize() > 0);
+        }
+
+        assertRequests("getType and getSize of children", 0, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void getChildrenOfBigFolder() throws Exception {
+        final String[] keys = new String[1500];
+
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = String.format("dir/file-%04d", i);
+        }
+
+        createFileSystem(keys);
+
+        assertEquals(fileSystem.resolveFile("/dir").getChildren().length, keys.length);
+        assertRequests("getChildren with two pages of listing", 2, 0, 3, 0, 0, 0);
+    }
+
+    @Test
+    public void readContent() throws Exception {
+        createFileSystem("dir/file");
+
+        try (InputStream in = fileSystem.resolveFile("/dir/file").getContent().getInputStream()) {
+            final byte[] content = new byte[10];
+
+            assertEquals(in.read(content), 4);
+        }
+
+        assertRequests("read of content", 1, 1, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void writeContent() throws Exception {
+        createFileSystem("dir/file");
+
+        try (OutputStream out = fileSystem.resolveFile("/dir/new-file").getContent().getOutputStream()) {
+            out.write(new byte[100]);
+        }
+
+        assertRequests("getOutputStream into existing folder", 5, 0, 2, 1, 0, 0);
+        assertEquals(s3.getObject(bucket, "dir/new-file").length, 100);
+    }
+
+    @Test
+    public void writeContentIntoNewFolder() throws Exception {
+        createFileSystem("dir/file");
+
+        try (OutputStream out = fileSystem.resolveFile("/new-dir/new-file").getContent().getOutputStream()) {
+            out.write(new byte[100]);
+        }
+
+        assertRequests("getOutputStream into new folder", 5, 0, 2, 2, 0, 0);
+        assertEquals(s3.getKeys(bucket).size(), 3);
+    }
+
+    @Test
+    public void createFolder() throws Exception {
+        createFileSystem("dir/file");
+
+        fileSystem.resolveFile("/new-dir").createFolder();
+
+        assertRequests("createFolder", 2, 0, 1, 1, 0, 0);
+        assertTrue(s3.getKeys(bucket).contains("new-dir/"));
+    }
+
+    @Test
+    public void copyFrom() throws Exception {
+        createFileSystem(files("source/"));
+
+        fileSystem.resolveFile("/target").copyFrom(fileSystem.resolveFile("/source"), Selectors.SELECT_ALL);
+
+        assertRequests("copyFrom of " + FILES + " files", 34, 0, 8, 6, 5, 0);
+        assertEquals(s3.getKeys(bucket).stream().filter(key -> key.startsWith("target/file-")).count(), FILES);
+    }
+
+    @Test
+    public void deleteAll() throws Exception {
+        createFileSystem(files("dir/"));
+
+        assertEquals(fileSystem.resolveFile("/dir").delete(Selectors.SELECT_ALL), FILES + 1);
+
+        assertRequests("delete of folder with " + FILES + " files", 2, 0, 2, 0, 0, 6);
+        assertTrue(s3.getKeys(bucket).isEmpty());
+        assertEquals(fileSystem.resolveFile("/dir").getType(), IMAGINARY);
+    }
+
+    private static String[] files(String folder) {
+        final String[] keys = new String[FILES];
+
+        for (int i = 0; i < FILES; i++) {
+            keys[i] = folder + "file-" + i;
+        }
+
+        return keys;
+    }
+
+    /**
+     * New bucket with given objects and new file system for it, request counts start from zero.
+     */
+    private void createFileSystem(String... keys) throws Exception {
+        createFileSystem(new S3FileSystemOptions(), keys);
+    }
+
+    /**
+     * New bucket with given objects and new file system with given options for it.
+     */
+    private void createFileSystem(S3FileSystemOptions options, String... keys) throws Exception {
+        bucket = "budget-" + BUCKETS.incrementAndGet();
+
+        for (String key : keys) {
+            s3.putObject(bucket, key, "data".getBytes(UTF_8));
+        }
+
+        final FileObject base = VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/" + bucket + "/", options.toFileSystemOptions()
+        );
+
+        fileSystem = new S3FileSystem(
+                (S3FileName) base.getFileSystem().getRootName(),
+                options,
+                TransferManagerBuilder.standard().withS3Client(s3.client(new ClientConfiguration())).build()
+        );
+
+        fileSystem.setContext(((S3FileSystem) base.getFileSystem()).getContext());
+        fileSystem.init();
+
+        s3.resetRequestCounts();
+    }
+
+    /**
+     * Compare requests since the previous check with the budget and start counting from zero.
+     */
+    private void assertRequests(String operation, int head, int get, int list, int put, int copy, int delete) {
+        final String actual = "HEAD=" + s3.getRequestCount(S3Operation.HEAD) +
+                ",GET=" + s3.getRequestCount(S3Operation.GET) +
+                ",LIST=" + s3.getRequestCount(S3Operation.LIST) +
+                ",PUT=" + s3.getRequestCount(S3Operation.PUT) +
+                ",COPY=" + s3.getRequestCount(S3Operation.COPY) +
+                ",DELETE=" + s3.getRequestCount(S3Operation.DELETE);
+
+        final String expected = "HEAD=" + head + ",GET=" + get + ",LIST=" + list + ",PUT=" + put +
+                ",COPY=" + copy + ",DELETE=" + delete;
+
+        s3.resetRequestCounts();
+
+        assertEquals(actual, expected, "Requests of " + operation);
+    }
+}
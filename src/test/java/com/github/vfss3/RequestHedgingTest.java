@@ -0,0 +1,185 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class RequestHedgingTest {
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void createExecutor() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void checkSlowRequestIsHedged() {
+        final RequestHedging hedging = new RequestHedging(executor, 20, 95, 1);
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final long start = System.nanoTime();
+
+        final String result = hedging.execute(hedging.latency(), () -> {
+            if (attempts.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+
+                    throw new AbortedException(e);
+                }
+            }
+
+            return "hedge";
+        }, null);
+
+        assertEquals(result, "hedge");
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) < 5_000);
+        assertEquals(hedging.getHedgedRequests(), 1);
+        assertEquals(hedging.getHedgeWins(), 1);
+        assertTrue(await(interrupted), "Original request is cancelled");
+    }
+
+    @Test
+    public void checkFastRequestIsNotHedged() {
+        final RequestHedging hedging = new RequestHedging(executor, 1_000, 95, 1);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        assertEquals(hedging.execute(hedging.latency(), attempts::incrementAndGet, null), Integer.valueOf(1));
+        assertEquals(attempts.get(), 1);
+        assertEquals(hedging.getHedgedRequests(), 0);
+    }
+
+    @Test
+    public void checkLoserIsDiscarded() {
+        final RequestHedging hedging = new RequestHedging(executor, 10, 95, 1);
+        final AtomicInteger attempts = new AtomicInteger();
+        final List<String> discarded = new CopyOnWriteArrayList<>();
+        final CountDownLatch released = new CountDownLatch(1);
+
+        final String result = hedging.execute(hedging.latency(), () -> {
+            if (attempts.getAndIncrement() == 0) {
+                // Blocked socket read doesn't react on interrupt
+                final long deadline = System.nanoTime() + MILLISECONDS.toNanos(200);
+
+                while (System.nanoTime() < deadline) {
+                    Thread.yield();
+                }
+
+                return "original";
+            }
+
+            return "hedge";
+        }, value -> {
+            discarded.add(value);
+            released.countDown();
+        });
+
+        assertEquals(result, "hedge");
+        assertTrue(await(released));
+        assertEquals(discarded.get(0), "original");
+    }
+
+    @Test
+    public void checkClientErrorWaitsForOtherAttempt() {
+        final RequestHedging hedging = new RequestHedging(executor, 10, 95, 1);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = hedging.execute(hedging.latency(), () -> {
+            if (attempts.getAndIncrement() == 0) {
+                sleep(50);
+
+                throw new AmazonClientException("Connection reset");
+            }
+
+            sleep(100);
+
+            return "hedge";
+        }, null);
+
+        assertEquals(result, "hedge");
+    }
+
+    @Test
+    public void checkBudgetLimitsHedges() {
+        final RequestHedging hedging = new RequestHedging(executor, 1, 95, 0.05);
+        final RequestHedging.Latency latency = hedging.latency();
+
+        for (int i = 0; i < 200; i++) {
+            hedging.execute(latency, () -> {
+                sleep(5);
+
+                return null;
+            }, null);
+        }
+
+        assertTrue(hedging.getHedgedRequests() > 0);
+        assertTrue(hedging.getHedgedRequests() <= 10, "Too many hedges " + hedging.getHedgedRequests());
+    }
+
+    @Test
+    public void checkDelayIsLearned() {
+        final RequestHedging hedging = new RequestHedging(executor, 0, 50, 1);
+        final RequestHedging.Latency latency = hedging.latency();
+
+        for (int i = 1; i < 128; i++) {
+            latency.record(MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(latency.getThreshold(), 0, "Not enough samples");
+
+        latency.record(MILLISECONDS.toNanos(128));
+
+        assertEquals(latency.getThreshold(), MILLISECONDS.toNanos(65));
+    }
+
+    @Test
+    public void checkRequestIsSentByCallerWithoutFreeThreads() {
+        final RequestHedging hedging = new RequestHedging(task -> {
+            throw new RejectedExecutionException();
+        }, 1, 95, 1);
+
+        final Thread caller = Thread.currentThread();
+
+        assertEquals(hedging.execute(hedging.latency(), Thread::currentThread, null), caller);
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, SECONDS);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AbortedException(e);
+        }
+    }
+}
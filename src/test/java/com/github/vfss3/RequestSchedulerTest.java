@@ -0,0 +1,322 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static com.github.vfss3.TrafficClass.BACKGROUND;
+import static com.github.vfss3.TrafficClass.FOREGROUND;
+import static com.github.vfss3.TrafficClass.MAINTENANCE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * Scheduling of foreground and background requests without real S3.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class RequestSchedulerTest {
+    @Test
+    public void reservedConnections() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(5, 1);
+        final List<RequestScheduler.Permit> permits = new ArrayList<>();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            for (int i = 0; i < 4; i++) {
+                permits.add(scheduler.acquire(BACKGROUND));
+            }
+
+            final Future<RequestScheduler.Permit> waiting = executor.submit(() -> scheduler.acquire(MAINTENANCE));
+
+            await(() -> scheduler.getQueued(BACKGROUND) == 1);
+
+            // Reserved connection is free for foreground request
+            final RequestScheduler.Permit foreground = scheduler.acquire(FOREGROUND);
+
+            try {
+                waiting.get(100, MILLISECONDS);
+
+                fail("Background request should wait");
+            } catch (TimeoutException e) {
+                // expected
+            }
+
+            permits.get(0).release();
+            permits.get(0).release();
+
+            waiting.get(5, SECONDS).release();
+            foreground.release();
+
+            assertEquals(scheduler.getQueued(BACKGROUND), 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void foregroundGetsMoreConnections() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1, 0);
+        final List<TrafficClass> order = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(20);
+        final List<Future<?>> results = new ArrayList<>();
+
+        try {
+            final RequestScheduler.Permit busy = scheduler.acquire(FOREGROUND);
+
+            for (int i = 0; i < 20; i++) {
+                final TrafficClass type = (i % 2 == 0) ? FOREGROUND : BACKGROUND;
+
+                results.add(executor.submit(() -> {
+                    final RequestScheduler.Permit permit = scheduler.acquire(type);
+
+                    order.add(type);
+                    permit.release();
+                }));
+            }
+
+            await(() -> (scheduler.getQueued(FOREGROUND) == 10) && (scheduler.getQueued(BACKGROUND) == 10));
+
+            busy.release();
+
+            for (Future<?> result : results) {
+                result.get(5, SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final long foreground = order.subList(0, 10).stream().filter(type -> type == FOREGROUND).count();
+
+        assertEquals(order.size(), 20);
+        assertEquals(foreground, 8, "Four foreground requests for one background in " + order);
+    }
+
+    @Test
+    public void queueDelay() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1, 0);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            final RequestScheduler.Permit busy = scheduler.acquire(FOREGROUND);
+            final Future<RequestScheduler.Permit> waiting = executor.submit(() -> scheduler.acquire(BACKGROUND));
+
+            await(() -> scheduler.getQueued(BACKGROUND) == 1);
+
+            Thread.sleep(50);
+
+            busy.release();
+            waiting.get(5, SECONDS).release();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(scheduler.getAverageDelay(BACKGROUND) >= 40, "Delay " + scheduler.getAverageDelay(BACKGROUND));
+        assertTrue(scheduler.getAverageDelay(FOREGROUND) < 40, "Delay " + scheduler.getAverageDelay(FOREGROUND));
+        assertEquals(scheduler.getAverageDelay(MAINTENANCE), scheduler.getAverageDelay(BACKGROUND));
+    }
+
+    @Test
+    public void interruptWhileWaiting() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler(1, 0);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            final RequestScheduler.Permit busy = scheduler.acquire(FOREGROUND);
+            final Future<Boolean> waiting = executor.submit(() -> {
+                try {
+                    scheduler.acquire(FOREGROUND);
+
+                    return false;
+                } catch (AbortedException e) {
+                    return Thread.currentThread().isInterrupted();
+                }
+            });
+
+            await(() -> scheduler.getQueued(FOREGROUND) == 1);
+
+            executor.shutdownNow();
+
+            assertTrue(waiting.get(5, SECONDS), "Interrupted flag should be kept");
+            assertEquals(scheduler.getQueued(FOREGROUND), 0);
+
+            busy.release();
+
+            // Connection was not lost by interrupted request
+            scheduler.acquire(BACKGROUND).release();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void hedgedRequestsKeepClass() throws Exception {
+        final List<TrafficClass> classes = Collections.synchronizedList(new ArrayList<>());
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setHedging(true);
+        options.setHedgingDelay(10);
+        options.setHedgingBudget(1);
+
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/scheduler-hedging/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                options,
+                TransferManagerBuilder.standard().withS3Client(new AbstractAmazonS3() {
+                    @Override
+                    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+                        classes.add(TrafficClass.current());
+
+                        if (classes.size() == 1) {
+                            // Slow first attempt is hedged
+                            try {
+                                Thread.sleep(200);
+                            } catch (InterruptedException e) {
+                                throw new AbortedException(e);
+                            }
+                        }
+
+                        final ObjectMetadata metadata = new ObjectMetadata();
+
+                        metadata.setContentLength(1);
+
+                        return metadata;
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                }).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        try (TrafficClass.Scope ignored = BACKGROUND.enter()) {
+            assertTrue(fileSystem.resolveFile("/file").exists());
+        } finally {
+            fileSystem.close();
+        }
+
+        assertEquals(fileSystem.getHedgedRequests(), 1);
+        assertEquals(classes, Arrays.asList(BACKGROUND, BACKGROUND), "Both attempts have class of the caller");
+    }
+
+    @Test
+    public void contentKeepsConnection() throws Exception {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setClientConfiguration(new ClientConfiguration().withMaxConnections(2));
+
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/scheduler-content/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                options,
+                TransferManagerBuilder.standard().withS3Client(new AbstractAmazonS3() {
+                    @Override
+                    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+                        final ObjectMetadata metadata = new ObjectMetadata();
+
+                        metadata.setContentLength(1);
+
+                        return metadata;
+                    }
+
+                    @Override
+                    public S3Object getObject(GetObjectRequest request) {
+                        final S3Object object = new S3Object();
+
+                        object.setObjectContent(new ByteArrayInputStream(new byte[1]));
+
+                        return object;
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                }).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // One of two connections is left for parts of uploads
+            assertEquals(S3FileSystem.scheduledConnections(2), 1);
+
+            final S3Object object = fileSystem.getObject("file", 1);
+            final Future<?> head = executor.submit(() -> fileSystem.getObjectMetadata("file"));
+
+            await(() -> fileSystem.getQueuedRequests(FOREGROUND) == 1);
+
+            assertFalse(head.isDone(), "Connection is busy until content is closed");
+
+            object.getObjectContent().close();
+
+            head.get(5, SECONDS);
+
+            // Abort of content returns connection too
+            fileSystem.getObject("file", 1).getObjectContent().abort();
+            fileSystem.getObjectMetadata("file");
+        } finally {
+            executor.shutdownNow();
+            fileSystem.close();
+        }
+    }
+
+    @Test
+    public void threadScope() {
+        assertNull(TrafficClass.current());
+
+        try (TrafficClass.Scope ignored = BACKGROUND.enter()) {
+            assertEquals(TrafficClass.current(), BACKGROUND);
+
+            try (TrafficClass.Scope nested = FOREGROUND.enter()) {
+                assertEquals(TrafficClass.current(), FOREGROUND);
+            }
+
+            assertEquals(TrafficClass.current(), BACKGROUND);
+        }
+
+        assertNull(TrafficClass.current());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + SECONDS.toNanos(5);
+
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition is not met in time");
+
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3ClientPoolTest {
+    @Test
+    public void checkReferenceCounting() {
+        final S3ClientPool pool = new S3ClientPool();
+        final AtomicInteger created = new AtomicInteger();
+        final ShutdownService service = new ShutdownService();
+
+        final S3ClientPool.Lease first = pool.acquire(key("access"), () -> {
+            created.incrementAndGet();
+
+            return transferManager(service);
+        });
+
+        final S3ClientPool.Lease second = pool.acquire(key("access"), () -> {
+            created.incrementAndGet();
+
+            return transferManager(service);
+        });
+
+        assertSame(second.getTransferManager(), first.getTransferManager());
+        assertEquals(created.get(), 1);
+        assertEquals(pool.size(), 1);
+
+        first.release();
+        first.release();
+
+        assertEquals(service.shutdowns.get(), 0, "Still used by second file system");
+
+        second.release();
+
+        assertEquals(service.shutdowns.get(), 1);
+        assertEquals(pool.size(), 0);
+
+        final S3ClientPool.Lease other = pool.acquire(key("other"), () -> transferManager(new ShutdownService()));
+
+        assertNotSame(other.getTransferManager(), first.getTransferManager());
+    }
+
+    @Test
+    public void checkSharedBetweenBuckets() throws FileSystemException {
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        final S3FileSystem first = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/pool-bucket-1/", options.toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem second = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/pool-bucket-2/", options.toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem otherEndpoint = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-west-1.amazonaws.com/pool-bucket-1/", options.toFileSystemOptions()
+        ).getFileSystem();
+
+        assertNotSame(second, first);
+        assertSame(second.getService(), first.getService());
+        assertSame(second.getTransferManager(), first.getTransferManager());
+        assertNotSame(otherEndpoint.getService(), first.getService());
+    }
+
+    private static S3ClientPool.Key key(String accessKey) {
+        return new S3ClientPool.Key(
+                "https://s3.eu-central-1.amazonaws.com", "eu-central-1", accessKey, "secret", null, null, false, false
+        );
+    }
+
+    private static TransferManager transferManager(ShutdownService service) {
+        return TransferManagerBuilder.standard().withS3Client(service).build();
+    }
+
+    private static class ShutdownService extends AbstractAmazonS3 {
+        private final AtomicInteger shutdowns = new AtomicInteger();
+
+        @Override
+        public void shutdown() {
+            shutdowns.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.vfss3;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.vfss3.TrafficClass.BACKGROUND;
+import static com.github.vfss3.TrafficClass.FOREGROUND;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3ExecutorTest {
+    private CountDownLatch release;
+    private S3Executor executor;
+
+    @BeforeMethod
+    public void setUp() {
+        release = new CountDownLatch(1);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        release.countDown();
+
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void checkParallelismOfScope() throws Exception {
+        executor = new S3Executor("test", 8, 16, false);
+
+        final S3Executor.Scope scope = executor.scope(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            futures.add(scope.executor(FOREGROUND).submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+                Thread.sleep(20);
+
+                running.decrementAndGet();
+
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, SECONDS);
+        }
+
+        assertEquals(maxRunning.get(), 2);
+    }
+
+    @Test
+    public void checkBackgroundRejection() throws Exception {
+        executor = new S3Executor("test", 4, 1, false);
+
+        final S3Executor.Scope scope = executor.scope(10);
+
+        scope.executor(BACKGROUND).execute(this::await); // Busy thread
+        scope.executor(BACKGROUND).execute(this::await); // Queue
+
+        assertThrows(RejectedExecutionException.class, () -> scope.executor(BACKGROUND).execute(this::await));
+
+        final S3Executor.Scope small = executor.scope(1);
+
+        small.executor(FOREGROUND).execute(this::await);
+
+        assertThrows(RejectedExecutionException.class, () -> small.executor(BACKGROUND).execute(this::await));
+    }
+
+    @Test
+    public void checkForegroundCallerRuns() throws Exception {
+        executor = new S3Executor("test", 1, 0, false);
+
+        final S3Executor.Scope scope = executor.scope(4);
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+
+        scope.executor(FOREGROUND).execute(this::await);
+        scope.executor(FOREGROUND).submit(() -> thread.set(Thread.currentThread())).get(10, SECONDS);
+
+        assertSame(thread.get(), Thread.currentThread());
+    }
+
+    @Test
+    public void checkClose() throws Exception {
+        executor = new S3Executor("test", 4, 4, false);
+
+        final S3Executor.Scope scope = executor.scope(4);
+        final Future<?> blocked = scope.executor(FOREGROUND).submit(this::await);
+        final ScheduledFuture<?> periodic = scope.scheduleWithFixedDelay(() -> {}, 0, 1, SECONDS);
+
+        scope.close();
+
+        assertTrue(blocked.isCancelled());
+        assertTrue(periodic.isCancelled());
+        assertEquals(scope.getActiveTasks(), 0);
+
+        assertThrows(RejectedExecutionException.class, () -> scope.executor(FOREGROUND).execute(() -> {}));
+
+        // Other scopes are still working
+        assertEquals(executor.scope(1).executor(FOREGROUND).submit(() -> 42).get(10, SECONDS), Integer.valueOf(42));
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
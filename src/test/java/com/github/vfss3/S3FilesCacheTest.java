@@ -0,0 +1,76 @@
+package com.github.vfss3;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3FilesCacheTest {
+    private FileSystem fileSystem;
+
+    @BeforeClass
+    public void setUp() throws FileSystemException {
+        fileSystem = VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/files-cache/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+    }
+
+    @Test
+    public void checkResolveFromCache() throws FileSystemException {
+        FileObject file = fileSystem.resolveFile("/folder/file.txt");
+
+        assertSame(fileSystem.resolveFile("/folder/file.txt"), file);
+        assertSame(fileSystem.resolveFile("/folder/../folder/file.txt"), file);
+        assertNotSame(fileSystem.resolveFile("/folder/file2.txt"), file);
+    }
+
+    @Test
+    public void checkSizeBound() throws FileSystemException {
+        final S3FilesCache cache = new S3FilesCache(32);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.putFile(fileSystem.resolveFile("/bound/file-" + i));
+        }
+
+        int cached = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            if (cache.getFile(fileSystem, fileSystem.resolveFile("/bound/file-" + i).getName()) != null) {
+                cached++;
+            }
+        }
+
+        assertTrue(cached > 0);
+        assertTrue(cached <= 32, "Too many cached files - " + cached);
+
+        FileObject last = fileSystem.resolveFile("/bound/file-999");
+
+        assertSame(cache.getFile(fileSystem, last.getName()), cache.getFile(fileSystem, last.getName()));
+
+        cache.clear(fileSystem);
+
+        assertNull(cache.getFile(fileSystem, last.getName()));
+    }
+
+    @Test
+    public void checkPutIfAbsent() throws FileSystemException {
+        final S3FilesCache cache = new S3FilesCache(10);
+        final FileObject file = fileSystem.resolveFile("/absent/file");
+
+        assertTrue(cache.putFileIfAbsent(file));
+        assertFalse(cache.putFileIfAbsent(file));
+
+        cache.removeFile(fileSystem, file.getName());
+
+        assertNull(cache.getFile(fileSystem, file.getName()));
+        assertFalse(new S3FilesCache(0).putFileIfAbsent(file), "Zero size disables caching");
+    }
+}
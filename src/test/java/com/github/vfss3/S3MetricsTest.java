@@ -0,0 +1,181 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.apache.commons.vfs2.FileType.FILE;
+import static org.apache.commons.vfs2.FileType.IMAGINARY;
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3MetricsTest {
+    @Test
+    public void checkPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMean(), 500.5, 0.001);
+        assertEquals(histogram.getMax(), 1000.0, 0.001);
+        assertEquals(histogram.getPercentile(50), 500, 500 * 0.07);
+        assertEquals(histogram.getPercentile(99), 990, 990 * 0.07);
+        assertEquals(histogram.getPercentile(100), 1000, 1000 * 0.07);
+    }
+
+    @Test
+    public void checkSmallValues() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(histogram.getPercentile(50), 0.0);
+
+        for (int i = 0; i < 16; i++) {
+            histogram.record(MICROSECONDS.toNanos(i));
+        }
+
+        // Values below 16 microseconds are exact
+        assertEquals(histogram.getPercentile(50), 0.007, 0.0001);
+        assertEquals(histogram.getMax(), 0.015, 0.0001);
+    }
+
+    @Test
+    public void checkParentTotals() {
+        final S3Metrics provider = new S3Metrics(null);
+        final S3Metrics first = new S3Metrics(provider);
+        final S3Metrics second = new S3Metrics(provider);
+
+        first.record(S3Operation.HEAD, 1000, false);
+        second.record(S3Operation.HEAD, 1000, true);
+        second.uploaded(100);
+
+        assertEquals(first.getHead().getRequests(), 1);
+        assertEquals(first.getHead().getErrors(), 0);
+        assertEquals(second.getHead().getErrors(), 1);
+        assertEquals(provider.getHead().getRequests(), 2);
+        assertEquals(provider.getHead().getErrors(), 1);
+        assertEquals(provider.getBytesUploaded(), 100);
+        assertEquals(first.getBytesUploaded(), 0);
+    }
+
+    @Test
+    public void checkSpoolAndStreams() throws Exception {
+        final S3Metrics metrics = new S3Metrics(null);
+
+        try (ObjectContentHolder holder = new ObjectContentHolder(metrics, "bucket", "key")) {
+            final OutputStream out = holder.getOutputStream(file -> "d41d8cd98f00b204e9800998ecf8427e");
+
+            assertEquals(metrics.getOpenOutputStreams(), 1);
+            assertEquals(metrics.getSpoolFiles(), 1);
+
+            out.write(new byte[100]);
+            out.write(1);
+            out.close();
+
+            assertEquals(metrics.getOpenOutputStreams(), 0);
+            assertEquals(metrics.getSpoolBytes(), 101, "Uploaded content is kept in spool");
+        }
+
+        assertEquals(metrics.getSpoolFiles(), 0);
+        assertEquals(metrics.getSpoolBytes(), 0);
+    }
+
+    @Test
+    public void checkFileSystemMetricsInJmx() throws Exception {
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/metrics/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName pattern = new ObjectName(
+                "com.github.vfss3:type=S3FileSystem,name=\"s3.eu-central-1.amazonaws.com/metrics\",*"
+        );
+
+        // Base file system from the provider has the same name but another id
+        final Set<ObjectName> names = server.queryNames(pattern, null);
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                new S3FileSystemOptions(),
+                TransferManagerBuilder.standard().withS3Client(new AbstractAmazonS3() {
+                    @Override
+                    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+                        if (request.getKey().startsWith("missing")) {
+                            final AmazonS3Exception e = new AmazonS3Exception("Not found");
+
+                            e.setStatusCode(404);
+
+                            throw e;
+                        }
+
+                        final ObjectMetadata metadata = new ObjectMetadata();
+
+                        metadata.setContentLength(10);
+
+                        return metadata;
+                    }
+
+                    @Override
+                    public ObjectListing listObjects(ListObjectsRequest request) {
+                        return new ObjectListing();
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                }).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        final Set<ObjectName> registered = server.queryNames(pattern, null);
+
+        registered.removeAll(names);
+
+        assertEquals(registered.size(), 1);
+
+        final ObjectName name = registered.iterator().next();
+
+        try {
+            assertEquals(fileSystem.resolveFile("/file").getType(), FILE);
+            assertEquals(fileSystem.resolveFile("/missing").getType(), IMAGINARY);
+
+            final S3OperationMetrics heads = fileSystem.getMetrics().getHead();
+
+            assertTrue(heads.getRequests() >= 2, "Heads " + heads);
+            assertTrue(heads.getErrors() >= 1, "Heads " + heads);
+
+            final CompositeData head = (CompositeData) server.getAttribute(name, "Head");
+
+            assertEquals(head.get("requests"), heads.getRequests());
+            assertEquals(head.get("errors"), heads.getErrors());
+            assertNotNull(head.get("p99Latency"));
+            assertEquals(server.getAttribute(name, "OpenInputStreams"), 0L);
+        } finally {
+            fileSystem.close();
+        }
+
+        assertFalse(server.isRegistered(name), "Closed file system is unregistered");
+    }
+}
@@ -0,0 +1,322 @@
+package com.github.vfss3;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.testng.Assert.*;
+
+/**
+ * Request listeners with fake S3 client.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3RequestListenerTest {
+    @Test
+    public void checkFileOperations() throws Exception {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        final S3RequestCounter counter = new S3RequestCounter();
+
+        final S3RequestListener recorder = new S3RequestListener() {
+            @Override
+            public Object beforeRequest(S3RequestInfo request) {
+                request.getRequest().putCustomRequestHeader("traceparent", "trace-" + calls.size());
+
+                calls.add("before " + request.getFileOperation() + " " + request.getOperation());
+
+                return request.getRequest().getCustomRequestHeaders().get("traceparent");
+            }
+
+            @Override
+            public void afterRequest(S3RequestInfo request, Object context, Exception error) {
+                assertEquals(context, request.getRequest().getCustomRequestHeaders().get("traceparent"));
+
+                calls.add("after " + request.getFileOperation() + " " + request.getOperation());
+            }
+        };
+
+        final S3RequestListener failing = new S3RequestListener() {
+            @Override
+            public Object beforeRequest(S3RequestInfo request) {
+                throw new IllegalStateException("Broken listener");
+            }
+        };
+
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setRequestListeners(recorder, failing, counter);
+
+        final S3FileSystem fileSystem = createFileSystem("listeners", options);
+
+        try {
+            assertFalse(fileSystem.resolveFile("/missing").exists());
+            assertEquals(fileSystem.resolveFile("/").getChildren().length, 1);
+        } finally {
+            fileSystem.close();
+        }
+
+        assertTrue(calls.contains("before exists HEAD"), "Calls " + calls);
+        assertTrue(calls.contains("after exists HEAD"), "Calls " + calls);
+        assertTrue(calls.contains("before getChildren LIST"), "Calls " + calls);
+        assertEquals(calls.size() % 2, 0);
+
+        for (int i = 0; i < calls.size(); i += 2) {
+            assertEquals(calls.get(i + 1), calls.get(i).replace("before", "after"));
+        }
+
+        assertEquals(counter.getRequests(), calls.size() / 2);
+        assertEquals(counter.getRequests("exists", S3Operation.HEAD), 2, counter.toString());
+        assertEquals(counter.getRequests("getChildren", S3Operation.LIST), 1, counter.toString());
+        assertEquals(counter.getRequests("getChildren", S3Operation.HEAD), 0, counter.toString());
+        assertTrue(counter.getEstimatedCost("getChildren") > 0);
+    }
+
+    @Test
+    public void checkHedgedRequests() throws Exception {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        final S3RequestListener recorder = new S3RequestListener() {
+            @Override
+            public Object beforeRequest(S3RequestInfo request) {
+                calls.add(request.getFileOperation() + " " + request.getOperation() + " " + request.getTrafficClass());
+
+                return null;
+            }
+        };
+
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setRequestListeners(recorder);
+        options.setHedging(true);
+        options.setHedgingDelay(10);
+        options.setHedgingBudget(1);
+
+        final S3FileSystem fileSystem = createFileSystem("listeners-hedging", options, 100);
+
+        try (TrafficClass.Scope ignored = TrafficClass.BACKGROUND.enter()) {
+            assertFalse(fileSystem.resolveFile("/missing").exists());
+        } finally {
+            fileSystem.close();
+        }
+
+        assertTrue(fileSystem.getHedgedRequests() > 0);
+        assertTrue(calls.contains("exists HEAD BACKGROUND"), "Calls " + calls);
+
+        for (String call : calls) {
+            assertTrue(call.startsWith("exists ") && call.endsWith(" BACKGROUND"), "Calls " + calls);
+        }
+    }
+
+    @Test
+    public void checkUploadOnClose() throws Exception {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        final S3RequestListener recorder = new S3RequestListener() {
+            @Override
+            public Object beforeRequest(S3RequestInfo request) {
+                calls.add(request.getFileOperation() + " " + request.getOperation());
+
+                return null;
+            }
+        };
+
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setRequestListeners(recorder);
+
+        try (LocalS3 s3 = new LocalS3()) {
+            final FileObject base = VFS.getManager().resolveFile(
+                    "s3://access:secret@s3.eu-central-1.amazonaws.com/listeners-upload/", options.toFileSystemOptions()
+            );
+
+            final S3FileSystem fileSystem = new S3FileSystem(
+                    (S3FileName) base.getFileSystem().getRootName(),
+                    options,
+                    TransferManagerBuilder.standard().withS3Client(s3.client(new ClientConfiguration())).build()
+            );
+
+            fileSystem.setContext(((S3FileSystem) base.getFileSystem()).getContext());
+            fileSystem.init();
+
+            try (OutputStream out = fileSystem.resolveFile("/file").getContent().getOutputStream()) {
+                out.write(new byte[10]);
+            } finally {
+                fileSystem.close();
+            }
+        }
+
+        assertTrue(calls.contains("upload PUT"), "Calls " + calls);
+        assertFalse(calls.contains("getOutputStream PUT"), "Calls " + calls);
+    }
+
+    @Test
+    public void checkExistenceIndexRebuild() throws Exception {
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        final S3RequestListener recorder = new S3RequestListener() {
+            @Override
+            public Object beforeRequest(S3RequestInfo request) {
+                calls.add(request.getOperation() + " " + request.getTrafficClass());
+
+                return null;
+            }
+        };
+
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+
+        options.setRequestListeners(recorder);
+        options.setExistenceIndex(true);
+
+        final S3FileSystem fileSystem = createFileSystem("listeners-index", options);
+
+        try {
+            for (int i = 0; (i < 500) && calls.isEmpty(); i++) {
+                Thread.sleep(10);
+            }
+        } finally {
+            fileSystem.close();
+        }
+
+        // Full listing is sent as maintenance request through the same path as others
+        assertEquals(calls.get(0), "LIST MAINTENANCE", "Calls " + calls);
+    }
+
+    @Test
+    public void checkOutermostOperation() {
+        assertNull(FileOperationTag.current());
+
+        final boolean outer = FileOperationTag.enter("copyFrom");
+
+        assertTrue(outer);
+
+        final boolean inner = FileOperationTag.enter("getChildren");
+
+        assertFalse(inner);
+        assertEquals(FileOperationTag.current(), "copyFrom");
+
+        FileOperationTag.exit(inner);
+
+        assertEquals(FileOperationTag.current(), "copyFrom");
+
+        FileOperationTag.exit(outer);
+
+        assertNull(FileOperationTag.current());
+    }
+
+    @Test
+    public void checkEstimatedCost() {
+        final S3RequestCounter counter = new S3RequestCounter();
+
+        counter.setPrice(S3Operation.GET, 0.001);
+
+        for (int i = 0; i < 1000; i++) {
+            counter.afterRequest(info(S3Operation.PUT, "copyFrom"), null, null);
+            counter.afterRequest(info(S3Operation.GET, null), null, null);
+        }
+
+        counter.afterRequest(info(S3Operation.DELETE, "delete"), null, null);
+
+        assertEquals(counter.getRequests(), 2001);
+        assertEquals(counter.getRequests(S3Operation.PUT), 1000);
+        assertEquals(counter.getRequests("copyFrom"), 1000);
+        assertEquals(counter.getRequests(null, S3Operation.GET), 1000);
+        assertEquals(counter.getEstimatedCost("copyFrom"), 0.005, 0.000001);
+        assertEquals(counter.getEstimatedCost(null), 0.001, 0.000001);
+        assertEquals(counter.getEstimatedCost("delete"), 0.0);
+        assertEquals(counter.getEstimatedCost(), 0.006, 0.000001);
+
+        counter.reset();
+
+        assertEquals(counter.getRequests(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void checkNegativePrice() {
+        new S3RequestCounter().setPrice(S3Operation.LIST, -1);
+    }
+
+    private static S3RequestInfo info(S3Operation operation, String fileOperation) {
+        return new S3RequestInfo(
+                "bucket", "key", operation, fileOperation, TrafficClass.FOREGROUND,
+                new PutObjectRequest("bucket", "key", "location"), 1
+        );
+    }
+
+    private static S3FileSystem createFileSystem(String bucket, S3FileSystemOptions options) throws Exception {
+        return createFileSystem(bucket, options, 0);
+    }
+
+    /**
+     * @param headDelay latency of HEAD requests in milliseconds
+     */
+    private static S3FileSystem createFileSystem(
+            String bucket, S3FileSystemOptions options, long headDelay
+    ) throws Exception {
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/" + bucket + "/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                options,
+                TransferManagerBuilder.standard().withS3Client(new AbstractAmazonS3() {
+                    @Override
+                    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+                        if (headDelay > 0) {
+                            try {
+                                Thread.sleep(headDelay);
+                            } catch (InterruptedException e) {
+                                throw new AbortedException(e);
+                            }
+                        }
+
+                        final AmazonS3Exception e = new AmazonS3Exception("Not found");
+
+                        e.setStatusCode(404);
+
+                        throw e;
+                    }
+
+                    @Override
+                    public ObjectListing listObjects(ListObjectsRequest request) {
+                        final ObjectListing listing = new ObjectListing();
+
+                        if (request.getPrefix().isEmpty()) {
+                            final S3ObjectSummary summary = new S3ObjectSummary();
+
+                            summary.setKey("file");
+
+                            listing.getObjectSummaries().add(summary);
+                        }
+
+                        return listing;
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                }).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        return fileSystem;
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.vfss3;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class SingleFlightTest {
+    private static final int THREADS = 16;
+
+    @Test
+    public void checkCoalescing() throws Exception {
+        final SingleFlight<String> flight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> flight.execute("key", () -> {
+                    calls.incrementAndGet();
+
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+
+                    return "value";
+                })));
+            }
+
+            // Wait while all followers join the leader
+            for (int i = 0; (i < 500) && (flight.getCoalesced() < THREADS - 1); i++) {
+                Thread.sleep(10);
+            }
+
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals(result.get(5, TimeUnit.SECONDS), "value");
+            }
+
+            assertEquals(calls.get(), 1);
+            assertEquals(flight.getCoalesced(), THREADS - 1);
+
+            // Nothing in flight - new call
+            assertEquals(flight.execute("key", () -> "next"), "next");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void checkSharedException() throws Exception {
+        final SingleFlight<String> flight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<Object> leader = executor.submit(() -> flight.execute("key", () -> {
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                throw new IllegalArgumentException("failed");
+            }));
+
+            started.await();
+
+            Future<String> follower = executor.submit(() -> flight.execute("key", () -> "never"));
+
+            for (int i = 0; (i < 500) && (flight.getCoalesced() == 0); i++) {
+                Thread.sleep(10);
+            }
+
+            release.countDown();
+
+            try {
+                follower.get(5, TimeUnit.SECONDS);
+
+                fail("Follower should share exception");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+                assertEquals(e.getCause().getMessage(), "failed");
+            }
+
+            assertEquals(flight.getCoalesced(), 1);
+
+            try {
+                leader.get();
+
+                fail("Leader should fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.github.vfss3;
+
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.util.MonitorInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Throughput of open/close of streams on one shared file content in {@link DefaultFileContent} against previous
+ * implementation with thread local lists and counter under lock. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=com.github.vfss3.StreamTrackingBenchmark
+ * </pre>
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamTrackingBenchmark {
+    private static final byte[] CONTENT = new byte[16];
+
+    private DefaultFileContent content;
+    private LegacyTracking legacy;
+
+    @Setup
+    public void setUp() throws FileSystemException {
+        final MemoryFileObject file = new MemoryFileObject(CONTENT);
+
+        content = new DefaultFileContent(file, null);
+        legacy = new LegacyTracking(file.getAbstractFileSystem());
+    }
+
+    @Benchmark
+    public int openClose() throws IOException {
+        try (InputStream in = content.getInputStream()) {
+            return in.read();
+        }
+    }
+
+    @Benchmark
+    public int legacyOpenClose() throws IOException {
+        try (InputStream in = legacy.open(new ByteArrayInputStream(CONTENT))) {
+            return in.read();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            new Runner(
+                    new OptionsBuilder().
+                            include(StreamTrackingBenchmark.class.getSimpleName()).
+                            threads(threads).
+                            build()
+            ).run();
+        }
+    }
+
+    /**
+     * Previous stream tracking with the same stream wrapper.
+     */
+    private static class LegacyTracking {
+        private final ThreadLocal<List<InputStream>> threadLocal = new ThreadLocal<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AbstractFileSystem fileSystem;
+
+        private int openStreams;
+
+        LegacyTracking(AbstractFileSystem fileSystem) {
+            this.fileSystem = fileSystem;
+        }
+
+        InputStream open(InputStream raw) {
+            final InputStream in = new MonitorInputStream(raw) {
+                @Override
+                protected void onClose() throws IOException {
+                    try {
+                        super.onClose();
+                    } finally {
+                        closed(this);
+                    }
+                }
+            };
+
+            List<InputStream> streams = threadLocal.get();
+
+            if (streams == null) {
+                streams = new ArrayList<>();
+                threadLocal.set(streams);
+            }
+
+            streams.add(in);
+
+            lock.lock();
+
+            try {
+                openStreams++;
+            } finally {
+                lock.unlock();
+            }
+
+            fileSystem.streamOpened();
+
+            return in;
+        }
+
+        private void closed(InputStream in) {
+            final List<InputStream> streams = threadLocal.get();
+
+            if (streams != null) {
+                streams.remove(in);
+            }
+
+            if ((streams == null) || streams.isEmpty()) {
+                threadLocal.remove();
+            }
+
+            lock.lock();
+
+            try {
+                if (openStreams > 0) {
+                    openStreams--;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            fileSystem.streamClosed();
+        }
+    }
+}
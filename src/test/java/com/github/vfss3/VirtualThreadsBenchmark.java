@@ -0,0 +1,129 @@
+package com.github.vfss3;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static com.github.vfss3.TrafficClass.FOREGROUND;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Throughput of 10k concurrent small GET requests to local S3 stand-in with 10 ms latency - pool of platform threads
+ * against virtual threads. Virtual threads are measured only on JDK 21 and newer.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class VirtualThreadsBenchmark {
+    private static final String BUCKET = "benchmark";
+    private static final int REQUESTS = 10_000;
+    private static final int OBJECTS = 100;
+    private static final int PLATFORM_THREADS = 64;
+
+    private LocalS3 s3;
+
+    @BeforeClass
+    public void startServer() throws Exception {
+        s3 = new LocalS3();
+        s3.setLatency(10);
+
+        for (int i = 0; i < OBJECTS; i++) {
+            s3.putObject(BUCKET, "key-" + i, ("content-" + i).getBytes(UTF_8));
+        }
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopServer() {
+        s3.close();
+    }
+
+    @Test(groups = "benchmark")
+    public void compareSmallGets() throws Exception {
+        final double platform = smallGets(false);
+
+        System.out.printf("%d concurrent GETs, %d platform threads: %.0f ops/s%n", REQUESTS, PLATFORM_THREADS, platform);
+
+        if (VirtualThreads.isSupported()) {
+            final double virtual = smallGets(true);
+
+            System.out.printf("%d concurrent GETs, virtual threads: %.0f ops/s%n", REQUESTS, virtual);
+        } else {
+            System.out.println("Virtual threads are not supported by this JDK");
+        }
+    }
+
+    private double smallGets(boolean virtualThreads) throws Exception {
+        final S3Executor executor = new S3Executor(
+                "benchmark", virtualThreads ? REQUESTS : PLATFORM_THREADS, REQUESTS, virtualThreads
+        );
+
+        final S3FileSystemOptions options = new S3FileSystemOptions();
+        final ClientConfiguration clientConfiguration = new ClientConfiguration().withMaxConnections(REQUESTS);
+
+        options.setParallelism(REQUESTS);
+        options.setClientConfiguration(clientConfiguration);
+
+        final FileObject base = VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/" + BUCKET + "/", options.toFileSystemOptions()
+        );
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getFileSystem().getRootName(),
+                options,
+                S3ClientPool.unpooled(TransferManagerBuilder.standard().withS3Client(
+                        s3.client(clientConfiguration)
+                ).build()),
+                executor,
+                null,
+                null,
+                null,
+                options.getRequestListeners()
+        );
+
+        fileSystem.setContext(((S3FileSystem) base.getFileSystem()).getContext());
+        fileSystem.init();
+
+        try {
+            run(fileSystem, REQUESTS / 10); // Warm up
+
+            final long start = System.nanoTime();
+
+            run(fileSystem, REQUESTS);
+
+            return REQUESTS / (double) (System.nanoTime() - start) * NANOSECONDS.convert(1, SECONDS);
+        } finally {
+            fileSystem.close();
+            executor.shutdown();
+        }
+    }
+
+    private static void run(S3FileSystem fileSystem, int requests) throws Exception {
+        final List<Future<String>> results = new ArrayList<>(requests);
+
+        for (int i = 0; i < requests; i++) {
+            final int index = i % OBJECTS;
+
+            results.add(fileSystem.getTasks().executor(FOREGROUND).submit(() -> {
+                try (S3Object object = fileSystem.getObject("key-" + index, 16)) {
+                    return IOUtils.toString(object.getObjectContent(), UTF_8);
+                }
+            }));
+        }
+
+        for (int i = 0; i < requests; i++) {
+            assertEquals(results.get(i).get(), "content-" + (i % OBJECTS));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.vfss3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.vfs2.VFS;
+import org.testng.annotations.Test;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.apache.commons.vfs2.FileType.IMAGINARY;
+import static org.testng.Assert.*;
+
+/**
+ * Flight recorder events, runs only on JDK 11 and newer.
+ *
+ * @author <A href="mailto:alexey@abashev.ru">Alexey Abashev</A>
+ */
+public class S3EventsTest {
+    @Test
+    public void checkDisabledByDefault() {
+        assertFalse(new S3Events.Request().isEnabled());
+        assertFalse(new S3Events.Attach().isEnabled());
+        assertFalse(new S3Events.Spool().isEnabled());
+        assertFalse(new S3Events.Upload().isEnabled());
+    }
+
+    @Test
+    public void checkRequestAndAttachEvents() throws Exception {
+        final S3FileSystem base = (S3FileSystem) VFS.getManager().resolveFile(
+                "s3://access:secret@s3.eu-central-1.amazonaws.com/events-jfr/",
+                new S3FileSystemOptions().toFileSystemOptions()
+        ).getFileSystem();
+
+        final S3FileSystem fileSystem = new S3FileSystem(
+                (S3FileName) base.getRootName(),
+                new S3FileSystemOptions(),
+                TransferManagerBuilder.standard().withS3Client(new AbstractAmazonS3() {
+                    @Override
+                    public ObjectMetadata getObjectMetadata(GetObjectMetadataRequest request) {
+                        final AmazonS3Exception e = new AmazonS3Exception("Not found");
+
+                        e.setStatusCode(404);
+
+                        throw e;
+                    }
+
+                    @Override
+                    public ObjectListing listObjects(ListObjectsRequest request) {
+                        return new ObjectListing();
+                    }
+                }).build()
+        );
+
+        fileSystem.setContext(base.getContext());
+        fileSystem.init();
+
+        final List<RecordedEvent> events = record(() -> {
+            assertEquals(fileSystem.resolveFile("/dir/missing").getType(), IMAGINARY);
+        });
+
+        final List<RecordedEvent> heads = events.stream().
+                filter(event -> event.getEventType().getName().equals("vfs.s3.Request")).
+                filter(event -> "HEAD".equals(event.getString("operation"))).
+                collect(Collectors.toList());
+
+        assertFalse(heads.isEmpty());
+        assertEquals(heads.get(0).getString("bucket"), "events-jfr");
+        assertEquals(heads.get(0).getString("key"), "dir/missing");
+        assertEquals(heads.get(0).getInt("status"), 404);
+        assertEquals(heads.get(0).getInt("retries"), 0);
+
+        assertTrue(
+                events.stream().anyMatch(event -> event.getEventType().getName().equals("vfs.s3.Attach")),
+                "Attach event in " + events
+        );
+    }
+
+    @Test
+    public void checkSpoolEvent() throws Exception {
+        final List<RecordedEvent> events = record(() -> {
+            try (ObjectContentHolder holder = new ObjectContentHolder(new S3Metrics(null), "bucket", "key")) {
+                try (OutputStream out = holder.getOutputStream(file -> "d41d8cd98f00b204e9800998ecf8427e")) {
+                    out.write(new byte[100]);
+                }
+            }
+        });
+
+        final RecordedEvent spool = events.stream().
+                filter(event -> event.getEventType().getName().equals("vfs.s3.Spool")).
+                findFirst().
+                orElseThrow(() -> new AssertionError("No spool event in " + events));
+
+        assertEquals(spool.getString("bucket"), "bucket");
+        assertEquals(spool.getString("key"), "key");
+        assertEquals(spool.getString("operation"), "write");
+        assertEquals(spool.getLong("bytes"), 100);
+    }
+
+    private static List<RecordedEvent> record(Action action) throws Exception {
+        final Path file = Files.createTempFile("vfs-s3", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("vfs.s3.Request");
+            recording.enable("vfs.s3.Attach");
+            recording.enable("vfs.s3.Spool");
+            recording.enable("vfs.s3.Upload");
+            recording.start();
+
+            action.run();
+
+            recording.stop();
+            recording.dump(file);
+
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+}